@@ -0,0 +1,630 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Base class for readers which decode the sheet one row at a time into a
+ * reusable {@link XlsRowBuffer}.
+ *
+ * Subclasses only have to open the underlying file and fill the row buffer,
+ * header handling and the conversion of the cell values is done here.
+ *
+ * @author Andre Schild
+ */
+public abstract class AbstractRowReader implements IXlsReader
+{
+    private char separator = ',';
+    private boolean suppressHeaders = false;
+    private String stringDateFormat = null;
+    private String fileName = null;
+    private String sheetName = null;
+    private String[] columnNames;
+    /** Lookup of the column names, built on first use */
+    private XlsColumnIndex columnIndex = null;
+    /** Use the 1904 date windowing when converting numbers to dates */
+    protected boolean date1904 = false;
+    /** The current row */
+    protected XlsRowBuffer row = new XlsRowBuffer();
+    /** First data row, when it had to be read to determine the column count */
+    private XlsRowBuffer buf = null;
+    private XlsCondition whereClause = null;
+    private boolean[] columnsUsed = null;
+    /** Parser for dates stored as text, compiled on first use */
+    private XlsDateParser dateParser = null;
+    /** Most rows decoded ahead of next() */
+    private static final int MAX_PREFETCH_ROWS = 4096;
+    /** Rows decoded ahead by a background thread, 0 or 1 to decode them in next() */
+    private int prefetchRows = 0;
+    private RowPipeline pipeline = null;
+
+    /**
+     * Decodes the rows on a background thread into a ring of reusable row
+     * buffers, while the caller processes the rows already decoded.
+     */
+    private final class RowPipeline implements Runnable
+    {
+        private final ArrayBlockingQueue<XlsRowBuffer> free;
+        private final ArrayBlockingQueue<XlsRowBuffer> filled;
+        /** Marks the end of the sheet in the filled queue */
+        private final XlsRowBuffer endOfSheet = new XlsRowBuffer(0);
+        private final Thread thread;
+        private volatile boolean stopped = false;
+        private volatile Throwable error = null;
+        /** Row returned to the caller, given back with the next call */
+        private XlsRowBuffer current = null;
+
+        RowPipeline(int size)
+        {
+            free = new ArrayBlockingQueue<XlsRowBuffer>(size);
+            // One more slot, so the end marker never has to wait
+            filled = new ArrayBlockingQueue<XlsRowBuffer>(size + 1);
+            for (int i = 0; i < size; i++)
+            {
+                free.add(new XlsRowBuffer());
+            }
+            thread = new Thread(this, "XlsJdbc prefetch " + getFileName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (!stopped)
+                {
+                    XlsRowBuffer data = free.take();
+                    if (stopped)
+                    {
+                        break;
+                    }
+                    data.clear();
+                    if (!readRow(data))
+                    {
+                        break;
+                    }
+                    filled.put(data);
+                }
+            }
+            catch (Throwable t)
+            {
+                error = t;
+            }
+            finally
+            {
+                filled.offer(endOfSheet);
+            }
+        }
+
+        /**
+         * Get the next decoded row
+         *
+         * @return  The row, null at the end of the sheet
+         * @throws Exception  When the background thread could not read the row
+         */
+        XlsRowBuffer take() throws Exception
+        {
+            if (current != null)
+            {
+                free.offer(current);
+                current = null;
+            }
+            XlsRowBuffer data = filled.take();
+            if (data == endOfSheet)
+            {
+                thread.join();
+                if (error instanceof Exception)
+                {
+                    throw (Exception) error;
+                }
+                if (error != null)
+                {
+                    throw new Exception(error);
+                }
+                return null;
+            }
+            current = data;
+            return data;
+        }
+
+        /**
+         * Stop the background thread, after this the source can be closed
+         */
+        void stop()
+        {
+            stopped = true;
+            // Wake the thread if it waits for a free buffer
+            free.offer(new XlsRowBuffer(0));
+            boolean interrupted = false;
+            while (thread.isAlive())
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    /**
+     * Open the underlying file and position it before the first row
+     *
+     * @throws Exception  When the file cannot be opened
+     */
+    protected abstract void openSource() throws Exception;
+
+    /**
+     * Decode the next row of the sheet into the given buffer
+     *
+     * @param  row        The buffer to fill, already cleared
+     * @return            false when the end of the sheet has been reached
+     * @throws Exception  When the file cannot be read
+     */
+    protected abstract boolean readRow(XlsRowBuffer row) throws Exception;
+
+    /**
+     * Release the underlying file. Must be safe to call more than once.
+     */
+    protected abstract void closeSource();
+
+    /**
+     * Number of rows of the sheet according to the file metadata, known
+     * once the header row has been read. Only an estimate: the sheet ends
+     * at the first missing row, which the metadata does not tell.
+     *
+     * @return  0-based index of the last used row + 1, or -1 when unknown
+     */
+    protected int getDimensionRows()
+    {
+        return -1;
+    }
+
+    /**
+     * Number of rows next() returns, header row included, taken from the
+     * file metadata without reading the cells. Called once the header row
+     * has been read, subclasses must only answer when the metadata proves
+     * that no row is missing.
+     *
+     * @return  Number of rows or -1 when the metadata cannot tell
+     * @throws Exception  When the file cannot be read
+     */
+    protected int getMetadataRows() throws Exception
+    {
+        return -1;
+    }
+
+    @Override
+    public void openFile() throws Exception
+    {
+        openSource();
+        XlsRowBuffer data = new XlsRowBuffer();
+        data.clear();
+        if (!readRow(data))
+        {
+            columnNames = new String[0];
+            return;
+        }
+        columnNames = new String[data.width];
+        for (int i = 0; i < data.width; i++)
+        {
+            String headerName = null;
+            if (!isSuppressHeaders() && data.getType(i) != XlsRowBuffer.BLANK)
+            {
+                headerName = toString(data, i);
+            }
+            if (headerName == null || headerName.trim().length() == 0)
+            {
+                columnNames[i] = "COLUMN" + String.valueOf(i + 1);
+            }
+            else
+            {
+                columnNames[i] = headerName.toUpperCase();
+            }
+        }
+        if (isSuppressHeaders())
+        {
+            // No column names available, the first line is already data
+            buf = data;
+        }
+    }
+
+    /**
+     * Set the column names, for readers who do not read them from a
+     * header row.
+     *
+     * @param columnNames  Upper case column names
+     */
+    protected void setColumnNames(String[] columnNames)
+    {
+        this.columnNames = columnNames;
+    }
+
+    @Override
+    public boolean next() throws Exception
+    {
+        while (true)
+        {
+            if (buf != null)
+            {
+                // The buffer is not empty yet, so use this first.
+                row = buf;
+                buf = null;
+            }
+            else if (prefetchRows > 1)
+            {
+                if (pipeline == null)
+                {
+                    pipeline = new RowPipeline(Math.min(prefetchRows, MAX_PREFETCH_ROWS));
+                }
+                XlsRowBuffer data = pipeline.take();
+                if (data == null)
+                {
+                    pipeline = null;
+                    closeSource();
+                    return false;
+                }
+                row = data;
+            }
+            else
+            {
+                row.clear();
+                if (!readRow(row))
+                {
+                    closeSource();
+                    return false;
+                }
+            }
+            if (whereClause == null || whereClause.isTrue(this))
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Decode the rows on a background thread, ahead of the calls to next().
+     * Ignored once the background thread has been started.
+     *
+     * @param prefetchRows  Number of rows decoded ahead, 0 or 1 to decode
+     *                      each row in next()
+     */
+    void setPrefetchRows(int prefetchRows)
+    {
+        if (pipeline == null)
+        {
+            this.prefetchRows = prefetchRows;
+        }
+    }
+
+    @Override
+    public void setWhereClause(XlsCondition whereClause)
+    {
+        this.whereClause = whereClause;
+    }
+
+    @Override
+    public void setColumnsUsed(boolean[] columnsUsed)
+    {
+        this.columnsUsed = columnsUsed;
+    }
+
+    /**
+     * Check if the value of a column is needed, subclasses should not
+     * decode the cells of unused columns.
+     *
+     * @param col  0-based column index
+     * @return     true when the column has to be decoded
+     */
+    protected boolean isColumnUsed(int col)
+    {
+        return columnsUsed == null || (col < columnsUsed.length && columnsUsed[col]);
+    }
+
+    @Override
+    public int countRows() throws Exception
+    {
+        if (whereClause == null)
+        {
+            int rows = getMetadataRows();
+            if (rows >= 0)
+            {
+                close();
+                return Math.max(0, rows - (isSuppressHeaders() ? 0 : 1));
+            }
+            // The metadata does not tell if a row is missing, so count the
+            // rows without decoding any cell
+            setColumnsUsed(new boolean[0]);
+        }
+        int count = 0;
+        while (next())
+        {
+            count++;
+        }
+        close();
+        return count;
+    }
+
+    @Override
+    public void close()
+    {
+        buf = null;
+        if (pipeline != null)
+        {
+            pipeline.stop();
+            pipeline = null;
+        }
+        closeSource();
+    }
+
+    @Override
+    public String[] getColumnNames()
+    {
+        return columnNames;
+    }
+
+    /**
+     * Search for the column with the given name
+     *
+     * @param columnName  Name of the column
+     * @return            1-based column index
+     * @throws Exception  When the column is not found
+     */
+    protected int findColumn(String columnName) throws Exception
+    {
+        columnIndex = XlsColumnIndex.forColumns(columnIndex, columnNames);
+        return columnIndex.getColumn(columnName);
+    }
+
+    @Override
+    public int getColumnType(int columnIndex)
+    {
+        return row.getType(columnIndex - 1);
+    }
+
+    @Override
+    public boolean isColumnDate(int columnIndex)
+    {
+        return row.isDate(columnIndex - 1);
+    }
+
+    @Override
+    public String getColumn(int columnIndex)
+    {
+        return toString(row, columnIndex - 1);
+    }
+
+    @Override
+    public boolean getColumnBoolean(int columnIndex)
+    {
+        int col = columnIndex - 1;
+        switch (row.getType(col))
+        {
+            case XlsRowBuffer.BOOLEAN:
+            case XlsRowBuffer.NUMERIC:
+                return row.numbers[col] != 0;
+            case XlsRowBuffer.STRING:
+                return Boolean.valueOf(row.strings[col].trim());
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public Date getColumnDate(int columnIndex) throws ParseException
+    {
+        int col = columnIndex - 1;
+        switch (row.getType(col))
+        {
+            case XlsRowBuffer.NUMERIC:
+                return DateUtil.getJavaDate(row.numbers[col], date1904);
+            case XlsRowBuffer.STRING:
+                String sData = row.strings[col];
+                if (sData.trim().length() == 0)
+                {
+                    return null;
+                }
+                return parseDate(sData);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Use a parser compiled by the connection for dates stored as text
+     *
+     * @param dateParser  Parser for the stringDateFormat
+     */
+    void setDateParser(XlsDateParser dateParser)
+    {
+        this.dateParser = dateParser;
+    }
+
+    /**
+     * Parse a date stored as text with the stringDateFormat
+     *
+     * @param text  The text of the cell
+     * @return      The date
+     * @throws ParseException  When the text is not a date
+     */
+    private Date parseDate(String text) throws ParseException
+    {
+        dateParser = XlsDateParser.forPattern(dateParser, getStringDateFormat());
+        return dateParser.parse(text);
+    }
+
+    @Override
+    public double getColumnDouble(int columnIndex)
+    {
+        int col = columnIndex - 1;
+        switch (row.getType(col))
+        {
+            case XlsRowBuffer.NUMERIC:
+            case XlsRowBuffer.BOOLEAN:
+                return row.numbers[col];
+            case XlsRowBuffer.STRING:
+                return Double.parseDouble(row.strings[col].trim());
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public int getColumnInt(int columnIndex)
+    {
+        return (int) getColumnDouble(columnIndex);
+    }
+
+    @Override
+    public long getColumnLong(int columnIndex)
+    {
+        return (long) getColumnDouble(columnIndex);
+    }
+
+    @Override
+    public short getColumnShort(int columnIndex)
+    {
+        return (short) getColumnDouble(columnIndex);
+    }
+
+    @Override
+    public String getColumn(String columnName) throws Exception
+    {
+        return getColumn(findColumn(columnName));
+    }
+
+    @Override
+    public Date getColumnDate(String columnName) throws Exception
+    {
+        return getColumnDate(findColumn(columnName));
+    }
+
+    @Override
+    public double getColumnDouble(String columnName) throws Exception
+    {
+        return getColumnDouble(findColumn(columnName));
+    }
+
+    @Override
+    public int getColumnInt(String columnName) throws Exception
+    {
+        return getColumnInt(findColumn(columnName));
+    }
+
+    @Override
+    public long getColumnLong(String columnName) throws Exception
+    {
+        return getColumnLong(findColumn(columnName));
+    }
+
+    @Override
+    public short getColumnShort(String columnName) throws Exception
+    {
+        return getColumnShort(findColumn(columnName));
+    }
+
+    /**
+     * Convert a cell of the given row into its string representation,
+     * the same way as the POIReader does it.
+     */
+    static String toString(XlsRowBuffer data, int col)
+    {
+        switch (data.getType(col))
+        {
+            case XlsRowBuffer.STRING:
+                return data.strings[col];
+            case XlsRowBuffer.NUMERIC:
+                return XlsNumberFormat.toString(data.numbers[col]);
+            case XlsRowBuffer.BOOLEAN:
+                return data.numbers[col] != 0 ? "TRUE" : "FALSE";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public char getSeparator()
+    {
+        return separator;
+    }
+
+    @Override
+    public void setSeparator(char separator)
+    {
+        this.separator = separator;
+    }
+
+    @Override
+    public boolean isSuppressHeaders()
+    {
+        return suppressHeaders;
+    }
+
+    @Override
+    public void setSuppressHeaders(boolean suppressHeaders)
+    {
+        this.suppressHeaders = suppressHeaders;
+    }
+
+    @Override
+    public String getStringDateFormat()
+    {
+        return stringDateFormat;
+    }
+
+    @Override
+    public void setStringDateFormat(String stringDateFormat)
+    {
+        this.stringDateFormat = stringDateFormat;
+    }
+
+    @Override
+    public String getSheetName()
+    {
+        return sheetName;
+    }
+
+    @Override
+    public void setSheetName(String sheetName)
+    {
+        this.sheetName = sheetName;
+    }
+
+    @Override
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    @Override
+    public void setFileName(String fileName)
+    {
+        this.fileName = fileName;
+    }
+}
@@ -0,0 +1,557 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DBCellRecord;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.DimensionsRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FormatRecord;
+import org.apache.poi.hssf.record.FilePassRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.IndexRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.formula.eval.ErrorEval;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Streaming reader for .xls (BIFF8) files.
+ *
+ * The BIFF records of the workbook stream are pulled one at a time and the
+ * cell records are collected into rows as they pass by. Only the shared
+ * string table and the current row are kept in memory, no HSSFWorkbook
+ * object graph is built.
+ *
+ * Like the POIReader the sheet ends at the first missing row, the rows
+ * after it are not returned. A row without cells which is only formatted
+ * is returned as empty row.
+ *
+ * COUNT(*) without a where clause is answered from the DIMENSIONS record
+ * when the ROW records, found through the INDEX record of the sheet, show
+ * that no row is missing. Only the ROW records are read, the cells are
+ * skipped.
+ *
+ * Select it with the driver property
+ * XlsReaderClass=org.aarboard.jdbc.xls.HSSFEventReader
+ *
+ * @author Andre Schild
+ */
+public class HSSFEventReader extends AbstractRowReader
+{
+    private NPOIFSFileSystem fs = null;
+    private InputStream workbookStream = null;
+    private RecordFactoryInputStream records = null;
+    private SSTRecord sst = null;
+    /** Next cell record, read ahead while looking for the end of a row */
+    private Record lookahead = null;
+    /** Row numbers of ROW records seen ahead of their cells, in ascending order */
+    private int[] pendingRows = new int[32];
+    private int pendingHead = 0;
+    private int pendingTail = 0;
+    private int lastRow = -1;
+    /** Nesting level of BOF/EOF pairs inside the current sheet (embedded charts) */
+    private int bofDepth = 0;
+    /** Last row + 1 of the DIMENSIONS record, -1 when not seen */
+    private int dimensionRows = -1;
+    /** INDEX record of the sheet, null when not seen */
+    private IndexRecord index = null;
+    /** The workbook is encrypted, the raw records cannot be read */
+    private boolean encrypted = false;
+    /** Extended formats (XF records) with a date or time number format */
+    private boolean[] dateFormats = new boolean[0];
+
+    /**
+     * Constructor for the HSSFEventReader object
+     *
+     */
+    public HSSFEventReader()
+    {
+    }
+
+    @Override
+    protected void openSource() throws Exception
+    {
+        fs = new NPOIFSFileSystem(new File(getFileName()), true);
+        workbookStream = fs.createDocumentInputStream(HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot()));
+        records = new RecordFactoryInputStream(workbookStream, false);
+
+        // Workbook globals: shared strings, date system, formats and sheet names
+        List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+        List<ExtendedFormatRecord> extendedFormats = new ArrayList<ExtendedFormatRecord>();
+        Map<Integer, String> formatStrings = new HashMap<Integer, String>();
+        Record rec;
+        while ((rec = records.nextRecord()) != null)
+        {
+            if (rec instanceof BoundSheetRecord)
+            {
+                boundSheets.add((BoundSheetRecord) rec);
+            }
+            else if (rec instanceof SSTRecord)
+            {
+                sst = (SSTRecord) rec;
+            }
+            else if (rec instanceof FilePassRecord)
+            {
+                encrypted = true;
+            }
+            else if (rec instanceof DateWindow1904Record)
+            {
+                date1904 = ((DateWindow1904Record) rec).getWindowing() == 1;
+            }
+            else if (rec instanceof ExtendedFormatRecord)
+            {
+                extendedFormats.add((ExtendedFormatRecord) rec);
+            }
+            else if (rec instanceof FormatRecord)
+            {
+                FormatRecord format = (FormatRecord) rec;
+                formatStrings.put(Integer.valueOf(format.getIndexCode()), format.getFormatString());
+            }
+            else if (rec instanceof EOFRecord)
+            {
+                break;
+            }
+        }
+        dateFormats = new boolean[extendedFormats.size()];
+        for (int i = 0; i < dateFormats.length; i++)
+        {
+            int formatIndex = extendedFormats.get(i).getFormatIndex();
+            String formatString = formatStrings.get(Integer.valueOf(formatIndex));
+            if (formatString == null)
+            {
+                formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+            }
+            dateFormats[i] = DateUtil.isADateFormat(formatIndex, formatString);
+        }
+
+        // The substreams of the sheets follow in the order of their position
+        int sheetIndex = -1;
+        if (getSheetName() != null)
+        {
+            BoundSheetRecord[] sheets = BoundSheetRecord.orderByBofPosition(boundSheets);
+            for (int i = 0; i < sheets.length && sheetIndex < 0; i++)
+            {
+                if (getSheetName().equalsIgnoreCase(sheets[i].getSheetname()))
+                {
+                    sheetIndex = i;
+                }
+            }
+            if (sheetIndex < 0)
+            {
+                throw new Exception("Sheet '" + getSheetName() + "' not found in '" + getFileName() + "'");
+            }
+        }
+
+        // Skip forward to the requested or the first worksheet substream
+        int depth = 0;
+        int substream = 0;
+        while ((rec = records.nextRecord()) != null)
+        {
+            if (rec instanceof BOFRecord)
+            {
+                if (depth == 0)
+                {
+                    boolean found;
+                    if (sheetIndex < 0)
+                    {
+                        found = ((BOFRecord) rec).getType() == BOFRecord.TYPE_WORKSHEET;
+                    }
+                    else
+                    {
+                        found = substream == sheetIndex;
+                    }
+                    substream++;
+                    if (found)
+                    {
+                        bofDepth = 1;
+                        return;
+                    }
+                }
+                depth++;
+            }
+            else if (rec instanceof EOFRecord)
+            {
+                depth--;
+            }
+        }
+        throw new Exception("No sheet found in '" + getFileName() + "'");
+    }
+
+    @Override
+    protected boolean readRow(XlsRowBuffer row) throws Exception
+    {
+        Record rec = lookahead;
+        lookahead = null;
+        if (rec == null)
+        {
+            rec = nextCellRecord();
+        }
+        int cellRow = rec == null ? Integer.MAX_VALUE : getRow(rec);
+        // Skip ROW records of rows already emitted through their cells
+        while (pendingHead < pendingTail && pendingRows[pendingHead] <= lastRow)
+        {
+            pendingHead++;
+        }
+        boolean formattedOnly = pendingHead < pendingTail && pendingRows[pendingHead] < cellRow;
+        if (rec == null && !formattedOnly)
+        {
+            return false;
+        }
+        if ((formattedOnly ? pendingRows[pendingHead] : cellRow) != lastRow + 1)
+        {
+            // The sheet ends at the first missing row, like with the POIReader.
+            // Kept as lookahead, so the following calls end here again.
+            lookahead = rec;
+            return false;
+        }
+        if (formattedOnly)
+        {
+            // Row without any cells, only formatted
+            row.rowNum = pendingRows[pendingHead++];
+            lastRow = row.rowNum;
+            lookahead = rec;
+            return true;
+        }
+        row.rowNum = cellRow;
+        lastRow = cellRow;
+        while (rec != null && getRow(rec) == cellRow)
+        {
+            setCell(row, rec);
+            rec = lookahead != null ? lookahead : nextCellRecord();
+            lookahead = null;
+        }
+        lookahead = rec;
+        return true;
+    }
+
+    /**
+     * Read up to the next cell record of the current sheet
+     *
+     * @return The record or null at the end of the sheet
+     */
+    private Record nextCellRecord()
+    {
+        if (records == null || bofDepth == 0)
+        {
+            return null;
+        }
+        Record rec;
+        while ((rec = records.nextRecord()) != null)
+        {
+            if (rec instanceof BOFRecord)
+            {
+                bofDepth++;
+            }
+            else if (rec instanceof EOFRecord)
+            {
+                if (--bofDepth == 0)
+                {
+                    return null;
+                }
+            }
+            else if (bofDepth == 1 && rec instanceof RowRecord)
+            {
+                addPendingRow(((RowRecord) rec).getRowNumber());
+            }
+            else if (bofDepth == 1 && rec instanceof DimensionsRecord)
+            {
+                dimensionRows = ((DimensionsRecord) rec).getLastRow();
+            }
+            else if (bofDepth == 1 && rec instanceof IndexRecord)
+            {
+                index = (IndexRecord) rec;
+            }
+            else if (bofDepth == 1
+                    && (rec instanceof CellValueRecordInterface || rec instanceof MulBlankRecord))
+            {
+                return rec;
+            }
+        }
+        bofDepth = 0;
+        return null;
+    }
+
+    @Override
+    protected int getDimensionRows()
+    {
+        return dimensionRows;
+    }
+
+    @Override
+    protected int getMetadataRows() throws Exception
+    {
+        if (index == null || encrypted || dimensionRows < 0)
+        {
+            return -1;
+        }
+        String streamName = HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot());
+
+        // Every DBCELL record holds the offset back to the first ROW record
+        // of its block of rows
+        long[] blocks = new long[index.getNumDbcells()];
+        DocumentInputStream in = fs.createDocumentInputStream(streamName);
+        try
+        {
+            long pos = 0;
+            for (int i = 0; i < blocks.length; i++)
+            {
+                long dbCell = index.getDbcellAt(i) & 0xFFFFFFFFL;
+                if (!skipTo(in, pos, dbCell) || in.available() < 8 || in.readUShort() != DBCellRecord.sid)
+                {
+                    return -1;
+                }
+                in.readUShort();
+                blocks[i] = dbCell - (in.readInt() & 0xFFFFFFFFL);
+                pos = dbCell + 8;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        // The ROW records must number the rows from 0 up to the dimension
+        // without a gap, like next() returns them
+        int rows = 0;
+        in = fs.createDocumentInputStream(streamName);
+        try
+        {
+            long pos = 0;
+            for (int i = 0; i < blocks.length; i++)
+            {
+                if (!skipTo(in, pos, blocks[i]))
+                {
+                    return -1;
+                }
+                pos = blocks[i];
+                while (in.available() >= 6)
+                {
+                    pos += 2;
+                    if (in.readUShort() != RowRecord.sid)
+                    {
+                        break;
+                    }
+                    int length = in.readUShort();
+                    if (length < 2 || in.readUShort() != rows || in.skip(length - 2) != length - 2)
+                    {
+                        return -1;
+                    }
+                    rows++;
+                    pos += 2 + length;
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return rows == dimensionRows ? rows : -1;
+    }
+
+    /**
+     * Skip forward in the workbook stream
+     *
+     * @return  false when the position is behind the current one or
+     *          outside of the stream
+     */
+    private static boolean skipTo(DocumentInputStream in, long pos, long target) throws IOException
+    {
+        return target >= pos && in.skip(target - pos) == target - pos;
+    }
+
+    private void addPendingRow(int rowNum)
+    {
+        if (pendingHead == pendingTail)
+        {
+            pendingHead = 0;
+            pendingTail = 0;
+        }
+        if (pendingTail == pendingRows.length)
+        {
+            pendingRows = Arrays.copyOf(pendingRows, pendingRows.length * 2);
+        }
+        pendingRows[pendingTail++] = rowNum;
+    }
+
+    private static int getRow(Record rec)
+    {
+        if (rec instanceof MulBlankRecord)
+        {
+            return ((MulBlankRecord) rec).getRow();
+        }
+        return ((CellValueRecordInterface) rec).getRow();
+    }
+
+    private void setCell(XlsRowBuffer row, Record rec)
+    {
+        if (rec instanceof MulBlankRecord)
+        {
+            MulBlankRecord blanks = (MulBlankRecord) rec;
+            row.setBlank(blanks.getLastColumn());
+            return;
+        }
+        int col = ((CellValueRecordInterface) rec).getColumn();
+        if (!isColumnUsed(col))
+        {
+            // Not selected, the STRING record of a string formula is
+            // skipped by nextCellRecord()
+            return;
+        }
+        if (rec instanceof NumberRecord)
+        {
+            setNumber(row, col, ((NumberRecord) rec).getValue(), rec);
+        }
+        else if (rec instanceof LabelSSTRecord)
+        {
+            row.setString(col, sst.getString(((LabelSSTRecord) rec).getSSTIndex()).getString());
+        }
+        else if (rec instanceof LabelRecord)
+        {
+            row.setString(col, ((LabelRecord) rec).getValue());
+        }
+        else if (rec instanceof BoolErrRecord)
+        {
+            BoolErrRecord boolErr = (BoolErrRecord) rec;
+            if (boolErr.isBoolean())
+            {
+                row.setBoolean(col, boolErr.getBooleanValue());
+            }
+            else
+            {
+                row.setString(col, ErrorEval.getText(boolErr.getErrorValue()));
+            }
+        }
+        else if (rec instanceof FormulaRecord)
+        {
+            FormulaRecord formula = (FormulaRecord) rec;
+            switch (formula.getCachedResultType())
+            {
+                case Cell.CELL_TYPE_STRING:
+                    row.setString(col, readFormulaString());
+                    break;
+                case Cell.CELL_TYPE_BOOLEAN:
+                    row.setBoolean(col, formula.getCachedBooleanValue());
+                    break;
+                case Cell.CELL_TYPE_ERROR:
+                    row.setString(col, ErrorEval.getText(formula.getCachedErrorValue()));
+                    break;
+                default:
+                    setNumber(row, col, formula.getValue(), rec);
+            }
+        }
+        else if (rec instanceof BlankRecord)
+        {
+            row.setBlank(col);
+        }
+    }
+
+    private void setNumber(XlsRowBuffer row, int col, double value, Record rec)
+    {
+        int xfIndex = ((CellValueRecordInterface) rec).getXFIndex();
+        if (xfIndex >= 0 && xfIndex < dateFormats.length && dateFormats[xfIndex])
+        {
+            row.setDate(col, value);
+        }
+        else
+        {
+            row.setNumber(col, value);
+        }
+    }
+
+    /**
+     * The cached text of a string formula is stored in the STRING record
+     * following the FORMULA record.
+     */
+    private String readFormulaString()
+    {
+        Record rec;
+        while ((rec = records.nextRecord()) != null)
+        {
+            if (rec instanceof StringRecord)
+            {
+                return ((StringRecord) rec).getString();
+            }
+            if (rec instanceof CellValueRecordInterface || rec instanceof MulBlankRecord)
+            {
+                lookahead = rec;
+                break;
+            }
+            if (rec instanceof EOFRecord)
+            {
+                bofDepth = 0;
+                break;
+            }
+        }
+        return "";
+    }
+
+    @Override
+    protected void closeSource()
+    {
+        records = null;
+        sst = null;
+        lookahead = null;
+        pendingHead = 0;
+        pendingTail = 0;
+        lastRow = -1;
+        bofDepth = 0;
+        index = null;
+        try
+        {
+            if (workbookStream != null)
+            {
+                workbookStream.close();
+            }
+            if (fs != null)
+            {
+                fs.close();
+            }
+        }
+        catch (Exception e)
+        {
+        }
+        workbookStream = null;
+        fs = null;
+    }
+}
@@ -31,12 +31,17 @@ import java.util.Date;
  */
 public interface IXlsReader
 {
+    /** Cell types returned by getColumnType() */
+    public static final int TYPE_BLANK = 0;
+    public static final int TYPE_STRING = 1;
+    public static final int TYPE_NUMERIC = 2;
+    public static final int TYPE_BOOLEAN = 3;
 
     public void openFile() throws java.lang.Exception;
 
     /**
-     * Description of the Method
-     * 
+     * Release the file. The values of the current row can still be read
+     * afterwards, next() returns false.
      * 
      * @since 
      */
@@ -163,6 +168,24 @@ public interface IXlsReader
      */
     long getColumnLong(int columnIndex);
 
+    /**
+     * Get the type of the cell at the specified index in the current row.
+     * Missing and empty cells are reported as TYPE_BLANK.
+     *
+     * @param columnIndex  1-based column index
+     * @return One of the TYPE_xxx constants
+     */
+    int getColumnType(int columnIndex);
+
+    /**
+     * Check if the cell at the specified index in the current row is a
+     * numeric cell formatted as date or time.
+     *
+     * @param columnIndex  1-based column index
+     * @return true for a date cell, false for all other cells
+     */
+    boolean isColumnDate(int columnIndex);
+
     /**
      * Gets the columnNames attribute of the XlsReader object
      * 
@@ -204,6 +227,46 @@ public interface IXlsReader
      */
     boolean next() throws Exception;
 
+    /**
+     * Set the condition rows must fulfill to be returned by next().
+     * Rows failing the condition are skipped inside the reader, before any
+     * of their values are handed out.
+     *
+     * @param whereClause  Condition bound to the columns of this reader, or null
+     */
+    public void setWhereClause(XlsCondition whereClause);
+
+    /**
+     * Restrict the decoding of the following rows to the given columns.
+     * Readers may report the values of all other columns as empty, which
+     * saves the parsing and conversion of cells nobody asked for.
+     *
+     * @param columnsUsed  Flag per entry of getColumnNames(), or null for all columns
+     */
+    public void setColumnsUsed(boolean[] columnsUsed);
+
+    /**
+     * Count the rows fulfilling the where clause, instead of reading them
+     * with next(). Readers may answer without reading the rows when there
+     * is no where clause and the count is known to be the same as the rows
+     * returned by next(). Must be called right after openFile(), the reader is
+     * closed afterwards.
+     *
+     * @return            Number of data rows
+     * @throws Exception  When the file cannot be read
+     */
+    public int countRows() throws Exception;
+
+    /**
+     * Set the name of the sheet to read, the first sheet is read when no
+     * name is set. Sheet names are not case sensitive.
+     *
+     * @param sheetName  Name of the sheet or null
+     */
+    public void setSheetName(String sheetName);
+
+    public String getSheetName();
+
     public char getSeparator();
 
     public void setSeparator(char separator);
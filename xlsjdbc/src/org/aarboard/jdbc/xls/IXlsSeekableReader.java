@@ -0,0 +1,47 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+/**
+ * Reader which can return to a row read before, used by the scrollable
+ * result sets.
+ *
+ * The position of a row is a compact number, like the row number within
+ * the sheet, so the result set only has to keep one int per row to jump
+ * back to any row without reading the rows in between again.
+ *
+ * @author Andre Schild
+ */
+interface IXlsSeekableReader extends IXlsReader
+{
+    /**
+     * Get the position of the current row
+     *
+     * @return  The position, to be passed to seekRow()
+     */
+    int getRowPosition();
+
+    /**
+     * Make a row read before the current row again. A following next()
+     * continues with the row after it. Also allowed after next() returned
+     * false, until the reader is closed.
+     *
+     * @param position    Position returned by getRowPosition()
+     * @throws Exception  When the row cannot be read
+     */
+    void seekRow(int position) throws Exception;
+}
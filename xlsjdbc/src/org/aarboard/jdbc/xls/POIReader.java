@@ -16,14 +16,20 @@
  */
 package org.aarboard.jdbc.xls;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.FileInputStream;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
@@ -42,18 +48,117 @@ import org.apache.poi.ss.usermodel.WorkbookFactory;
  * @version $Id: POIReader.java,v 1.1 2005-11-07 18:08:07 aschild Exp $
  * @created 25 November 2001
  */
-public class POIReader implements IXlsReader
+public class POIReader implements IXlsSeekableReader
 {
     protected Workbook workbook = null;
     private Sheet input;
+    /** The sheet read, kept after the last row for seekRow() */
+    private Sheet sheet = null;
     private int cRow;   // The current row we are on
     private String[] columnNames;
+    /** Lookup of the column names, built on first use */
+    private XlsColumnIndex columnIndex = null;
     private Row columns;
     private Row buf = null;
     private char separator = ',';
     private boolean suppressHeaders = false;
     private String stringDateFormat = null;
     private String fileName = null;
+    private String sheetName = null;
+    /** Workbooks already parsed by the connection, may be null */
+    private WorkbookCache connectionWorkbooks = null;
+    /** Parser for dates stored as text, compiled on first use */
+    private XlsDateParser dateParser = null;
+    private XlsCondition whereClause = null;
+    /** Minimum number of rows scanned by one task of the parallel scan */
+    private static final int MIN_CHUNK_ROWS = 1024;
+    /** Threads for the parallel scan, null to scan sequentially */
+    private ExecutorService scanExecutor = null;
+    private int scanThreads = 1;
+    private boolean parallelScanDone = false;
+    /** Rows matching the where clause, found by the parallel scan */
+    private int[] matchingRows = null;
+    private int matchingCount = 0;
+    private int matchingPos = 0;
+
+    /**
+     * Rows of one chunk matching the where clause
+     */
+    private static final class ScanResult
+    {
+        int[] rows = null;
+        int count = 0;
+        /** Groups of the matching rows, when aggregating */
+        XlsHashAggregator aggregator = null;
+        /** An empty row was found, the sheet ends there */
+        boolean endOfSheet = false;
+    }
+
+    /**
+     * Evaluates the where clause for a range of rows, on a copy of the
+     * reader and the condition so several chunks can run at the same time.
+     */
+    private final class ScanTask implements Callable<ScanResult>
+    {
+        private final int fromRow;
+        private final int toRow;
+        private final boolean collectRows;
+        private final XlsHashAggregator aggregator;
+
+        ScanTask(int fromRow, int toRow, boolean collectRows, XlsHashAggregator aggregator)
+        {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.collectRows = collectRows;
+            this.aggregator = aggregator;
+        }
+
+        @Override
+        public ScanResult call() throws Exception
+        {
+            POIReader chunkReader = new POIReader();
+            chunkReader.columnNames = columnNames;
+            chunkReader.stringDateFormat = stringDateFormat;
+            chunkReader.dateParser = dateParser;
+            // Binding again creates a copy, the LIKE matchers are not thread safe
+            XlsCondition condition = whereClause == null ? null : whereClause.bind(columnNames, new Object[0]);
+            ScanResult result = new ScanResult();
+            if (collectRows)
+            {
+                result.rows = new int[64];
+            }
+            result.aggregator = aggregator;
+            for (int r = fromRow; r < toRow; r++)
+            {
+                Row dataLine = input.getRow(r);
+                if (dataLine == null)
+                {
+                    result.endOfSheet = true;
+                    break;
+                }
+                chunkReader.columns = dataLine;
+                if (condition == null || condition.isTrue(chunkReader))
+                {
+                    if (aggregator != null)
+                    {
+                        aggregator.addRow(chunkReader);
+                    }
+                    if (collectRows)
+                    {
+                        if (result.count == result.rows.length)
+                        {
+                            int[] rows = new int[result.count * 2];
+                            System.arraycopy(result.rows, 0, rows, 0, result.count);
+                            result.rows = rows;
+                        }
+                        result.rows[result.count] = r;
+                    }
+                    result.count++;
+                }
+            }
+            return result;
+        }
+    }
 
     /**
      * Constructor for the POIReader object
@@ -101,14 +206,58 @@ public class POIReader implements IXlsReader
     @Override
     public void openFile() throws Exception
     {
-        InputStream inp= new FileInputStream(fileName);
-
-        workbook = WorkbookFactory.create(inp);
+        File file = new File(fileName);
+        long length = file.length();
+        long lastModified = file.lastModified();
+        WorkbookCache cache = WorkbookCache.getInstance();
+        workbook = null;
+        if (connectionWorkbooks != null)
+        {
+            workbook = connectionWorkbooks.get(file);
+        }
+        if (workbook == null)
+        {
+            workbook = cache.get(file);
+            if (workbook == null)
+            {
+                InputStream inp = new FileInputStream(file);
+                try
+                {
+                    workbook = WorkbookFactory.create(inp);
+                }
+                finally
+                {
+                    inp.close();
+                }
+                cache.put(file, length, lastModified, workbook);
+            }
+            if (connectionWorkbooks != null)
+            {
+                connectionWorkbooks.put(file, length, lastModified, workbook);
+            }
+        }
 
         // workbook = Workbook.getWorkbook(new File(fileName));
-        int sCount = workbook.getNumberOfSheets();
-        input = workbook.getSheetAt(0);
+        if (sheetName == null)
+        {
+            input = workbook.getSheetAt(0);
+        }
+        else
+        {
+            input = workbook.getSheet(sheetName);
+            if (input == null)
+            {
+                throw new Exception("Sheet '" + sheetName + "' not found in '" + fileName + "'");
+            }
+        }
+        sheet = input;
         cRow = 0;
+        if (input.getRow(cRow) == null)
+        {
+            // Empty sheet
+            columnNames = new String[0];
+            return;
+        }
 
         //input = new BufferedReader(new FileReader(fileName));
         if (this.isSuppressHeaders())
@@ -150,6 +299,19 @@ public class POIReader implements IXlsReader
         }
     }
 
+    /**
+     * Search for the column with the given name
+     *
+     * @param columnName  Name of the column
+     * @return            1-based column index
+     * @throws Exception  When the column is not found
+     */
+    private int findColumn(String columnName) throws Exception
+    {
+        columnIndex = XlsColumnIndex.forColumns(columnIndex, columnNames);
+        return columnIndex.getColumn(columnName);
+    }
+
     /**
      * Gets the columnNames attribute of the POIReader object
      * 
@@ -164,6 +326,42 @@ public class POIReader implements IXlsReader
         return columnNames;
     }
 
+    @Override
+    public int getColumnType(int columnIndex)
+    {
+        Cell thisCell = columns.getCell(columnIndex - 1);
+        if (thisCell == null)
+        {
+            return TYPE_BLANK;
+        }
+        int cellType = thisCell.getCellType();
+        if (cellType == Cell.CELL_TYPE_FORMULA)
+        {
+            cellType = thisCell.getCachedFormulaResultType();
+        }
+        switch (cellType)
+        {
+            case Cell.CELL_TYPE_STRING:
+                return TYPE_STRING;
+            case Cell.CELL_TYPE_NUMERIC:
+                return TYPE_NUMERIC;
+            case Cell.CELL_TYPE_BOOLEAN:
+                return TYPE_BOOLEAN;
+            default:
+                return TYPE_BLANK;
+        }
+    }
+
+    @Override
+    public boolean isColumnDate(int columnIndex)
+    {
+        if (getColumnType(columnIndex) != TYPE_NUMERIC)
+        {
+            return false;
+        }
+        return DateUtil.isCellDateFormatted(columns.getCell(columnIndex - 1));
+    }
+
     /**
      * Get the value of the column at the specified index.
      *
@@ -174,28 +372,42 @@ public class POIReader implements IXlsReader
     @Override
     public String getColumn(int columnIndex)
     {
-        Cell thisCell = columns.getCell( columnIndex-1);
-        switch (thisCell.getCellType())
+        switch (getColumnType(columnIndex))
         {
-            case Cell.CELL_TYPE_STRING:
-                return thisCell.getStringCellValue();
-            case Cell.CELL_TYPE_NUMERIC:
-                double cValue = thisCell.getNumericCellValue();
-                CellStyle cStyle = thisCell.getCellStyle();
-                short cFormatIndex = cStyle.getDataFormat();
-                DataFormat thisFormat = workbook.createDataFormat();
-                // String cFormat= thisFormat.getFormat(cFormatIndex);
-                String retVal = Double.toString(cValue);
-                if (retVal.substring(retVal.length() - 2).equals(".0"))
-                {
-                    retVal = retVal.substring(0, retVal.length() - 2);
-                }
-                return retVal;
+            case TYPE_STRING:
+                return columns.getCell(columnIndex - 1).getStringCellValue();
+            case TYPE_NUMERIC:
+                return XlsNumberFormat.toString(columns.getCell(columnIndex - 1).getNumericCellValue());
+            case TYPE_BOOLEAN:
+                return columns.getCell(columnIndex - 1).getBooleanCellValue() ? "TRUE" : "FALSE";
             default:
-                return thisCell.getStringCellValue();
+                return null;
         }
     }
 
+    /**
+     * Use a parser compiled by the connection for dates stored as text
+     *
+     * @param dateParser  Parser for the stringDateFormat
+     */
+    void setDateParser(XlsDateParser dateParser)
+    {
+        this.dateParser = dateParser;
+    }
+
+    /**
+     * Parse a date stored as text with the stringDateFormat
+     *
+     * @param text  The text of the cell
+     * @return      The date
+     * @throws ParseException  When the text is not a date
+     */
+    private Date parseDate(String text) throws ParseException
+    {
+        dateParser = XlsDateParser.forPattern(dateParser, getStringDateFormat());
+        return dateParser.parse(text);
+    }
+
     /**
      * Get the value of the column at the specified index.
      *
@@ -206,29 +418,21 @@ public class POIReader implements IXlsReader
     @Override
     public Date getColumnDate(int columnIndex) throws ParseException
     {
-        Cell cellData = columns.getCell(columnIndex-1);
         Date retVal = null;
-        try
-        {
-            retVal = cellData.getDateCellValue();
-        }
-        catch (NumberFormatException e)
+        switch (getColumnType(columnIndex))
         {
-            // Occurs when the cell is a string
-            String sData = cellData.getStringCellValue();
-            if (sData != null && sData.trim().length() > 0)
-            {
-                SimpleDateFormat sdFormat;
-                if (getStringDateFormat() == null)
+            case TYPE_STRING:
+                String sData = columns.getCell(columnIndex - 1).getStringCellValue();
+                if (sData != null && sData.trim().length() > 0)
                 {
-                    sdFormat = new SimpleDateFormat();
+                    retVal = parseDate(sData);
                 }
-                else
-                {
-                    sdFormat = new SimpleDateFormat(getStringDateFormat());
-                }
-                retVal = sdFormat.parse(sData);
-            }
+                break;
+            case TYPE_NUMERIC:
+                retVal = columns.getCell(columnIndex - 1).getDateCellValue();
+                break;
+            default:
+                break;
         }
         return retVal;
     }
@@ -243,7 +447,17 @@ public class POIReader implements IXlsReader
     @Override
     public boolean getColumnBoolean(int columnIndex)
     {
-        return columns.getCell(columnIndex-1).getBooleanCellValue();
+        switch (getColumnType(columnIndex))
+        {
+            case TYPE_BOOLEAN:
+                return columns.getCell(columnIndex - 1).getBooleanCellValue();
+            case TYPE_NUMERIC:
+                return columns.getCell(columnIndex - 1).getNumericCellValue() != 0;
+            case TYPE_STRING:
+                return Boolean.valueOf(columns.getCell(columnIndex - 1).getStringCellValue().trim());
+            default:
+                return false;
+        }
     }
 
     /**
@@ -256,7 +470,17 @@ public class POIReader implements IXlsReader
     @Override
     public double getColumnDouble(int columnIndex)
     {
-        return columns.getCell(columnIndex-1).getNumericCellValue();
+        switch (getColumnType(columnIndex))
+        {
+            case TYPE_NUMERIC:
+                return columns.getCell(columnIndex - 1).getNumericCellValue();
+            case TYPE_BOOLEAN:
+                return columns.getCell(columnIndex - 1).getBooleanCellValue() ? 1 : 0;
+            case TYPE_STRING:
+                return Double.parseDouble(columns.getCell(columnIndex - 1).getStringCellValue().trim());
+            default:
+                return 0;
+        }
     }
 
     /**
@@ -269,7 +493,7 @@ public class POIReader implements IXlsReader
     @Override
     public int getColumnInt(int columnIndex)
     {
-        return (int) columns.getCell(columnIndex-1).getNumericCellValue();
+        return (int) getColumnDouble(columnIndex);
     }
 
     /**
@@ -282,7 +506,7 @@ public class POIReader implements IXlsReader
     @Override
     public long getColumnLong(int columnIndex)
     {
-        return (long) columns.getCell(columnIndex-1).getNumericCellValue();
+        return (long) getColumnDouble(columnIndex);
     }
 
     /**
@@ -295,7 +519,7 @@ public class POIReader implements IXlsReader
     @Override
     public short getColumnShort(int columnIndex)
     {
-        return (short) columns.getCell(columnIndex-1).getNumericCellValue();
+        return (short) getColumnDouble(columnIndex);
     }
 
     /**
@@ -310,15 +534,7 @@ public class POIReader implements IXlsReader
     @Override
     public String getColumn(String columnName) throws Exception
     {
-        columnName = columnName.toUpperCase();
-        for (int loop = 0; loop < columnNames.length; loop++)
-        {
-            if (columnName.equals(columnNames[loop]))
-            {
-                return getColumn(loop);
-            }
-        }
-        throw new Exception("Column '" + columnName + "' not found.");
+        return getColumn(findColumn(columnName));
     }
 
     /**
@@ -333,15 +549,7 @@ public class POIReader implements IXlsReader
     @Override
     public Date getColumnDate(String columnName) throws Exception
     {
-        columnName = columnName.toUpperCase();
-        for (int loop = 0; loop < columnNames.length; loop++)
-        {
-            if (columnName.equals(columnNames[loop]))
-            {
-                return getColumnDate(loop);
-            }
-        }
-        throw new Exception("Column '" + columnName + "' not found.");
+        return getColumnDate(findColumn(columnName));
     }
 
     /**
@@ -355,15 +563,7 @@ public class POIReader implements IXlsReader
      */
     public boolean getColumnBoolean(String columnName) throws Exception
     {
-        columnName = columnName.toUpperCase();
-        for (int loop = 0; loop < columnNames.length; loop++)
-        {
-            if (columnName.equals(columnNames[loop]))
-            {
-                return getColumnBoolean(loop);
-            }
-        }
-        throw new Exception("Column '" + columnName + "' not found.");
+        return getColumnBoolean(findColumn(columnName));
     }
 
     /**
@@ -378,15 +578,7 @@ public class POIReader implements IXlsReader
     @Override
     public double getColumnDouble(String columnName) throws Exception
     {
-        columnName = columnName.toUpperCase();
-        for (int loop = 0; loop < columnNames.length; loop++)
-        {
-            if (columnName.equals(columnNames[loop]))
-            {
-                return getColumnDouble(loop);
-            }
-        }
-        throw new Exception("Column '" + columnName + "' not found.");
+        return getColumnDouble(findColumn(columnName));
     }
 
     /**
@@ -401,15 +593,7 @@ public class POIReader implements IXlsReader
     @Override
     public int getColumnInt(String columnName) throws Exception
     {
-        columnName = columnName.toUpperCase();
-        for (int loop = 0; loop < columnNames.length; loop++)
-        {
-            if (columnName.equals(columnNames[loop]))
-            {
-                return getColumnInt(loop);
-            }
-        }
-        throw new Exception("Column '" + columnName + "' not found.");
+        return getColumnInt(findColumn(columnName));
     }
 
     /**
@@ -424,15 +608,7 @@ public class POIReader implements IXlsReader
     @Override
     public short getColumnShort(String columnName) throws Exception
     {
-        columnName = columnName.toUpperCase();
-        for (int loop = 0; loop < columnNames.length; loop++)
-        {
-            if (columnName.equals(columnNames[loop]))
-            {
-                return getColumnShort(loop);
-            }
-        }
-        throw new Exception("Column '" + columnName + "' not found.");
+        return getColumnShort(findColumn(columnName));
     }
 
     /**
@@ -447,15 +623,7 @@ public class POIReader implements IXlsReader
     @Override
     public long getColumnLong(String columnName) throws Exception
     {
-        columnName = columnName.toUpperCase();
-        for (int loop = 0; loop < columnNames.length; loop++)
-        {
-            if (columnName.equals(columnNames[loop]))
-            {
-                return getColumnLong(loop);
-            }
-        }
-        throw new Exception("Column '" + columnName + "' not found.");
+        return getColumnLong(findColumn(columnName));
     }
 
     /**
@@ -468,46 +636,293 @@ public class POIReader implements IXlsReader
     @Override
     public boolean next() throws Exception
     {
+        if (!parallelScanDone && scanExecutor != null && whereClause != null && input != null)
+        {
+            parallelScanDone = true;
+            ScanResult result = scanParallel(true, null);
+            if (result != null)
+            {
+                matchingRows = result.rows;
+                matchingCount = result.count;
+            }
+        }
+        if (matchingRows != null)
+        {
+            if (input == null || matchingPos >= matchingCount)
+            {
+                input = null;
+                return false;
+            }
+            columns = input.getRow(matchingRows[matchingPos++]);
+            return true;
+        }
         //columns = new String[columnNames.length];
-        Row dataLine;
-        if (isSuppressHeaders() && (buf != null))
+        do
         {
-            // The buffer is not empty yet, so use this first.
-            dataLine = buf;
-            buf = null;
+            Row dataLine;
+            if (isSuppressHeaders() && (buf != null))
+            {
+                // The buffer is not empty yet, so use this first.
+                dataLine = buf;
+                buf = null;
+            }
+            else
+            {
+                // read new line of data from input.
+                if (cRow > getLastRowNum())
+                {
+                    dataLine = null;
+                }
+                else
+                {
+                    dataLine = input.getRow(cRow++);
+                }
+            }
+            if (dataLine == null)
+            {
+                input = null;
+                // workbook.close();
+                return false;
+            }
+            columns = dataLine;
+        }
+        while (whereClause != null && !whereClause.isTrue(this));
+        return true;
+    }
+
+    @Override
+    public int getRowPosition()
+    {
+        return columns.getRowNum();
+    }
+
+    @Override
+    public void seekRow(int position) throws Exception
+    {
+        if (sheet == null)
+        {
+            throw new Exception("The reader is closed");
+        }
+        input = sheet;
+        buf = null;
+        columns = input.getRow(position);
+        if (matchingRows != null)
+        {
+            matchingPos = Arrays.binarySearch(matchingRows, 0, matchingCount, position) + 1;
         }
         else
         {
-            // read new line of data from input.
-            //
-            // Correct would be a check for >=, but since there is a bug in POI 2.5
-            // who returns one row too less, we do a check on >=
-            //
-            // See and vote: http://issues.apache.org/bugzilla/show_bug.cgi?id=30635
-            //
-            int nRows= input.getLastRowNum();
-            if (nRows == 0)
+            cRow = position + 1;
+        }
+    }
+
+    /**
+     * Number of rows of the sheet, including the header
+     *
+     * @return  0-based index of the last row + 1, or -1 when not opened
+     */
+    int getDimensionRows()
+    {
+        return input == null ? -1 : getLastRowNum() + 1;
+    }
+
+    /**
+     * Number of the last row of the sheet, rows after the first empty row
+     * are not read
+     *
+     * @return  0-based index of the last row
+     */
+    private int getLastRowNum()
+    {
+        // Correct would be a check for >=, but since there is a bug in POI 2.5
+        // who returns one row too less, we do a check on >=
+        //
+        // See and vote: http://issues.apache.org/bugzilla/show_bug.cgi?id=30635
+        //
+        int nRows= input.getLastRowNum();
+        if (nRows == 0)
+        {
+            // See the poi javadoc on this
+            nRows= input.getPhysicalNumberOfRows();
+        }
+        return nRows;
+    }
+
+    /**
+     * Evaluate the where clause for the remaining rows of the sheet in
+     * chunks on the scan threads
+     *
+     * @param collectRows  Return the matching rows, not only their number
+     * @param aggregator   Aggregator to add the matching rows to, null to
+     *                     only count them
+     * @return             The matching rows in sheet order, null when the
+     *                     sheet is too small for a parallel scan
+     * @throws Exception   When the where clause cannot be evaluated
+     */
+    private ScanResult scanParallel(boolean collectRows, XlsHashAggregator aggregator) throws Exception
+    {
+        int fromRow = cRow;
+        int toRow = getLastRowNum() + 1;
+        int rows = toRow - fromRow;
+        if (rows < 2 * MIN_CHUNK_ROWS)
+        {
+            return null;
+        }
+        int chunks = Math.min(rows / MIN_CHUNK_ROWS, scanThreads * 4);
+        int chunkRows = (rows + chunks - 1) / chunks;
+        List<Future<ScanResult>> futures = new ArrayList<Future<ScanResult>>(chunks);
+        for (int start = fromRow; start < toRow; start += chunkRows)
+        {
+            XlsHashAggregator partial = aggregator == null ? null : aggregator.newPartial();
+            futures.add(scanExecutor.submit(new ScanTask(start, Math.min(start + chunkRows, toRow), collectRows, partial)));
+        }
+        List<ScanResult> results = new ArrayList<ScanResult>(futures.size());
+        ScanResult merged = new ScanResult();
+        try
+        {
+            for (int i = 0; i < futures.size(); i++)
             {
-                // See the poi javadoc on this
-                nRows= input.getPhysicalNumberOfRows();
+                ScanResult result = futures.get(i).get();
+                results.add(result);
+                merged.count += result.count;
+                if (aggregator != null)
+                {
+                    // Merged in sheet order, the groups keep their order
+                    aggregator.merge(result.aggregator);
+                }
+                if (result.endOfSheet)
+                {
+                    break;
+                }
             }
-            if (cRow > nRows)
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof Exception)
             {
-                dataLine = null;
+                throw (Exception) e.getCause();
             }
-            else
+            throw e;
+        }
+        finally
+        {
+            for (int i = 0; i < futures.size(); i++)
             {
-                dataLine = input.getRow(cRow++);
+                futures.get(i).cancel(true);
             }
         }
-        if (dataLine == null)
+        if (collectRows)
         {
-            input = null;
-            // workbook.close();
-            return false;
+            merged.rows = new int[merged.count];
+            int pos = 0;
+            for (int i = 0; i < results.size(); i++)
+            {
+                ScanResult result = results.get(i);
+                System.arraycopy(result.rows, 0, merged.rows, pos, result.count);
+                pos += result.count;
+            }
         }
-        columns = dataLine;
-        return true;
+        cRow = toRow;
+        return merged;
+    }
+
+    /**
+     * Aggregate the remaining rows in chunks on the scan threads. Each
+     * chunk fills its own partial aggregator, the partial aggregators are
+     * merged into the given one. Nothing is done when the sheet is too
+     * small, the rows are then still returned by next().
+     *
+     * @param aggregator  Aggregator to add the matching rows to
+     * @throws Exception  When the rows cannot be read
+     */
+    void aggregateParallel(XlsHashAggregator aggregator) throws Exception
+    {
+        if (!parallelScanDone && scanExecutor != null && buf == null && input != null)
+        {
+            parallelScanDone = true;
+            scanParallel(false, aggregator);
+        }
+    }
+
+    /**
+     * Filter, count and aggregate the rows with several threads. Only used
+     * with a where clause or GROUP BY, the rows are scanned in chunks of at
+     * least 1024 rows.
+     *
+     * @param scanExecutor  Threads running the chunks
+     * @param scanThreads   Number of threads of the executor
+     */
+    void setParallelScan(ExecutorService scanExecutor, int scanThreads)
+    {
+        this.scanExecutor = scanExecutor;
+        this.scanThreads = scanThreads;
+    }
+
+    @Override
+    public void setWhereClause(XlsCondition whereClause)
+    {
+        this.whereClause = whereClause;
+    }
+
+    @Override
+    public void setColumnsUsed(boolean[] columnsUsed)
+    {
+        // The whole workbook is already parsed by POI, cells are only
+        // converted when they are read, so there is nothing to skip.
+    }
+
+    /**
+     * Use the workbooks already parsed by the connection and add the
+     * workbook to them once parsed.
+     *
+     * @param connectionWorkbooks  Workbook cache of the connection
+     */
+    void setConnectionWorkbooks(WorkbookCache connectionWorkbooks)
+    {
+        this.connectionWorkbooks = connectionWorkbooks;
+    }
+
+    @Override
+    public String getSheetName()
+    {
+        return sheetName;
+    }
+
+    @Override
+    public void setSheetName(String sheetName)
+    {
+        this.sheetName = sheetName;
+    }
+
+    @Override
+    public int countRows() throws Exception
+    {
+        if (scanExecutor != null && whereClause != null && input != null)
+        {
+            ScanResult result = scanParallel(false, null);
+            if (result != null)
+            {
+                close();
+                return result.count;
+            }
+        }
+        if (whereClause == null && matchingRows == null && buf == null && input != null
+                && input.getPhysicalNumberOfRows() == input.getLastRowNum() + 1)
+        {
+            // No row is missing, next() returns every row up to the last one
+            int count = Math.max(0, input.getLastRowNum() + 1 - cRow);
+            close();
+            return count;
+        }
+        // The rows are already in memory and next() does not convert any
+        // cell, so just walk over them
+        int count = 0;
+        while (next())
+        {
+            count++;
+        }
+        close();
+        return count;
     }
 
     /**
@@ -521,6 +936,7 @@ public class POIReader implements IXlsReader
         try
         {
             input = null;
+            sheet = null;
             // workbook.close();
             buf = null;
         }
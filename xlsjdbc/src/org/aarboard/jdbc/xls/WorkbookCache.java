@@ -0,0 +1,222 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.DriverManager;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Cache of parsed workbooks. The instance returned by getInstance() is JVM
+ * wide and shared by all connections, in addition every connection keeps
+ * its own instance for the last few workbooks it has opened, so queries on
+ * several sheets of the same file parse it only once.
+ *
+ * Entries are keyed by the canonical file path and remember the size and
+ * modification time of the file when it was parsed, a changed file is
+ * parsed again. The least recently used workbooks are dropped once the
+ * estimated size of all cached workbooks exceeds the byte budget set with
+ * the XlsDriver.WORKBOOK_CACHE_SIZE property, or once more workbooks than
+ * allowed are cached. A budget of 0 (the default) disables the cache. The
+ * budget of the JVM wide instance is the one set by the connection opened
+ * last, it applies to all connections.
+ *
+ * Cached workbooks are only read, never modified, by the readers.
+ *
+ * @author Andre Schild
+ */
+final class WorkbookCache
+{
+    /** Rough heap usage of one parsed cell, used to estimate the workbook size */
+    private static final int BYTES_PER_CELL = 200;
+
+    private static final WorkbookCache INSTANCE = new WorkbookCache();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final int maxWorkbooks;
+    private long maxBytes = 0;
+    private long usedBytes = 0;
+
+    private static final class Entry
+    {
+        final long length;
+        final long lastModified;
+        final long size;
+        final Workbook workbook;
+
+        Entry(long length, long lastModified, long size, Workbook workbook)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.workbook = workbook;
+        }
+    }
+
+    private WorkbookCache()
+    {
+        this(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxBytes      Byte budget, 0 disables the cache, Long.MAX_VALUE
+     *                      limits the cache by the number of workbooks only
+     * @param maxWorkbooks  Max. number of cached workbooks
+     */
+    WorkbookCache(long maxBytes, int maxWorkbooks)
+    {
+        this.maxBytes = maxBytes;
+        this.maxWorkbooks = maxWorkbooks;
+    }
+
+    static WorkbookCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the maximum estimated size of all cached workbooks. The budget of
+     * the JVM wide instance is shared by all connections, the one set last
+     * is used. Workbooks over a smaller budget are dropped at once.
+     *
+     * @param maxBytes  Byte budget, 0 disables the cache
+     */
+    synchronized void setMaxBytes(long maxBytes)
+    {
+        maxBytes = Math.max(0, maxBytes);
+        if (maxBytes != this.maxBytes)
+        {
+            DriverManager.println("XlsJdbc - WorkbookCache - budget changed from " + this.maxBytes + " to " + maxBytes + " bytes for all connections");
+            this.maxBytes = maxBytes;
+            evict();
+        }
+    }
+
+    synchronized long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    synchronized boolean isEnabled()
+    {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Get the parsed workbook for the given file
+     *
+     * @param file  The workbook file
+     * @return      The cached workbook or null if not cached or modified since
+     */
+    synchronized Workbook get(File file) throws IOException
+    {
+        if (maxBytes <= 0)
+        {
+            return null;
+        }
+        String key = file.getCanonicalPath();
+        Entry entry = entries.get(key);
+        if (entry == null)
+        {
+            return null;
+        }
+        if (entry.length != file.length() || entry.lastModified != file.lastModified())
+        {
+            DriverManager.println("XlsJdbc - WorkbookCache - file modified, dropping " + key);
+            entries.remove(key);
+            usedBytes -= entry.size;
+            return null;
+        }
+        return entry.workbook;
+    }
+
+    /**
+     * Add a freshly parsed workbook to the cache
+     *
+     * @param file      The workbook file
+     * @param length    Size of the file when it was read
+     * @param lastModified  Modification time of the file when it was read
+     * @param workbook  The parsed workbook
+     */
+    synchronized void put(File file, long length, long lastModified, Workbook workbook) throws IOException
+    {
+        if (maxBytes <= 0)
+        {
+            return;
+        }
+        // Without a byte budget the cells need not be walked
+        long size = maxBytes == Long.MAX_VALUE ? 0 : estimateSize(length, workbook);
+        if (size > maxBytes)
+        {
+            return;
+        }
+        Entry old = entries.put(file.getCanonicalPath(), new Entry(length, lastModified, size, workbook));
+        if (old != null)
+        {
+            usedBytes -= old.size;
+        }
+        usedBytes += size;
+        evict();
+    }
+
+    /**
+     * Drop all cached workbooks
+     */
+    synchronized void clear()
+    {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((usedBytes > maxBytes || entries.size() > maxWorkbooks) && it.hasNext())
+        {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            usedBytes -= eldest.size;
+        }
+    }
+
+    /**
+     * Estimate the heap used by a parsed workbook from its cell count. This
+     * is only a rough estimate, the real usage depends on the cell types,
+     * styles and strings. Counting the cells walks every row of every sheet,
+     * which takes time for large workbooks, so it is only done when a byte
+     * budget is set.
+     */
+    private static long estimateSize(long fileLength, Workbook workbook)
+    {
+        long cells = 0;
+        for (int i = 0; i < workbook.getNumberOfSheets(); i++)
+        {
+            Sheet sheet = workbook.getSheetAt(i);
+            for (Row row : sheet)
+            {
+                cells += row.getPhysicalNumberOfCells();
+            }
+        }
+        return fileLength + cells * BYTES_PER_CELL;
+    }
+}
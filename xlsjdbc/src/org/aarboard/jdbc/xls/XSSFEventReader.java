@@ -0,0 +1,537 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+
+/**
+ * Streaming reader for .xlsx files.
+ *
+ * The sheet XML is pulled from the zip package with a StAX parser and
+ * turned into rows only when next() is called, so the memory used does
+ * not depend on the number of rows in the sheet.
+ *
+ * Like the POIReader the sheet ends at the first missing row, the rows
+ * after it are not returned. The &lt;dimension&gt; element cannot tell a
+ * missing row and the sheet XML has no index of its rows, so COUNT(*)
+ * reads the rows, without decoding any cell.
+ *
+ * Select it with the driver property
+ * XlsReaderClass=org.aarboard.jdbc.xls.XSSFEventReader
+ *
+ * @author Andre Schild
+ */
+public class XSSFEventReader extends AbstractRowReader
+{
+    private OPCPackage pkg = null;
+    private InputStream sheetStream = null;
+    private XMLStreamReader parser = null;
+    private XlsSharedStrings sharedStrings = null;
+    /** Last row + 1 of the &lt;dimension&gt; element, -1 when not present */
+    private int dimensionRows = -1;
+    /** 0-based number of the last row returned, -1 before the first row */
+    private int lastRow = -1;
+    /** A missing row has been found, which ends the sheet */
+    private boolean missingRow = false;
+    /** Cell styles (cellXfs entries) with a date or time number format */
+    private boolean[] dateStyles = new boolean[0];
+
+    private static final String RELATIONSHIPS_NS =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    /**
+     * Constructor for the XSSFEventReader object
+     *
+     */
+    public XSSFEventReader()
+    {
+    }
+
+    @Override
+    protected void openSource() throws Exception
+    {
+        pkg = OPCPackage.open(new File(getFileName()), PackageAccess.READ);
+        XSSFReader xssfReader = new XSSFReader(pkg);
+        sharedStrings = readSharedStrings(pkg);
+
+        List<String> sheetNames = new ArrayList<String>();
+        List<String> sheetRelIds = new ArrayList<String>();
+        InputStream workbookData = xssfReader.getWorkbookData();
+        try
+        {
+            readWorkbook(workbookData, sheetNames, sheetRelIds);
+        }
+        finally
+        {
+            workbookData.close();
+        }
+
+        InputStream stylesData = null;
+        try
+        {
+            stylesData = xssfReader.getStylesData();
+            dateStyles = readDateStyles(stylesData);
+        }
+        catch (Exception e)
+        {
+            // Workbook without styles, all numeric cells are numbers
+        }
+        finally
+        {
+            if (stylesData != null)
+            {
+                stylesData.close();
+            }
+        }
+
+        if (sheetRelIds.isEmpty())
+        {
+            throw new Exception("No sheet found in '" + getFileName() + "'");
+        }
+        int sheetIndex = 0;
+        if (getSheetName() != null)
+        {
+            sheetIndex = -1;
+            for (int i = 0; i < sheetNames.size() && sheetIndex < 0; i++)
+            {
+                if (getSheetName().equalsIgnoreCase(sheetNames.get(i)))
+                {
+                    sheetIndex = i;
+                }
+            }
+            if (sheetIndex < 0)
+            {
+                throw new Exception("Sheet '" + getSheetName() + "' not found in '" + getFileName() + "'");
+            }
+        }
+        sheetStream = xssfReader.getSheet(sheetRelIds.get(sheetIndex));
+        parser = createInputFactory().createXMLStreamReader(sheetStream);
+    }
+
+    /**
+     * Read the shared strings table into a compact store instead of the
+     * POI table, which keeps an XMLBeans object per entry.
+     */
+    private static XlsSharedStrings readSharedStrings(OPCPackage pkg) throws Exception
+    {
+        List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (parts.isEmpty())
+        {
+            return XlsSharedStrings.read(null);
+        }
+        InputStream data = parts.get(0).getInputStream();
+        try
+        {
+            return XlsSharedStrings.read(data);
+        }
+        finally
+        {
+            data.close();
+        }
+    }
+
+    @Override
+    protected boolean readRow(XlsRowBuffer row) throws XMLStreamException
+    {
+        if (parser == null || missingRow)
+        {
+            return false;
+        }
+        while (parser.hasNext())
+        {
+            int event = parser.next();
+            if (event == XMLStreamConstants.START_ELEMENT && "row".equals(parser.getLocalName()))
+            {
+                String rowRef = parser.getAttributeValue(null, "r");
+                int rowNum = rowRef == null ? lastRow + 1 : Integer.parseInt(rowRef) - 1;
+                if (rowNum != lastRow + 1)
+                {
+                    // The sheet ends at the first missing row, like with the POIReader
+                    missingRow = true;
+                    return false;
+                }
+                lastRow = rowNum;
+                row.rowNum = rowNum;
+                readCells(row);
+                return true;
+            }
+            if (event == XMLStreamConstants.START_ELEMENT && "dimension".equals(parser.getLocalName()))
+            {
+                dimensionRows = parseDimension(parser.getAttributeValue(null, "ref"));
+            }
+            if (event == XMLStreamConstants.END_ELEMENT && "sheetData".equals(parser.getLocalName()))
+            {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decode all &lt;c&gt; elements of the current &lt;row&gt; element.
+     */
+    private void readCells(XlsRowBuffer row) throws XMLStreamException
+    {
+        int col = -1;
+        while (parser.hasNext())
+        {
+            int event = parser.next();
+            if (event == XMLStreamConstants.END_ELEMENT && "row".equals(parser.getLocalName()))
+            {
+                return;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT || !"c".equals(parser.getLocalName()))
+            {
+                continue;
+            }
+            String cellRef = parser.getAttributeValue(null, "r");
+            col = cellRef == null ? col + 1 : columnIndex(cellRef);
+            if (!isColumnUsed(col))
+            {
+                // Not selected, skip the value without creating strings
+                // or looking it up in the shared strings table
+                while (parser.hasNext())
+                {
+                    event = parser.next();
+                    if (event == XMLStreamConstants.END_ELEMENT && "c".equals(parser.getLocalName()))
+                    {
+                        break;
+                    }
+                }
+                continue;
+            }
+            String cellType = parser.getAttributeValue(null, "t");
+            String style = parser.getAttributeValue(null, "s");
+            String value = null;
+            while (parser.hasNext())
+            {
+                event = parser.next();
+                if (event == XMLStreamConstants.END_ELEMENT && "c".equals(parser.getLocalName()))
+                {
+                    break;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT)
+                {
+                    String name = parser.getLocalName();
+                    if ("v".equals(name))
+                    {
+                        value = parser.getElementText();
+                    }
+                    else if ("is".equals(name))
+                    {
+                        value = readInlineString();
+                    }
+                }
+            }
+            setCell(row, col, cellType, style, value);
+        }
+    }
+
+    private boolean isDateStyle(String style)
+    {
+        if (style == null)
+        {
+            return false;
+        }
+        try
+        {
+            int index = Integer.parseInt(style);
+            return index >= 0 && index < dateStyles.length && dateStyles[index];
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    @Override
+    protected int getDimensionRows()
+    {
+        return dimensionRows;
+    }
+
+    /**
+     * Get the last row of a dimension reference like "A1:V1094".
+     * A single cell reference is written by some tools for any sheet, so it
+     * is treated as unknown.
+     *
+     * @return  The 1-based last row, or -1
+     */
+    static int parseDimension(String ref)
+    {
+        if (ref == null || ref.indexOf(':') < 0)
+        {
+            return -1;
+        }
+        String last = ref.substring(ref.indexOf(':') + 1);
+        int i = 0;
+        while (i < last.length() && Character.isLetter(last.charAt(i)))
+        {
+            i++;
+        }
+        try
+        {
+            return Integer.parseInt(last.substring(i));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    private void setCell(XlsRowBuffer row, int col, String cellType, String style, String value)
+    {
+        if (value == null || (value.length() == 0 && !"inlineStr".equals(cellType) && !"str".equals(cellType)))
+        {
+            row.setBlank(col);
+        }
+        else if (cellType == null || "n".equals(cellType))
+        {
+            if (isDateStyle(style))
+            {
+                row.setDate(col, Double.parseDouble(value));
+            }
+            else
+            {
+                row.setNumber(col, Double.parseDouble(value));
+            }
+        }
+        else if ("s".equals(cellType))
+        {
+            row.setString(col, sharedStrings.getEntryAt(Integer.parseInt(value)));
+        }
+        else if ("b".equals(cellType))
+        {
+            row.setBoolean(col, "1".equals(value) || "true".equalsIgnoreCase(value));
+        }
+        else
+        {
+            // str, inlineStr and e (error) cells
+            row.setString(col, value);
+        }
+    }
+
+    /**
+     * Collect the text runs of an &lt;is&gt; element, skipping phonetic runs.
+     */
+    private String readInlineString() throws XMLStreamException
+    {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        boolean phonetic = false;
+        while (depth > 0 && parser.hasNext())
+        {
+            int event = parser.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                String name = parser.getLocalName();
+                if ("rPh".equals(name))
+                {
+                    phonetic = true;
+                }
+                if ("t".equals(name))
+                {
+                    String t = parser.getElementText();
+                    if (!phonetic)
+                    {
+                        text.append(t);
+                    }
+                }
+                else
+                {
+                    depth++;
+                }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                if ("rPh".equals(parser.getLocalName()))
+                {
+                    phonetic = false;
+                }
+                depth--;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Convert a cell reference like "AB12" into a 0-based column index
+     */
+    static int columnIndex(String cellRef)
+    {
+        int col = 0;
+        for (int i = 0; i < cellRef.length(); i++)
+        {
+            char c = cellRef.charAt(i);
+            if (c < 'A' || c > 'Z')
+            {
+                break;
+            }
+            col = col * 26 + (c - 'A' + 1);
+        }
+        return col - 1;
+    }
+
+    /**
+     * Read the date system, the names and relation ids of the sheets from
+     * workbook.xml. This avoids loading the XMLBeans workbook model.
+     */
+    private void readWorkbook(InputStream workbookData, List<String> sheetNames, List<String> sheetRelIds)
+            throws XMLStreamException
+    {
+        XMLStreamReader wbParser = createInputFactory().createXMLStreamReader(workbookData);
+        try
+        {
+            while (wbParser.hasNext())
+            {
+                if (wbParser.next() != XMLStreamConstants.START_ELEMENT)
+                {
+                    continue;
+                }
+                String name = wbParser.getLocalName();
+                if ("workbookPr".equals(name))
+                {
+                    String value = wbParser.getAttributeValue(null, "date1904");
+                    date1904 = "1".equals(value) || "true".equalsIgnoreCase(value);
+                }
+                else if ("sheet".equals(name))
+                {
+                    sheetNames.add(wbParser.getAttributeValue(null, "name"));
+                    sheetRelIds.add(wbParser.getAttributeValue(RELATIONSHIPS_NS, "id"));
+                }
+            }
+        }
+        finally
+        {
+            wbParser.close();
+        }
+    }
+
+    /**
+     * Read the number formats of the cell styles from styles.xml and check
+     * which of them are date or time formats. This avoids loading the
+     * XMLBeans styles model.
+     *
+     * @return  Flag per cellXfs entry, true for a date format
+     */
+    private static boolean[] readDateStyles(InputStream stylesData) throws XMLStreamException
+    {
+        Map<Integer, String> formatStrings = new HashMap<Integer, String>();
+        List<Integer> styleFormats = new ArrayList<Integer>();
+        XMLStreamReader stylesParser = createInputFactory().createXMLStreamReader(stylesData);
+        try
+        {
+            boolean inCellXfs = false;
+            while (stylesParser.hasNext())
+            {
+                int event = stylesParser.next();
+                if (event == XMLStreamConstants.END_ELEMENT && "cellXfs".equals(stylesParser.getLocalName()))
+                {
+                    inCellXfs = false;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT)
+                {
+                    continue;
+                }
+                String name = stylesParser.getLocalName();
+                if ("numFmt".equals(name))
+                {
+                    formatStrings.put(Integer.valueOf(stylesParser.getAttributeValue(null, "numFmtId")),
+                            stylesParser.getAttributeValue(null, "formatCode"));
+                }
+                else if ("cellXfs".equals(name))
+                {
+                    inCellXfs = true;
+                }
+                else if (inCellXfs && "xf".equals(name))
+                {
+                    String formatId = stylesParser.getAttributeValue(null, "numFmtId");
+                    styleFormats.add(Integer.valueOf(formatId == null ? "0" : formatId));
+                }
+            }
+        }
+        finally
+        {
+            stylesParser.close();
+        }
+        boolean[] dates = new boolean[styleFormats.size()];
+        for (int i = 0; i < dates.length; i++)
+        {
+            Integer formatIndex = styleFormats.get(i);
+            String formatString = formatStrings.get(formatIndex);
+            if (formatString == null)
+            {
+                formatString = BuiltinFormats.getBuiltinFormat(formatIndex.intValue());
+            }
+            dates[i] = DateUtil.isADateFormat(formatIndex.intValue(), formatString);
+        }
+        return dates;
+    }
+
+    static XMLInputFactory createInputFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    @Override
+    protected void closeSource()
+    {
+        try
+        {
+            if (parser != null)
+            {
+                parser.close();
+            }
+            if (sheetStream != null)
+            {
+                sheetStream.close();
+            }
+        }
+        catch (Exception e)
+        {
+        }
+        parser = null;
+        sheetStream = null;
+        lastRow = -1;
+        missingRow = false;
+        sharedStrings = null;
+        if (pkg != null)
+        {
+            pkg.revert();
+            pkg = null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * Case insensitive lookup of column names, built once for the column names
+ * of a reader or result set.
+ *
+ * Column names are stored in upper case, so a name given in upper case is
+ * found without converting it. When a name occurs more than once the first
+ * column wins, as with a linear search.
+ *
+ * The columns of a join are named table.column. They are also found by
+ * the column name alone, when no other column has that name.
+ *
+ * @author Andre Schild
+ */
+final class XlsColumnIndex
+{
+    private final String[] columnNames;
+    private final HashMap<String, Integer> indexes;
+
+    /**
+     * Build the index
+     *
+     * @param columnNames  Column names, index 0 is column 1
+     */
+    XlsColumnIndex(String[] columnNames)
+    {
+        this.columnNames = columnNames;
+        this.indexes = new HashMap<String, Integer>(columnNames.length * 2);
+        for (int loop = 0; loop < columnNames.length; loop++)
+        {
+            String key = columnNames[loop].toUpperCase();
+            if (!indexes.containsKey(key))
+            {
+                indexes.put(key, Integer.valueOf(loop + 1));
+            }
+        }
+        for (int loop = 0; loop < columnNames.length; loop++)
+        {
+            String key = columnNames[loop].toUpperCase();
+            int dot = key.indexOf('.');
+            if (dot > 0 && !indexes.containsKey(key.substring(dot + 1)))
+            {
+                indexes.put(key.substring(dot + 1), Integer.valueOf(loop + 1));
+            }
+        }
+    }
+
+    /**
+     * Check if this index was built for the given column names
+     *
+     * @param columnNames  Column names
+     * @return             true when the index can be used for them
+     */
+    boolean isFor(String[] columnNames)
+    {
+        return this.columnNames == columnNames;
+    }
+
+    /**
+     * Get the index for the column names of a reader, the index used so
+     * far is kept when it was built for them
+     *
+     * @param index        Index used so far, may be null
+     * @param columnNames  Column names of the reader
+     * @return             Index for the column names
+     */
+    static XlsColumnIndex forColumns(XlsColumnIndex index, String[] columnNames)
+    {
+        if (index == null || !index.isFor(columnNames))
+        {
+            return new XlsColumnIndex(columnNames);
+        }
+        return index;
+    }
+
+    /**
+     * Search for a column of a reader, ignoring the case
+     *
+     * @param columnName  Name of the column
+     * @return            1-based column index
+     * @throws Exception  When the column is not found
+     */
+    int getColumn(String columnName) throws Exception
+    {
+        int index = indexOf(columnName);
+        if (index == -1)
+        {
+            throw new Exception("Column '" + columnName.toUpperCase() + "' not found.");
+        }
+        return index;
+    }
+
+    /**
+     * Search for the column with the given name, ignoring the case
+     *
+     * @param columnName  Name of the column
+     * @return            1-based column index, or -1 when not found
+     */
+    int indexOf(String columnName)
+    {
+        Integer index = indexes.get(columnName);
+        if (index == null)
+        {
+            index = indexes.get(columnName.toUpperCase());
+            if (index == null)
+            {
+                return -1;
+            }
+        }
+        return index.intValue();
+    }
+
+    /**
+     * Search for a column of a query, by its name or for the columns of a
+     * join by table.column
+     *
+     * @param columnNames  Upper case column names of the reader
+     * @param columnName   Upper case name of the column
+     * @return             1-based column index, or -1 when not found
+     * @throws SQLException  When the name without table matches more than one column
+     */
+    static int findColumn(String[] columnNames, String columnName) throws SQLException
+    {
+        for (int loop = 0; loop < columnNames.length; loop++)
+        {
+            if (columnName.equals(columnNames[loop]))
+            {
+                return loop + 1;
+            }
+        }
+        if (columnName.indexOf('.') >= 0)
+        {
+            return -1;
+        }
+        int found = -1;
+        for (int loop = 0; loop < columnNames.length; loop++)
+        {
+            String name = columnNames[loop];
+            int dot = name.indexOf('.');
+            if (dot > 0 && name.length() - dot - 1 == columnName.length() && name.endsWith(columnName))
+            {
+                if (found != -1)
+                {
+                    throw new SQLException("Column '" + columnName + "' is ambiguous, use table.column");
+                }
+                found = loop + 1;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.File;
+import java.sql.Types;
+
+/**
+ * SQL types of the columns of a sheet, inferred from the cells of the
+ * first rows.
+ *
+ * A column is reported as BIGINT when all sampled cells are whole numbers,
+ * as DOUBLE when they are numbers, as DATE when they are numbers formatted
+ * as date and as BOOLEAN when they are booleans. Empty cells are ignored.
+ * Columns with text cells, with different kinds of cells or without any
+ * value in the sample are reported as VARCHAR.
+ *
+ * The types are kept together with the size and the modification time of
+ * the file, so they can be reused until the file changes.
+ *
+ * @author Andre Schild
+ */
+final class XlsColumnTypes
+{
+    private static final int SEEN_STRING = 1;
+    private static final int SEEN_INTEGER = 2;
+    private static final int SEEN_DECIMAL = 4;
+    private static final int SEEN_DATE = 8;
+    private static final int SEEN_BOOLEAN = 16;
+
+    private final long fileLength;
+    private final long lastModified;
+    /** SQL type of each sheet column, index 0 is column 1 */
+    private final int[] types;
+
+    private XlsColumnTypes(long fileLength, long lastModified, int[] types)
+    {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.types = types;
+    }
+
+    /**
+     * Infer the column types from the first rows of an opened reader
+     *
+     * @param reader      Opened reader without where clause, positioned before the first row
+     * @param file        The file read by the reader
+     * @param sampleRows  Maximum number of rows to look at
+     * @return            The column types
+     * @throws Exception  When the file cannot be read
+     */
+    static XlsColumnTypes sample(IXlsReader reader, File file, int sampleRows) throws Exception
+    {
+        // Taken before reading, a change while sampling is seen by the next check
+        long fileLength = file.length();
+        long lastModified = file.lastModified();
+        int columnCount = reader.getColumnNames().length;
+        int[] seen = new int[columnCount];
+        for (int rowCount = 0; rowCount < sampleRows && reader.next(); rowCount++)
+        {
+            for (int loop = 0; loop < columnCount; loop++)
+            {
+                switch (reader.getColumnType(loop + 1))
+                {
+                    case IXlsReader.TYPE_STRING:
+                        seen[loop] |= SEEN_STRING;
+                        break;
+                    case IXlsReader.TYPE_BOOLEAN:
+                        seen[loop] |= SEEN_BOOLEAN;
+                        break;
+                    case IXlsReader.TYPE_NUMERIC:
+                        if (reader.isColumnDate(loop + 1))
+                        {
+                            seen[loop] |= SEEN_DATE;
+                        }
+                        else
+                        {
+                            double value = reader.getColumnDouble(loop + 1);
+                            seen[loop] |= value == (double) (long) value ? SEEN_INTEGER : SEEN_DECIMAL;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        int[] types = new int[columnCount];
+        for (int loop = 0; loop < columnCount; loop++)
+        {
+            types[loop] = toSqlType(seen[loop]);
+        }
+        return new XlsColumnTypes(fileLength, lastModified, types);
+    }
+
+    /**
+     * Combine the types of the sheets of a join, in the order of their columns
+     *
+     * @param parts   Types of each sheet
+     * @param widths  Number of columns of the reader of each sheet, the
+     *                columns without type are VARCHAR
+     * @return        The types of the joined columns, null when one of the parts is null
+     */
+    static XlsColumnTypes concat(XlsColumnTypes[] parts, int[] widths)
+    {
+        int columnCount = 0;
+        for (int loop = 0; loop < parts.length; loop++)
+        {
+            if (parts[loop] == null)
+            {
+                return null;
+            }
+            columnCount += widths[loop];
+        }
+        int[] types = new int[columnCount];
+        int pos = 0;
+        for (int loop = 0; loop < parts.length; loop++)
+        {
+            for (int col = 1; col <= widths[loop]; col++)
+            {
+                types[pos++] = parts[loop].getType(col);
+            }
+        }
+        return new XlsColumnTypes(0, 0, types);
+    }
+
+    private static int toSqlType(int seen)
+    {
+        switch (seen)
+        {
+            case SEEN_INTEGER:
+                return Types.BIGINT;
+            case SEEN_DECIMAL:
+            case SEEN_INTEGER | SEEN_DECIMAL:
+                return Types.DOUBLE;
+            case SEEN_DATE:
+                return Types.DATE;
+            case SEEN_BOOLEAN:
+                return Types.BOOLEAN;
+            default:
+                return Types.VARCHAR;
+        }
+    }
+
+    /**
+     * Check if the types were inferred from the current version of the file
+     *
+     * @param file  The file
+     * @return      true when the file has not changed since
+     */
+    boolean isCurrent(File file)
+    {
+        return file.length() == fileLength && file.lastModified() == lastModified;
+    }
+
+    /**
+     * Get the type of a sheet column
+     *
+     * @param columnIndex  1-based column index of the reader
+     * @return             One of the java.sql.Types constants
+     */
+    int getType(int columnIndex)
+    {
+        if (columnIndex < 1 || columnIndex > types.length)
+        {
+            return Types.VARCHAR;
+        }
+        return types[columnIndex - 1];
+    }
+
+    /**
+     * Get the name of a type returned by getType()
+     *
+     * @param type  One of the java.sql.Types constants
+     * @return      The SQL name of the type
+     */
+    static String getTypeName(int type)
+    {
+        switch (type)
+        {
+            case Types.BIGINT:
+                return "BIGINT";
+            case Types.DOUBLE:
+                return "DOUBLE";
+            case Types.DATE:
+                return "DATE";
+            case Types.BOOLEAN:
+                return "BOOLEAN";
+            default:
+                return "VARCHAR";
+        }
+    }
+
+    /**
+     * Get the Java class of the values of a type returned by getType()
+     *
+     * @param type  One of the java.sql.Types constants
+     * @return      The class name
+     */
+    static String getClassName(int type)
+    {
+        switch (type)
+        {
+            case Types.BIGINT:
+                return Long.class.getName();
+            case Types.DOUBLE:
+                return Double.class.getName();
+            case Types.DATE:
+                return java.sql.Date.class.getName();
+            case Types.BOOLEAN:
+                return Boolean.class.getName();
+            default:
+                return String.class.getName();
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Columnar copy of a sheet, written to the cache directory of the
+ * connection so repeated queries do not have to parse the xls or xlsx file
+ * again.
+ *
+ * The file starts with a header describing the source file (name, size and
+ * modification time, sheet, header handling) and the columns. The rows
+ * follow in groups of 2^groupShift rows. Each group holds the cell types of
+ * all its cells, column by column, followed by one 8 byte value per cell,
+ * also column by column. Empty cells have the type BLANK, so the types are
+ * the null map of the column. Numbers and booleans are stored as double,
+ * text as the index into the string table at the end of the file, which
+ * holds each distinct text once as UTF-8. All groups but the last one have
+ * the same size, so the position of a cell is computed from its row and
+ * column.
+ *
+ * @author Andre Schild
+ */
+final class XlsColumnarFile
+{
+    private static final int MAGIC = 0x584c5343;
+    private static final int VERSION = 1;
+    /** Added to the NUMERIC type of cells formatted as date */
+    static final byte DATE = 0x10;
+    static final byte TYPE_MASK = 0x0f;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SUFFIX = ".xlscol";
+    /** Upper limit for the memory used to collect a group of rows */
+    private static final long MAX_GROUP_BYTES = 16L * 1024 * 1024;
+    private static final int MIN_GROUP_SHIFT = 10;
+    private static final int MAX_GROUP_SHIFT = 16;
+
+    final String sourcePath;
+    final long sourceLength;
+    final long sourceLastModified;
+    final String sheetName;
+    final boolean suppressHeaders;
+    final boolean date1904;
+    final String[] columnNames;
+    final int groupShift;
+    final int rowCount;
+    final int stringCount;
+    final long dataOffset;
+    final long stringBytesOffset;
+    final long stringIndexOffset;
+
+    private XlsColumnarFile(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        {
+            throw new IOException("Not a column cache file");
+        }
+        sourcePath = in.readUTF();
+        sourceLength = in.readLong();
+        sourceLastModified = in.readLong();
+        String sheet = in.readUTF();
+        sheetName = sheet.length() == 0 ? null : sheet;
+        suppressHeaders = in.readBoolean();
+        date1904 = in.readBoolean();
+        groupShift = in.readInt();
+        columnNames = new String[in.readInt()];
+        for (int loop = 0; loop < columnNames.length; loop++)
+        {
+            columnNames[loop] = in.readUTF();
+        }
+        rowCount = in.readInt();
+        stringCount = in.readInt();
+        dataOffset = in.readLong();
+        stringBytesOffset = in.readLong();
+        stringIndexOffset = in.readLong();
+    }
+
+    /**
+     * Read the header of a column cache file
+     *
+     * @param in  Stream positioned at the start of the file
+     * @return    The header
+     * @throws IOException  When the file cannot be read or has another format
+     */
+    static XlsColumnarFile readHeader(InputStream in) throws IOException
+    {
+        return new XlsColumnarFile(new DataInputStream(new BufferedInputStream(in)));
+    }
+
+    /**
+     * Number of rows of a group
+     *
+     * @param group  0-based group index
+     * @return       2^groupShift, less for the last group
+     */
+    int getGroupRows(int group)
+    {
+        return Math.min(1 << groupShift, rowCount - (group << groupShift));
+    }
+
+    /**
+     * Position of a group in the file
+     *
+     * @param group  0-based group index
+     * @return       Offset of the first byte of the group
+     */
+    long getGroupOffset(int group)
+    {
+        return dataOffset + (long) group * getGroupBytes(columnNames.length, 1 << groupShift);
+    }
+
+    /**
+     * Size of the cell types of a group, the values follow at this offset
+     *
+     * @param columnCount  Number of columns
+     * @param rows         Number of rows of the group
+     * @return             Size in bytes, aligned to 8
+     */
+    static int getTypesBytes(int columnCount, int rows)
+    {
+        return (columnCount * rows + 7) & ~7;
+    }
+
+    static long getGroupBytes(int columnCount, int rows)
+    {
+        return getTypesBytes(columnCount, rows) + 8L * columnCount * rows;
+    }
+
+    /**
+     * Get the cache file for the sheet of a reader, written from the reader
+     * when it does not exist yet or when the source file has changed since.
+     *
+     * @param directory  The cache directory
+     * @param source     Reader for the sheet, not opened yet
+     * @return           The cache file, up to date with the source file
+     * @throws Exception When the sheet cannot be read or the file not written
+     */
+    static File getCurrent(File directory, IXlsReader source) throws Exception
+    {
+        File sourceFile = new File(source.getFileName()).getCanonicalFile();
+        File cacheFile = new File(directory, getCacheName(sourceFile, source.getSheetName(), source.isSuppressHeaders()));
+        if (isCurrent(cacheFile, sourceFile))
+        {
+            return cacheFile;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Cannot create directory '" + directory + "'");
+        }
+        File tempFile = File.createTempFile("xlsjdbc", ".tmp", directory);
+        try
+        {
+            write(source, sourceFile, tempFile);
+            if (!tempFile.renameTo(cacheFile))
+            {
+                // Some platforms do not replace an existing file
+                cacheFile.delete();
+                if (!tempFile.renameTo(cacheFile))
+                {
+                    throw new IOException("Cannot replace '" + cacheFile + "'");
+                }
+            }
+        }
+        finally
+        {
+            tempFile.delete();
+        }
+        return cacheFile;
+    }
+
+    /**
+     * Check if a cache file exists and was written from the current version
+     * of the source file
+     */
+    private static boolean isCurrent(File cacheFile, File sourceFile)
+    {
+        if (!cacheFile.isFile())
+        {
+            return false;
+        }
+        try
+        {
+            InputStream in = new FileInputStream(cacheFile);
+            try
+            {
+                XlsColumnarFile header = readHeader(in);
+                return header.sourcePath.equals(sourceFile.getPath())
+                        && header.sourceLength == sourceFile.length()
+                        && header.sourceLastModified == sourceFile.lastModified();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // Damaged or from another version of the driver, write it again
+            return false;
+        }
+    }
+
+    /**
+     * Name of the cache file, a digest of the source file name and of the
+     * settings which change the content
+     */
+    private static String getCacheName(File sourceFile, String sheetName, boolean suppressHeaders) throws Exception
+    {
+        String key = sourceFile.getPath() + '\n' + (sheetName == null ? "" : sheetName) + '\n' + suppressHeaders;
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF8));
+        StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+        for (int loop = 0; loop < digest.length; loop++)
+        {
+            name.append(Character.forDigit((digest[loop] >> 4) & 0xf, 16));
+            name.append(Character.forDigit(digest[loop] & 0xf, 16));
+        }
+        return name.append(SUFFIX).toString();
+    }
+
+    /**
+     * Read all rows of a sheet and write them into a cache file
+     *
+     * @param source      Reader for the sheet, not opened yet. Closed when done
+     * @param sourceFile  The file read by the reader
+     * @param target      The cache file to write
+     * @throws Exception  When the sheet cannot be read or the file not written
+     */
+    static void write(IXlsReader source, File sourceFile, File target) throws Exception
+    {
+        // Taken before reading, a change while writing is seen by the next check
+        long sourceLength = sourceFile.length();
+        long sourceLastModified = sourceFile.lastModified();
+        source.setWhereClause(null);
+        source.setColumnsUsed(null);
+        source.openFile();
+        DataOutputStream out = null;
+        try
+        {
+            String[] names = source.getColumnNames();
+            int columnCount = names.length;
+            int groupShift = MAX_GROUP_SHIFT;
+            while (groupShift > MIN_GROUP_SHIFT && getGroupBytes(columnCount, 1 << groupShift) > MAX_GROUP_BYTES)
+            {
+                groupShift--;
+            }
+            int groupSize = 1 << groupShift;
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target), 65536));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(sourceFile.getPath());
+            out.writeLong(sourceLength);
+            out.writeLong(sourceLastModified);
+            out.writeUTF(source.getSheetName() == null ? "" : source.getSheetName());
+            out.writeBoolean(source.isSuppressHeaders());
+            int date1904Position = out.size();
+            out.writeBoolean(false);
+            out.writeInt(groupShift);
+            out.writeInt(columnCount);
+            for (int loop = 0; loop < columnCount; loop++)
+            {
+                out.writeUTF(names[loop]);
+            }
+            int countsPosition = out.size();
+            // Row and string count, data, string bytes and string index offset
+            out.write(new byte[4 + 4 + 8 + 8 + 8]);
+            while (out.size() % 8 != 0)
+            {
+                out.write(0);
+            }
+            long dataOffset = out.size();
+            long position = dataOffset;
+
+            // Cells of one group, laid out with groupSize rows per column
+            int valuesBase = getTypesBytes(columnCount, groupSize);
+            byte[] group = new byte[(int) getGroupBytes(columnCount, groupSize)];
+            ByteBuffer groupBuffer = ByteBuffer.wrap(group);
+            Map<String, Integer> stringIds = new HashMap<String, Integer>();
+            List<String> strings = new ArrayList<String>();
+            Boolean date1904 = null;
+            int rowCount = 0;
+            int groupRow = 0;
+            while (source.next())
+            {
+                for (int col = 0; col < columnCount; col++)
+                {
+                    int cell = col * groupSize + groupRow;
+                    int valuePos = valuesBase + cell * 8;
+                    switch (source.getColumnType(col + 1))
+                    {
+                        case IXlsReader.TYPE_STRING:
+                            String text = source.getColumn(col + 1);
+                            Integer id = stringIds.get(text);
+                            if (id == null)
+                            {
+                                id = Integer.valueOf(strings.size());
+                                stringIds.put(text, id);
+                                strings.add(text);
+                            }
+                            group[cell] = XlsRowBuffer.STRING;
+                            groupBuffer.putLong(valuePos, id.longValue());
+                            break;
+                        case IXlsReader.TYPE_NUMERIC:
+                            double value = source.getColumnDouble(col + 1);
+                            group[cell] = XlsRowBuffer.NUMERIC;
+                            if (source.isColumnDate(col + 1))
+                            {
+                                group[cell] |= DATE;
+                                if (date1904 == null)
+                                {
+                                    // The reader converts with the date system of the workbook
+                                    Date date = source.getColumnDate(col + 1);
+                                    date1904 = Boolean.valueOf(date != null && !date.equals(DateUtil.getJavaDate(value, false)));
+                                }
+                            }
+                            groupBuffer.putDouble(valuePos, value);
+                            break;
+                        case IXlsReader.TYPE_BOOLEAN:
+                            group[cell] = XlsRowBuffer.BOOLEAN;
+                            groupBuffer.putDouble(valuePos, source.getColumnBoolean(col + 1) ? 1 : 0);
+                            break;
+                        default:
+                            group[cell] = XlsRowBuffer.BLANK;
+                            break;
+                    }
+                }
+                rowCount++;
+                if (++groupRow == groupSize)
+                {
+                    out.write(group, 0, group.length);
+                    position += group.length;
+                    Arrays.fill(group, 0, columnCount * groupSize, XlsRowBuffer.BLANK);
+                    groupRow = 0;
+                }
+            }
+            if (groupRow > 0)
+            {
+                // The last group is stored with its own number of rows
+                for (int col = 0; col < columnCount; col++)
+                {
+                    out.write(group, col * groupSize, groupRow);
+                }
+                for (int loop = columnCount * groupRow; loop < getTypesBytes(columnCount, groupRow); loop++)
+                {
+                    out.write(0);
+                }
+                for (int col = 0; col < columnCount; col++)
+                {
+                    out.write(group, valuesBase + col * groupSize * 8, groupRow * 8);
+                }
+                position += getGroupBytes(columnCount, groupRow);
+            }
+            group = null;
+            stringIds = null;
+
+            // String table: the UTF-8 bytes, then the start of each string
+            long stringBytesOffset = position;
+            long[] stringStarts = new long[strings.size() + 1];
+            for (int loop = 0; loop < strings.size(); loop++)
+            {
+                stringStarts[loop] = position - stringBytesOffset;
+                byte[] bytes = strings.get(loop).getBytes(UTF8);
+                out.write(bytes);
+                position += bytes.length;
+            }
+            stringStarts[strings.size()] = position - stringBytesOffset;
+            if (stringStarts[strings.size()] > Integer.MAX_VALUE)
+            {
+                throw new IOException("Text of the sheet too large for the column cache");
+            }
+            while (position % 8 != 0)
+            {
+                out.write(0);
+                position++;
+            }
+            long stringIndexOffset = position;
+            for (int loop = 0; loop < stringStarts.length; loop++)
+            {
+                out.writeInt((int) stringStarts[loop]);
+            }
+            out.close();
+            out = null;
+
+            RandomAccessFile file = new RandomAccessFile(target, "rw");
+            try
+            {
+                file.seek(date1904Position);
+                file.writeBoolean(date1904 != null && date1904.booleanValue());
+                file.seek(countsPosition);
+                file.writeInt(rowCount);
+                file.writeInt(strings.size());
+                file.writeLong(dataOffset);
+                file.writeLong(stringBytesOffset);
+                file.writeLong(stringIndexOffset);
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+        finally
+        {
+            if (out != null)
+            {
+                out.close();
+            }
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.Date;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Reader for the column cache files written by {@link XlsColumnarFile}.
+ *
+ * The file is memory mapped and the getters read the cells straight from
+ * the mapped groups: next() only moves the row position, the position of a
+ * cell is computed from the row and the column. No row is copied and
+ * reading numbers and booleans does not create any object. Texts are
+ * decoded on first use and kept for the following rows.
+ *
+ * The connection creates this reader instead of the configured one when
+ * the column cache is enabled.
+ *
+ * @author Andre Schild
+ */
+final class XlsColumnarReader implements IXlsSeekableReader
+{
+    private final File cacheFile;
+    private char separator = ',';
+    private boolean suppressHeaders = false;
+    private String stringDateFormat = null;
+    private String fileName = null;
+    private String sheetName = null;
+    private XlsColumnarFile header = null;
+    private String[] columnNames = new String[0];
+    /** Lookup of the column names, built on first use */
+    private XlsColumnIndex columnIndex = null;
+    private XlsCondition whereClause = null;
+    /** Parser for dates stored as text, compiled on first use */
+    private XlsDateParser dateParser = null;
+    private ByteBuffer[] groups = null;
+    private ByteBuffer stringBytes = null;
+    private ByteBuffer stringIndex = null;
+    /** Texts of the string table, decoded on first use */
+    private String[] strings = null;
+
+    /** Index of the current row, -1 before the first row */
+    private int row = -1;
+    /** Group of the current row, null before the first and after the last row */
+    private ByteBuffer data = null;
+    /** Number of rows of the current group, the distance between two columns */
+    private int groupRows = 0;
+    /** Index of the current row within its group */
+    private int groupRow = 0;
+    /** Position of the values in the current group */
+    private int valuesBase = 0;
+
+    /**
+     * @param cacheFile  The column cache file of the sheet
+     */
+    XlsColumnarReader(File cacheFile)
+    {
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    public void openFile() throws Exception
+    {
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            header = XlsColumnarFile.readHeader(Channels.newInputStream(channel));
+            int groupCount = (header.rowCount + (1 << header.groupShift) - 1) >>> header.groupShift;
+            groups = new ByteBuffer[groupCount];
+            for (int loop = 0; loop < groupCount; loop++)
+            {
+                groups[loop] = map(channel, header.getGroupOffset(loop),
+                        XlsColumnarFile.getGroupBytes(header.columnNames.length, header.getGroupRows(loop)));
+            }
+            stringBytes = map(channel, header.stringBytesOffset, header.stringIndexOffset - header.stringBytesOffset);
+            stringIndex = map(channel, header.stringIndexOffset, 4L * (header.stringCount + 1));
+        }
+        finally
+        {
+            // The mappings stay valid after closing the file
+            file.close();
+        }
+        columnNames = header.columnNames;
+        strings = new String[header.stringCount];
+        row = -1;
+        data = null;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws Exception
+    {
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new Exception("Column cache file too large");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    @Override
+    public boolean next() throws Exception
+    {
+        while (groups != null && row + 1 < header.rowCount)
+        {
+            row++;
+            groupRow = row & ((1 << header.groupShift) - 1);
+            if (groupRow == 0)
+            {
+                int group = row >>> header.groupShift;
+                data = groups[group];
+                groupRows = header.getGroupRows(group);
+                valuesBase = XlsColumnarFile.getTypesBytes(columnNames.length, groupRows);
+            }
+            if (whereClause == null || whereClause.isTrue(this))
+            {
+                return true;
+            }
+        }
+        close();
+        return false;
+    }
+
+    /**
+     * Number of rows of the sheet, including the header
+     *
+     * @return  Number of rows, or -1 when not opened
+     */
+    int getDimensionRows()
+    {
+        return header == null ? -1 : header.rowCount + 1;
+    }
+
+    @Override
+    public int getRowPosition()
+    {
+        return row;
+    }
+
+    @Override
+    public void seekRow(int position) throws Exception
+    {
+        if (groups == null)
+        {
+            // The mappings are released after the last row
+            openFile();
+        }
+        if (position < 0 || position >= header.rowCount)
+        {
+            throw new Exception("Row " + position + " not found in the column cache");
+        }
+        row = position;
+        groupRow = row & ((1 << header.groupShift) - 1);
+        int group = row >>> header.groupShift;
+        data = groups[group];
+        groupRows = header.getGroupRows(group);
+        valuesBase = XlsColumnarFile.getTypesBytes(columnNames.length, groupRows);
+    }
+
+    @Override
+    public int countRows() throws Exception
+    {
+        if (whereClause == null)
+        {
+            int count = header == null ? 0 : header.rowCount;
+            close();
+            return count;
+        }
+        int count = 0;
+        while (next())
+        {
+            count++;
+        }
+        close();
+        return count;
+    }
+
+    @Override
+    public void close()
+    {
+        // The file itself is closed once mapped, keep the group and the
+        // strings of the current row readable
+        groups = null;
+    }
+
+    @Override
+    public void setWhereClause(XlsCondition whereClause)
+    {
+        this.whereClause = whereClause;
+    }
+
+    @Override
+    public void setColumnsUsed(boolean[] columnsUsed)
+    {
+        // Only the cells asked for are read anyway
+    }
+
+    /**
+     * Use a parser compiled by the connection for dates stored as text
+     *
+     * @param dateParser  Parser for the stringDateFormat
+     */
+    void setDateParser(XlsDateParser dateParser)
+    {
+        this.dateParser = dateParser;
+    }
+
+    @Override
+    public String[] getColumnNames()
+    {
+        return columnNames;
+    }
+
+    /**
+     * Search for the column with the given name
+     *
+     * @param columnName  Name of the column
+     * @return            1-based column index
+     * @throws Exception  When the column is not found
+     */
+    private int findColumn(String columnName) throws Exception
+    {
+        columnIndex = XlsColumnIndex.forColumns(columnIndex, columnNames);
+        return columnIndex.getColumn(columnName);
+    }
+
+    /**
+     * Position of a cell of the current row in the current group
+     *
+     * @param columnIndex  1-based column index
+     * @return             Index of the type byte, -1 when there is no such cell
+     */
+    private int getCell(int columnIndex)
+    {
+        if (data == null || columnIndex < 1 || columnIndex > columnNames.length)
+        {
+            return -1;
+        }
+        return (columnIndex - 1) * groupRows + groupRow;
+    }
+
+    private int getType(int cell)
+    {
+        return cell < 0 ? TYPE_BLANK : data.get(cell) & XlsColumnarFile.TYPE_MASK;
+    }
+
+    private double getValue(int cell)
+    {
+        return data.getDouble(valuesBase + cell * 8);
+    }
+
+    /**
+     * Get a text of the string table
+     *
+     * @param cell  Position of a text cell
+     * @return      The text
+     */
+    private String getString(int cell)
+    {
+        int id = (int) data.getLong(valuesBase + cell * 8);
+        String text = strings[id];
+        if (text == null)
+        {
+            int start = stringIndex.getInt(id * 4);
+            byte[] bytes = new byte[stringIndex.getInt(id * 4 + 4) - start];
+            ByteBuffer source = stringBytes.duplicate();
+            source.position(start);
+            source.get(bytes);
+            text = new String(bytes, XlsColumnarFile.UTF8);
+            strings[id] = text;
+        }
+        return text;
+    }
+
+    @Override
+    public int getColumnType(int columnIndex)
+    {
+        return getType(getCell(columnIndex));
+    }
+
+    @Override
+    public boolean isColumnDate(int columnIndex)
+    {
+        int cell = getCell(columnIndex);
+        return cell >= 0 && data.get(cell) == (XlsRowBuffer.NUMERIC | XlsColumnarFile.DATE);
+    }
+
+    @Override
+    public String getColumn(int columnIndex)
+    {
+        int cell = getCell(columnIndex);
+        switch (getType(cell))
+        {
+            case TYPE_STRING:
+                return getString(cell);
+            case TYPE_NUMERIC:
+                return XlsNumberFormat.toString(getValue(cell));
+            case TYPE_BOOLEAN:
+                return getValue(cell) != 0 ? "TRUE" : "FALSE";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public boolean getColumnBoolean(int columnIndex)
+    {
+        int cell = getCell(columnIndex);
+        switch (getType(cell))
+        {
+            case TYPE_BOOLEAN:
+            case TYPE_NUMERIC:
+                return getValue(cell) != 0;
+            case TYPE_STRING:
+                return Boolean.valueOf(getString(cell).trim());
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public Date getColumnDate(int columnIndex) throws ParseException
+    {
+        int cell = getCell(columnIndex);
+        switch (getType(cell))
+        {
+            case TYPE_NUMERIC:
+                return DateUtil.getJavaDate(getValue(cell), header.date1904);
+            case TYPE_STRING:
+                String sData = getString(cell);
+                if (sData.trim().length() == 0)
+                {
+                    return null;
+                }
+                return parseDate(sData);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Parse a date stored as text with the stringDateFormat
+     *
+     * @param text  The text of the cell
+     * @return      The date
+     * @throws ParseException  When the text is not a date
+     */
+    private Date parseDate(String text) throws ParseException
+    {
+        dateParser = XlsDateParser.forPattern(dateParser, getStringDateFormat());
+        return dateParser.parse(text);
+    }
+
+    @Override
+    public double getColumnDouble(int columnIndex)
+    {
+        int cell = getCell(columnIndex);
+        switch (getType(cell))
+        {
+            case TYPE_NUMERIC:
+            case TYPE_BOOLEAN:
+                return getValue(cell);
+            case TYPE_STRING:
+                return Double.parseDouble(getString(cell).trim());
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public int getColumnInt(int columnIndex)
+    {
+        return (int) getColumnDouble(columnIndex);
+    }
+
+    @Override
+    public long getColumnLong(int columnIndex)
+    {
+        return (long) getColumnDouble(columnIndex);
+    }
+
+    @Override
+    public short getColumnShort(int columnIndex)
+    {
+        return (short) getColumnDouble(columnIndex);
+    }
+
+    @Override
+    public String getColumn(String columnName) throws Exception
+    {
+        return getColumn(findColumn(columnName));
+    }
+
+    @Override
+    public Date getColumnDate(String columnName) throws Exception
+    {
+        return getColumnDate(findColumn(columnName));
+    }
+
+    @Override
+    public double getColumnDouble(String columnName) throws Exception
+    {
+        return getColumnDouble(findColumn(columnName));
+    }
+
+    @Override
+    public int getColumnInt(String columnName) throws Exception
+    {
+        return getColumnInt(findColumn(columnName));
+    }
+
+    @Override
+    public long getColumnLong(String columnName) throws Exception
+    {
+        return getColumnLong(findColumn(columnName));
+    }
+
+    @Override
+    public short getColumnShort(String columnName) throws Exception
+    {
+        return getColumnShort(findColumn(columnName));
+    }
+
+    @Override
+    public char getSeparator()
+    {
+        return separator;
+    }
+
+    @Override
+    public void setSeparator(char separator)
+    {
+        this.separator = separator;
+    }
+
+    @Override
+    public boolean isSuppressHeaders()
+    {
+        return suppressHeaders;
+    }
+
+    @Override
+    public void setSuppressHeaders(boolean suppressHeaders)
+    {
+        this.suppressHeaders = suppressHeaders;
+    }
+
+    @Override
+    public String getStringDateFormat()
+    {
+        return stringDateFormat;
+    }
+
+    @Override
+    public void setStringDateFormat(String stringDateFormat)
+    {
+        this.stringDateFormat = stringDateFormat;
+    }
+
+    @Override
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    @Override
+    public void setFileName(String fileName)
+    {
+        this.fileName = fileName;
+    }
+
+    @Override
+    public String getSheetName()
+    {
+        return sheetName;
+    }
+
+    @Override
+    public void setSheetName(String sheetName)
+    {
+        this.sheetName = sheetName;
+    }
+}
@@ -0,0 +1,775 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Parsed WHERE clause, evaluated directly against the current row of an
+ * IXlsReader.
+ *
+ * Numeric cells are compared as doubles, so no String is created for them.
+ * Comparisons involving an empty cell are unknown, as in SQL, and a row is
+ * only accepted when the whole condition is true.
+ *
+ * The tree built by the XlsSqlParser refers to columns by name and must be
+ * bound to the column names of a reader with bind() before it is evaluated.
+ * Binding also replaces the ? parameters of a prepared statement by their
+ * values, so the parsed tree can be reused with other values.
+ *
+ * @author Andre Schild
+ */
+public abstract class XlsCondition
+{
+    static final int FALSE = 0;
+    static final int TRUE = 1;
+    static final int UNKNOWN = 2;
+
+    /** Result of compare() when one of the operands is empty */
+    static final int NO_VALUE = Integer.MIN_VALUE;
+
+    /**
+     * Evaluate the condition for the current row of the reader
+     *
+     * @param reader  Reader positioned on the row to check
+     * @return        TRUE, FALSE or UNKNOWN
+     */
+    abstract int evaluate(IXlsReader reader) throws Exception;
+
+    /**
+     * Resolve the column names and parameters used in this condition
+     *
+     * @param columnNames  Upper case column names of the reader
+     * @param parameters   Values of the ? parameters, may be null without parameters
+     * @return             A copy of this condition using column indexes
+     * @throws SQLException  When a column is not found
+     */
+    abstract XlsCondition bind(String[] columnNames, Object[] parameters) throws SQLException;
+
+    /**
+     * Flag the columns read by this bound condition
+     *
+     * @param columnsUsed  Flag per 0-based column index
+     */
+    abstract void markColumns(boolean[] columnsUsed);
+
+    /**
+     * Check if the current row of the reader fulfills this condition
+     *
+     * @param reader  Reader positioned on the row to check
+     * @return        true when the condition is true
+     * @throws Exception  When a value cannot be read
+     */
+    public boolean isTrue(IXlsReader reader) throws Exception
+    {
+        return evaluate(reader) == TRUE;
+    }
+
+    /**
+     * Value used in a condition, either a column of the row or a constant.
+     */
+    abstract static class Operand
+    {
+        abstract int getType(IXlsReader reader);
+
+        abstract double getDouble(IXlsReader reader);
+
+        abstract String getString(IXlsReader reader);
+
+        abstract Operand bind(String[] columnNames, Object[] parameters) throws SQLException;
+
+        void markColumns(boolean[] columnsUsed)
+        {
+        }
+    }
+
+    static final class Column extends Operand
+    {
+        final String name;
+        final int index;
+
+        Column(String name)
+        {
+            this(name, -1);
+        }
+
+        private Column(String name, int index)
+        {
+            this.name = name;
+            this.index = index;
+        }
+
+        @Override
+        int getType(IXlsReader reader)
+        {
+            return reader.getColumnType(index);
+        }
+
+        @Override
+        double getDouble(IXlsReader reader)
+        {
+            if (reader.getColumnType(index) == IXlsReader.TYPE_BOOLEAN)
+            {
+                return reader.getColumnBoolean(index) ? 1 : 0;
+            }
+            return reader.getColumnDouble(index);
+        }
+
+        @Override
+        String getString(IXlsReader reader)
+        {
+            if (reader.getColumnType(index) == IXlsReader.TYPE_BOOLEAN)
+            {
+                return reader.getColumnBoolean(index) ? "TRUE" : "FALSE";
+            }
+            return reader.getColumn(index);
+        }
+
+        @Override
+        Operand bind(String[] columnNames, Object[] parameters) throws SQLException
+        {
+            int found = XlsColumnIndex.findColumn(columnNames, name);
+            if (found == -1)
+            {
+                throw new SQLException("Column '" + name + "' not found.");
+            }
+            return new Column(name, found);
+        }
+
+        @Override
+        void markColumns(boolean[] columnsUsed)
+        {
+            columnsUsed[index - 1] = true;
+        }
+    }
+
+    static final class Literal extends Operand
+    {
+        final int type;
+        final double number;
+        final String string;
+
+        Literal(String value)
+        {
+            this.type = IXlsReader.TYPE_STRING;
+            this.string = value;
+            this.number = 0;
+        }
+
+        Literal(double value)
+        {
+            this.type = IXlsReader.TYPE_NUMERIC;
+            this.number = value;
+            this.string = XlsNumberFormat.toString(value);
+        }
+
+        /**
+         * The NULL value, all comparisons with it are unknown
+         */
+        private Literal()
+        {
+            this.type = IXlsReader.TYPE_BLANK;
+            this.number = 0;
+            this.string = null;
+        }
+
+        /**
+         * Create the literal for a parameter value. Dates are converted to
+         * the Excel day number, as they are stored in the cells.
+         */
+        static Literal valueOf(Object value)
+        {
+            if (value == null)
+            {
+                return new Literal();
+            }
+            if (value instanceof Number)
+            {
+                return new Literal(((Number) value).doubleValue());
+            }
+            if (value instanceof Boolean)
+            {
+                return new Literal(((Boolean) value).booleanValue() ? 1 : 0);
+            }
+            if (value instanceof Date)
+            {
+                return new Literal(DateUtil.getExcelDate((Date) value));
+            }
+            return new Literal(value.toString());
+        }
+
+        @Override
+        int getType(IXlsReader reader)
+        {
+            return type;
+        }
+
+        @Override
+        double getDouble(IXlsReader reader)
+        {
+            return number;
+        }
+
+        @Override
+        String getString(IXlsReader reader)
+        {
+            return string;
+        }
+
+        @Override
+        Operand bind(String[] columnNames, Object[] parameters)
+        {
+            return this;
+        }
+    }
+
+    static final class Parameter extends Operand
+    {
+        /** 1-based parameter index */
+        final int index;
+
+        Parameter(int index)
+        {
+            this.index = index;
+        }
+
+        @Override
+        int getType(IXlsReader reader)
+        {
+            throw new IllegalStateException("Parameter " + index + " not bound");
+        }
+
+        @Override
+        double getDouble(IXlsReader reader)
+        {
+            throw new IllegalStateException("Parameter " + index + " not bound");
+        }
+
+        @Override
+        String getString(IXlsReader reader)
+        {
+            throw new IllegalStateException("Parameter " + index + " not bound");
+        }
+
+        @Override
+        Operand bind(String[] columnNames, Object[] parameters) throws SQLException
+        {
+            if (parameters == null || index > parameters.length)
+            {
+                throw new SQLException("No value specified for parameter " + index);
+            }
+            return Literal.valueOf(parameters[index - 1]);
+        }
+    }
+
+    /**
+     * Compare two operands. Numbers are compared numerically, strings
+     * lexically. When a string is compared with a number the string is
+     * converted if it looks like a number, otherwise both are compared as
+     * strings.
+     *
+     * @return  -1, 0 or 1, or NO_VALUE when one side is empty
+     */
+    static int compare(IXlsReader reader, Operand left, Operand right)
+    {
+        int leftType = left.getType(reader);
+        int rightType = right.getType(reader);
+        if (leftType == IXlsReader.TYPE_BLANK || rightType == IXlsReader.TYPE_BLANK)
+        {
+            return NO_VALUE;
+        }
+        if (leftType != IXlsReader.TYPE_STRING && rightType != IXlsReader.TYPE_STRING)
+        {
+            return compareNumbers(left.getDouble(reader), right.getDouble(reader));
+        }
+        String leftString = leftType == IXlsReader.TYPE_STRING ? left.getString(reader) : null;
+        String rightString = rightType == IXlsReader.TYPE_STRING ? right.getString(reader) : null;
+        if (leftString == null && isNumber(rightString))
+        {
+            return compareNumbers(left.getDouble(reader), Double.parseDouble(rightString.trim()));
+        }
+        if (rightString == null && isNumber(leftString))
+        {
+            return compareNumbers(Double.parseDouble(leftString.trim()), right.getDouble(reader));
+        }
+        if (leftString == null)
+        {
+            leftString = left.getString(reader);
+        }
+        if (rightString == null)
+        {
+            rightString = right.getString(reader);
+        }
+        int cmp = leftString.compareTo(rightString);
+        return cmp < 0 ? -1 : (cmp > 0 ? 1 : 0);
+    }
+
+    private static int compareNumbers(double left, double right)
+    {
+        return left < right ? -1 : (left > right ? 1 : 0);
+    }
+
+    /**
+     * Cheap check if a string can be parsed as a decimal number, avoids
+     * the cost of a NumberFormatException for every non numeric cell.
+     */
+    static boolean isNumber(String s)
+    {
+        int len = s.length();
+        int i = 0;
+        while (i < len && s.charAt(i) == ' ')
+        {
+            i++;
+        }
+        while (len > i && s.charAt(len - 1) == ' ')
+        {
+            len--;
+        }
+        if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+'))
+        {
+            i++;
+        }
+        boolean digits = false;
+        boolean dot = false;
+        for (; i < len; i++)
+        {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                digits = true;
+            }
+            else if (c == '.' && !dot)
+            {
+                dot = true;
+            }
+            else if ((c == 'e' || c == 'E') && digits && i + 1 < len)
+            {
+                i++;
+                if (s.charAt(i) == '-' || s.charAt(i) == '+')
+                {
+                    i++;
+                }
+                if (i >= len)
+                {
+                    return false;
+                }
+                for (; i < len; i++)
+                {
+                    if (s.charAt(i) < '0' || s.charAt(i) > '9')
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            else
+            {
+                return false;
+            }
+        }
+        return digits;
+    }
+
+    static final class Comparison extends XlsCondition
+    {
+        static final int EQ = 0;
+        static final int NE = 1;
+        static final int LT = 2;
+        static final int LE = 3;
+        static final int GT = 4;
+        static final int GE = 5;
+
+        final int operator;
+        final Operand left;
+        final Operand right;
+
+        Comparison(int operator, Operand left, Operand right)
+        {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(IXlsReader reader)
+        {
+            int cmp = compare(reader, left, right);
+            if (cmp == NO_VALUE)
+            {
+                return UNKNOWN;
+            }
+            boolean retVal;
+            switch (operator)
+            {
+                case EQ:
+                    retVal = cmp == 0;
+                    break;
+                case NE:
+                    retVal = cmp != 0;
+                    break;
+                case LT:
+                    retVal = cmp < 0;
+                    break;
+                case LE:
+                    retVal = cmp <= 0;
+                    break;
+                case GT:
+                    retVal = cmp > 0;
+                    break;
+                default:
+                    retVal = cmp >= 0;
+            }
+            return retVal ? TRUE : FALSE;
+        }
+
+        @Override
+        XlsCondition bind(String[] columnNames, Object[] parameters) throws SQLException
+        {
+            return new Comparison(operator, left.bind(columnNames, parameters), right.bind(columnNames, parameters));
+        }
+
+        @Override
+        void markColumns(boolean[] columnsUsed)
+        {
+            left.markColumns(columnsUsed);
+            right.markColumns(columnsUsed);
+        }
+    }
+
+    static final class In extends XlsCondition
+    {
+        final Operand operand;
+        final Operand[] values;
+        final boolean negate;
+
+        In(Operand operand, List<Operand> values, boolean negate)
+        {
+            this(operand, values.toArray(new Operand[values.size()]), negate);
+        }
+
+        private In(Operand operand, Operand[] values, boolean negate)
+        {
+            this.operand = operand;
+            this.values = values;
+            this.negate = negate;
+        }
+
+        @Override
+        int evaluate(IXlsReader reader)
+        {
+            if (operand.getType(reader) == IXlsReader.TYPE_BLANK)
+            {
+                return UNKNOWN;
+            }
+            boolean found = false;
+            boolean empty = false;
+            for (int i = 0; i < values.length && !found; i++)
+            {
+                int cmp = compare(reader, operand, values[i]);
+                found = cmp == 0;
+                empty |= cmp == NO_VALUE;
+            }
+            if (!found && empty)
+            {
+                // x IN (1, NULL) is unknown unless x = 1, so is the NOT IN
+                return UNKNOWN;
+            }
+            return found != negate ? TRUE : FALSE;
+        }
+
+        @Override
+        XlsCondition bind(String[] columnNames, Object[] parameters) throws SQLException
+        {
+            Operand[] bound = new Operand[values.length];
+            for (int i = 0; i < values.length; i++)
+            {
+                bound[i] = values[i].bind(columnNames, parameters);
+            }
+            return new In(operand.bind(columnNames, parameters), bound, negate);
+        }
+
+        @Override
+        void markColumns(boolean[] columnsUsed)
+        {
+            operand.markColumns(columnsUsed);
+            for (Operand value : values)
+            {
+                value.markColumns(columnsUsed);
+            }
+        }
+    }
+
+    static final class Like extends XlsCondition
+    {
+        final Operand operand;
+        final String pattern;
+        final boolean negate;
+        /** Literal part for the prefix, suffix and contains fast paths */
+        private final String text;
+        private final boolean anyStart;
+        private final boolean anyEnd;
+        private final Matcher matcher;
+
+        Like(Operand operand, String pattern, boolean negate)
+        {
+            this.operand = operand;
+            this.pattern = pattern;
+            this.negate = negate;
+            String inner = pattern;
+            anyStart = inner.startsWith("%");
+            if (anyStart)
+            {
+                inner = inner.substring(1);
+            }
+            anyEnd = inner.endsWith("%");
+            if (anyEnd)
+            {
+                inner = inner.substring(0, inner.length() - 1);
+            }
+            if (inner.indexOf('%') < 0 && inner.indexOf('_') < 0)
+            {
+                text = inner;
+                matcher = null;
+            }
+            else
+            {
+                text = null;
+                matcher = toRegex(pattern).matcher("");
+            }
+        }
+
+        private static Pattern toRegex(String pattern)
+        {
+            StringBuilder regex = new StringBuilder();
+            int start = 0;
+            for (int i = 0; i < pattern.length(); i++)
+            {
+                char c = pattern.charAt(i);
+                if (c == '%' || c == '_')
+                {
+                    if (i > start)
+                    {
+                        regex.append(Pattern.quote(pattern.substring(start, i)));
+                    }
+                    regex.append(c == '%' ? ".*" : ".");
+                    start = i + 1;
+                }
+            }
+            if (start < pattern.length())
+            {
+                regex.append(Pattern.quote(pattern.substring(start)));
+            }
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        @Override
+        int evaluate(IXlsReader reader)
+        {
+            if (operand.getType(reader) == IXlsReader.TYPE_BLANK)
+            {
+                return UNKNOWN;
+            }
+            String value = operand.getString(reader);
+            boolean matches;
+            if (text == null)
+            {
+                matches = matcher.reset(value).matches();
+            }
+            else if (anyStart && anyEnd)
+            {
+                matches = value.contains(text);
+            }
+            else if (anyStart)
+            {
+                matches = value.endsWith(text);
+            }
+            else if (anyEnd)
+            {
+                matches = value.startsWith(text);
+            }
+            else
+            {
+                matches = value.equals(text);
+            }
+            return matches != negate ? TRUE : FALSE;
+        }
+
+        @Override
+        XlsCondition bind(String[] columnNames, Object[] parameters) throws SQLException
+        {
+            // A new instance, the matcher must not be shared between readers
+            return new Like(operand.bind(columnNames, parameters), pattern, negate);
+        }
+
+        @Override
+        void markColumns(boolean[] columnsUsed)
+        {
+            operand.markColumns(columnsUsed);
+        }
+    }
+
+    static final class IsNull extends XlsCondition
+    {
+        final Operand operand;
+        final boolean negate;
+
+        IsNull(Operand operand, boolean negate)
+        {
+            this.operand = operand;
+            this.negate = negate;
+        }
+
+        @Override
+        int evaluate(IXlsReader reader)
+        {
+            boolean isNull = operand.getType(reader) == IXlsReader.TYPE_BLANK;
+            return isNull != negate ? TRUE : FALSE;
+        }
+
+        @Override
+        XlsCondition bind(String[] columnNames, Object[] parameters) throws SQLException
+        {
+            return new IsNull(operand.bind(columnNames, parameters), negate);
+        }
+
+        @Override
+        void markColumns(boolean[] columnsUsed)
+        {
+            operand.markColumns(columnsUsed);
+        }
+    }
+
+    static final class And extends XlsCondition
+    {
+        final XlsCondition left;
+        final XlsCondition right;
+
+        And(XlsCondition left, XlsCondition right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(IXlsReader reader) throws Exception
+        {
+            int l = left.evaluate(reader);
+            if (l == FALSE)
+            {
+                return FALSE;
+            }
+            int r = right.evaluate(reader);
+            if (r == FALSE)
+            {
+                return FALSE;
+            }
+            return (l == TRUE && r == TRUE) ? TRUE : UNKNOWN;
+        }
+
+        @Override
+        XlsCondition bind(String[] columnNames, Object[] parameters) throws SQLException
+        {
+            return new And(left.bind(columnNames, parameters), right.bind(columnNames, parameters));
+        }
+
+        @Override
+        void markColumns(boolean[] columnsUsed)
+        {
+            left.markColumns(columnsUsed);
+            right.markColumns(columnsUsed);
+        }
+    }
+
+    static final class Or extends XlsCondition
+    {
+        final XlsCondition left;
+        final XlsCondition right;
+
+        Or(XlsCondition left, XlsCondition right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(IXlsReader reader) throws Exception
+        {
+            int l = left.evaluate(reader);
+            if (l == TRUE)
+            {
+                return TRUE;
+            }
+            int r = right.evaluate(reader);
+            if (r == TRUE)
+            {
+                return TRUE;
+            }
+            return (l == FALSE && r == FALSE) ? FALSE : UNKNOWN;
+        }
+
+        @Override
+        XlsCondition bind(String[] columnNames, Object[] parameters) throws SQLException
+        {
+            return new Or(left.bind(columnNames, parameters), right.bind(columnNames, parameters));
+        }
+
+        @Override
+        void markColumns(boolean[] columnsUsed)
+        {
+            left.markColumns(columnsUsed);
+            right.markColumns(columnsUsed);
+        }
+    }
+
+    static final class Not extends XlsCondition
+    {
+        final XlsCondition condition;
+
+        Not(XlsCondition condition)
+        {
+            this.condition = condition;
+        }
+
+        @Override
+        int evaluate(IXlsReader reader) throws Exception
+        {
+            int retVal = condition.evaluate(reader);
+            if (retVal == UNKNOWN)
+            {
+                return UNKNOWN;
+            }
+            return retVal == TRUE ? FALSE : TRUE;
+        }
+
+        @Override
+        XlsCondition bind(String[] columnNames, Object[] parameters) throws SQLException
+        {
+            return new Not(condition.bind(columnNames, parameters));
+        }
+
+        @Override
+        void markColumns(boolean[] columnsUsed)
+        {
+            condition.markColumns(columnsUsed);
+        }
+    }
+}
@@ -16,10 +16,15 @@
  */
 package org.aarboard.jdbc.xls;
 
+import java.io.File;
 import java.sql.*;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Hashtable;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This class implements the Connection interface for the XlsJdbc driver.
@@ -32,6 +37,8 @@ import java.util.Properties;
  */
 public class XlsConnection implements Connection
 {
+    /** Number of parsed workbooks kept by a connection */
+    private static final int CONNECTION_WORKBOOKS = 4;
 
     private String filePath = null;
     private String fileExtension = ".xls";
@@ -39,6 +46,42 @@ public class XlsConnection implements Connection
     private char separator = ',';
     private boolean suppressHeaders = false;
     private String xlsReaderClass = "org.aarboard.jdbc.xls.POIReader";
+    /** Last workbooks parsed by the statements of this connection */
+    private final WorkbookCache workbooks = new WorkbookCache(Long.MAX_VALUE, CONNECTION_WORKBOOKS);
+    /** Number of threads for the parallel scan, 1 for a sequential scan */
+    private int scanThreads = 1;
+    /** Threads for the parallel scan, started on first use */
+    private ExecutorService scanExecutor = null;
+    /** Parser for the stringDateFormat, compiled on first use */
+    private volatile XlsDateParser dateParser = null;
+    /** Directory for the columnar copies of the sheets, null when disabled */
+    private File columnCacheDir = null;
+    /** Number of rows sampled to infer the column types, 0 to report VARCHAR */
+    private int typeSampleRows = 100;
+    /** Number of rows sorted in memory, more are sorted in temporary files */
+    private int sortMemoryRows = 100000;
+    /** Maximum number of sheets with inferred column types kept by the connection */
+    private static final int COLUMN_TYPES_CACHE_SIZE = 100;
+    /** Inferred column types by file and sheet, least recently used first */
+    private final Map<String, XlsColumnTypes> columnTypes = new LinkedHashMap<String, XlsColumnTypes>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, XlsColumnTypes> eldest)
+        {
+            return size() > COLUMN_TYPES_CACHE_SIZE;
+        }
+    };
+    /** Maximum number of parsed queries kept by the connection */
+    private static final int QUERY_PLAN_CACHE_SIZE = 100;
+    /** Parsed queries by SQL text, least recently used first */
+    private final Map<String, XlsQueryPlan> queryPlans = new LinkedHashMap<String, XlsQueryPlan>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, XlsQueryPlan> eldest)
+        {
+            return size() > QUERY_PLAN_CACHE_SIZE;
+        }
+    };
 
     /**
      *Constructor for the XlsConnection object
@@ -57,9 +100,10 @@ public class XlsConnection implements Connection
      *
      * @param  filePath  Description of Parameter
      * @param  info      Description of Parameter
+     * @exception  SQLException  When a property has an invalid value
      * @since
      */
-    protected XlsConnection(String filePath, java.util.Properties info)
+    protected XlsConnection(String filePath, java.util.Properties info) throws SQLException
     {
         DriverManager.println("XlsJdbc - XlsConnection() - filePath=" + filePath);
         this.filePath = filePath;
@@ -72,11 +116,52 @@ public class XlsConnection implements Connection
             suppressHeaders = Boolean.valueOf(info.getProperty(XlsDriver.SUPPRESS_HEADERS, String.valueOf(suppressHeaders)));
             stringDateFormat = info.getProperty(XlsDriver.STRING_DATE_FORMAT, null);
             xlsReaderClass = info.getProperty(XlsDriver.XLS_READER_CLASS, "org.aarboard.jdbc.xls.POIReader");
+            scanThreads = (int) getNumberProperty(info, XlsDriver.SCAN_THREADS, 1, 1, Integer.MAX_VALUE);
+            typeSampleRows = (int) getNumberProperty(info, XlsDriver.TYPE_SAMPLE_ROWS, typeSampleRows, 0, Integer.MAX_VALUE);
+            sortMemoryRows = (int) getNumberProperty(info, XlsDriver.SORT_MEMORY_ROWS, sortMemoryRows, 1, Integer.MAX_VALUE);
+            String cacheDir = info.getProperty(XlsDriver.COLUMN_CACHE_DIR);
+            if (cacheDir != null && cacheDir.trim().length() > 0)
+            {
+                columnCacheDir = new File(cacheDir.trim());
+            }
+            if (info.getProperty(XlsDriver.WORKBOOK_CACHE_SIZE) != null)
+            {
+                WorkbookCache.getInstance().setMaxBytes(getNumberProperty(info, XlsDriver.WORKBOOK_CACHE_SIZE, 0, 0, Long.MAX_VALUE));
+            }
         }
         DriverManager.println("XlsJdbc - XlsConnection() - filePath=" + filePath +
                 " - file extension=" + fileExtension +
                 " - separator=" + separator +
-                " - suppress headers=" + suppressHeaders);
+                " - suppress headers=" + suppressHeaders +
+                " - scan threads=" + scanThreads);
+    }
+
+    /**
+     * Get a numeric driver property
+     *
+     * @param  info          The connection properties
+     * @param  name          Name of the property
+     * @param  defaultValue  Value when the property is not set
+     * @param  minValue      Smallest value, smaller values are raised to it
+     * @param  maxValue      Largest value, larger values are lowered to it
+     * @return               The value
+     * @exception  SQLException  When the value is not a whole number
+     */
+    private static long getNumberProperty(Properties info, String name, long defaultValue, long minValue, long maxValue) throws SQLException
+    {
+        String value = info.getProperty(name);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+        try
+        {
+            return Math.min(maxValue, Math.max(minValue, Long.parseLong(value.trim())));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new SQLException("Invalid value '" + value + "' for the property " + name);
+        }
     }
 
     /**
@@ -269,7 +354,7 @@ public class XlsConnection implements Connection
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return new XlsPreparedStatement(this, getQueryPlan(sql));
     }
 
     /**
@@ -331,6 +416,23 @@ public class XlsConnection implements Connection
     @Override
     public void close() throws SQLException
     {
+        workbooks.clear();
+        synchronized (queryPlans)
+        {
+            queryPlans.clear();
+        }
+        synchronized (columnTypes)
+        {
+            columnTypes.clear();
+        }
+        synchronized (this)
+        {
+            if (scanExecutor != null)
+            {
+                scanExecutor.shutdown();
+                scanExecutor = null;
+            }
+        }
     }
 
     /**
@@ -357,7 +459,29 @@ public class XlsConnection implements Connection
     public Statement createStatement(int resultSetType, int resultSetConcurrency)
             throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return new XlsStatement(this, resultSetType);
+    }
+
+    /**
+     * Check that the result sets can be created as requested: read only,
+     * forward only or scrollable. The sheets are read when a query is
+     * executed, so scrollable result sets never see later changes.
+     *
+     * @param  resultSetType         Description of Parameter
+     * @param  resultSetConcurrency  Description of Parameter
+     * @exception  SQLException      When the type or concurrency is not supported
+     */
+    private static void checkResultSetType(int resultSetType, int resultSetConcurrency) throws SQLException
+    {
+        if (resultSetType != ResultSet.TYPE_FORWARD_ONLY && resultSetType != ResultSet.TYPE_SCROLL_INSENSITIVE)
+        {
+            throw new SQLException("Not Supported ! Only TYPE_FORWARD_ONLY and TYPE_SCROLL_INSENSITIVE result sets");
+        }
+        if (resultSetConcurrency != ResultSet.CONCUR_READ_ONLY)
+        {
+            throw new SQLException("Not Supported ! Only CONCUR_READ_ONLY result sets");
+        }
     }
 
     /**
@@ -377,7 +501,8 @@ public class XlsConnection implements Connection
             int resultSetConcurrency)
             throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return new XlsPreparedStatement(this, getQueryPlan(sql), resultSetType);
     }
 
     /**
@@ -411,6 +536,153 @@ public class XlsConnection implements Connection
         return filePath;
     }
 
+    /**
+     * Get the parsed query for the given SQL, parsing it only once per
+     * connection
+     *
+     * @param sql  The SELECT statement
+     * @return     The parsed query
+     * @throws SQLException  On syntax errors or when the file cannot be read
+     */
+    XlsQueryPlan getQueryPlan(String sql) throws SQLException
+    {
+        XlsQueryPlan plan;
+        synchronized (queryPlans)
+        {
+            plan = queryPlans.get(sql);
+        }
+        if (plan == null)
+        {
+            plan = XlsQueryPlan.create(sql, this);
+            synchronized (queryPlans)
+            {
+                queryPlans.put(sql, plan);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Create a reader for a sheet, configured with the properties of this
+     * connection. With the column cache enabled the reader returned reads
+     * the columnar copy of the sheet, written first when the file is new or
+     * has changed.
+     *
+     * @param fileName   Name of the data file
+     * @param sheetName  Name of the sheet, null for the first sheet
+     * @return           The reader, not opened yet
+     * @throws Exception When the reader class cannot be loaded
+     */
+    IXlsReader createReader(String fileName, String sheetName) throws Exception
+    {
+        if (columnCacheDir != null)
+        {
+            try
+            {
+                File cacheFile = XlsColumnarFile.getCurrent(columnCacheDir, createSourceReader(fileName, sheetName));
+                return configureReader(new XlsColumnarReader(cacheFile), fileName, sheetName);
+            }
+            catch (Exception e)
+            {
+                // Read the file itself when no copy can be written
+                DriverManager.println("XlsJdbc - column cache not used for " + fileName + ": " + e);
+            }
+        }
+        return createSourceReader(fileName, sheetName);
+    }
+
+    private IXlsReader createSourceReader(String fileName, String sheetName) throws Exception
+    {
+        Class newClass = Class.forName(xlsReaderClass);
+        return configureReader((IXlsReader) newClass.newInstance(), fileName, sheetName);
+    }
+
+    private IXlsReader configureReader(IXlsReader reader, String fileName, String sheetName)
+    {
+        reader.setSeparator(separator);
+        reader.setSuppressHeaders(suppressHeaders);
+        reader.setStringDateFormat(stringDateFormat);
+        reader.setFileName(fileName);
+        reader.setSheetName(sheetName);
+        if (reader instanceof POIReader)
+        {
+            // Share the parsed workbook between the sheets of a file
+            ((POIReader) reader).setConnectionWorkbooks(workbooks);
+            ((POIReader) reader).setDateParser(getDateParser());
+        }
+        else if (reader instanceof AbstractRowReader)
+        {
+            ((AbstractRowReader) reader).setDateParser(getDateParser());
+        }
+        else if (reader instanceof XlsColumnarReader)
+        {
+            ((XlsColumnarReader) reader).setDateParser(getDateParser());
+        }
+        return reader;
+    }
+
+    /**
+     * Get the column types of a sheet, inferred from its first rows once
+     * per version of the file
+     *
+     * @param fileName   Name of the data file
+     * @param sheetName  Name of the sheet, null for the first sheet
+     * @return           The column types, null when the inference is disabled
+     * @throws SQLException  When the file cannot be read
+     */
+    XlsColumnTypes getColumnTypes(String fileName, String sheetName) throws SQLException
+    {
+        if (typeSampleRows == 0)
+        {
+            return null;
+        }
+        File file = new File(fileName);
+        String key = sheetName == null ? fileName : fileName + '\n' + sheetName;
+        XlsColumnTypes types;
+        synchronized (columnTypes)
+        {
+            types = columnTypes.get(key);
+        }
+        if (types == null || !types.isCurrent(file))
+        {
+            IXlsReader reader = null;
+            try
+            {
+                reader = createReader(fileName, sheetName);
+                reader.openFile();
+                types = XlsColumnTypes.sample(reader, file, typeSampleRows);
+            }
+            catch (Exception e)
+            {
+                SQLException ex= new SQLException("Error reading data file. Message was: " + e );
+                ex.setStackTrace(e.getStackTrace());
+                throw ex;
+            }
+            finally
+            {
+                if (reader != null)
+                {
+                    reader.close();
+                }
+            }
+            synchronized (columnTypes)
+            {
+                columnTypes.put(key, types);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Gets the cache for the workbooks parsed by this connection
+     *
+     * @return    The workbook cache
+     */
+    WorkbookCache getWorkbookCache()
+    {
+        return workbooks;
+    }
+
     /**
      * Insert the method's description here.
      *
@@ -437,6 +709,68 @@ public class XlsConnection implements Connection
         return stringDateFormat;
     }
 
+    /**
+     * Gets the number of threads used to scan a sheet
+     *
+     * @return    The number of threads, 1 for a sequential scan
+     */
+    int getScanThreads()
+    {
+        return scanThreads;
+    }
+
+    /**
+     * Gets the number of rows sorted in memory for ORDER BY
+     *
+     * @return    The number of rows, larger results are sorted in temporary files
+     */
+    int getSortMemoryRows()
+    {
+        return sortMemoryRows;
+    }
+
+    /**
+     * Gets the threads for the parallel scan of a sheet, shared by all
+     * statements of this connection
+     *
+     * @return    The executor with getScanThreads() threads
+     */
+    synchronized ExecutorService getScanExecutor()
+    {
+        if (scanExecutor == null)
+        {
+            scanExecutor = Executors.newFixedThreadPool(scanThreads, new ThreadFactory()
+            {
+                private int count = 0;
+
+                @Override
+                public synchronized Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "XlsJdbc scan " + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scanExecutor;
+    }
+
+    /**
+     * Gets the parser for dates stored as text, shared by all statements
+     *
+     * @return    The parser for the stringDateFormat
+     */
+    XlsDateParser getDateParser()
+    {
+        XlsDateParser parser = dateParser;
+        if (parser == null)
+        {
+            parser = new XlsDateParser(stringDateFormat);
+            dateParser = parser;
+        }
+        return parser;
+    }
+
     /**
      * Insert the method's description here.
      *
@@ -0,0 +1,267 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Parser for dates stored as text, using the pattern of
+ * {@link XlsDriver#STRING_DATE_FORMAT}.
+ *
+ * The pattern is compiled once, an instance can be shared by all readers
+ * of a connection and is thread safe. Patterns made only of d, M and yyyy
+ * separated by other characters (d.M.yyyy, dd/MM/yyyy, yyyy-MM-dd ...) are
+ * parsed directly. Everything the direct parser does not accept, like
+ * invalid dates or trailing text, is handed to a SimpleDateFormat kept per
+ * thread, so the results are the same as with SimpleDateFormat.
+ *
+ * @author Andre Schild
+ */
+final class XlsDateParser
+{
+    private static final int DAY = 0;
+    private static final int MONTH = 1;
+    private static final int YEAR = 2;
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final String pattern;
+    /** Time zone of the parsed dates, as with a SimpleDateFormat created now */
+    private final TimeZone zone = TimeZone.getDefault();
+    /** Fields of the direct parser in the order of the pattern, null when not possible */
+    private final int[] fields;
+    /** Separator in front of each field, 0 for none */
+    private final char[] separators;
+    private final ThreadLocal<SimpleDateFormat> formats = new ThreadLocal<SimpleDateFormat>()
+    {
+        @Override
+        protected SimpleDateFormat initialValue()
+        {
+            return pattern == null ? new SimpleDateFormat() : new SimpleDateFormat(pattern);
+        }
+    };
+
+    /**
+     * Compile the pattern
+     *
+     * @param pattern  Pattern as used by SimpleDateFormat, null for the default format
+     * @throws IllegalArgumentException  When the pattern is invalid
+     */
+    XlsDateParser(String pattern)
+    {
+        this.pattern = pattern;
+        // Fail here and not with the first cell
+        formats.get();
+
+        int[] parsedFields = new int[3];
+        char[] parsedSeparators = new char[3];
+        int count = 0;
+        char separator = 0;
+        int pos = 0;
+        while (pattern != null && pos < pattern.length())
+        {
+            char c = pattern.charAt(pos);
+            int end = pos;
+            while (end < pattern.length() && pattern.charAt(end) == c)
+            {
+                end++;
+            }
+            int field = c == 'd' ? DAY : c == 'M' ? MONTH : c == 'y' && end - pos >= 3 ? YEAR : -1;
+            if (field >= 0)
+            {
+                // Adjacent fields are parsed with fixed widths, not supported here
+                if (count == 3 || (count > 0 && separator == 0))
+                {
+                    count = -1;
+                    break;
+                }
+                parsedFields[count] = field;
+                parsedSeparators[count] = separator;
+                count++;
+                separator = 0;
+            }
+            else if (end - pos == 1 && separator == 0 && !Character.isLetter(c) && c != '\'')
+            {
+                separator = c;
+            }
+            else
+            {
+                count = -1;
+                break;
+            }
+            pos = end;
+        }
+        if (count == 3 && separator == 0 && parsedFields[0] + parsedFields[1] + parsedFields[2] == DAY + MONTH + YEAR
+                && parsedFields[0] != parsedFields[1] && parsedFields[1] != parsedFields[2] && parsedFields[0] != parsedFields[2])
+        {
+            this.fields = parsedFields;
+            this.separators = parsedSeparators;
+        }
+        else
+        {
+            this.fields = null;
+            this.separators = null;
+        }
+    }
+
+    /**
+     * Get the parser for a pattern, the parser used so far is kept when it
+     * was compiled for the same pattern
+     *
+     * @param parser   Parser used so far, may be null
+     * @param pattern  Pattern as used by SimpleDateFormat, null for the default format
+     * @return         Parser for the pattern
+     */
+    static XlsDateParser forPattern(XlsDateParser parser, String pattern)
+    {
+        if (parser == null || (pattern == null ? parser.pattern != null : !pattern.equals(parser.pattern)))
+        {
+            return new XlsDateParser(pattern);
+        }
+        return parser;
+    }
+
+    /**
+     * Parse a date
+     *
+     * @param text  The text of the cell
+     * @return      The date
+     * @throws ParseException  When the text is not a date
+     */
+    Date parse(String text) throws ParseException
+    {
+        if (fields != null)
+        {
+            long millis = parseDirect(text);
+            if (millis != Long.MIN_VALUE)
+            {
+                return new Date(millis);
+            }
+        }
+        return formats.get().parse(text);
+    }
+
+    /**
+     * Parse a valid date in the fixed pattern
+     *
+     * @param text  The text of the cell
+     * @return      Milliseconds of midnight of the date in the default time
+     *              zone, Long.MIN_VALUE when the text has to be parsed by
+     *              SimpleDateFormat
+     */
+    private long parseDirect(String text)
+    {
+        int day = 0;
+        int month = 0;
+        int year = 0;
+        int pos = 0;
+        int length = text.length();
+        for (int i = 0; i < 3; i++)
+        {
+            if (separators[i] != 0)
+            {
+                if (pos >= length || text.charAt(pos) != separators[i])
+                {
+                    return Long.MIN_VALUE;
+                }
+                pos++;
+            }
+            int start = pos;
+            int value = 0;
+            while (pos < length && pos - start < 4)
+            {
+                char c = text.charAt(pos);
+                if (c < '0' || c > '9')
+                {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                pos++;
+            }
+            if (pos == start)
+            {
+                return Long.MIN_VALUE;
+            }
+            switch (fields[i])
+            {
+                case DAY:
+                    day = value;
+                    break;
+                case MONTH:
+                    month = value;
+                    break;
+                default:
+                    year = value;
+                    break;
+            }
+        }
+        if (pos != length || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || year < 1600)
+        {
+            // Lenient dates, trailing text and dates before the Gregorian calendar
+            return Long.MIN_VALUE;
+        }
+        long localMillis = daysSinceEpoch(year, month, day) * MILLIS_PER_DAY;
+        int offset = zone.getOffset(localMillis - zone.getRawOffset());
+        long utcMillis = localMillis - offset;
+        if (zone.getOffset(utcMillis - 2 * MILLIS_PER_DAY) != offset
+                || zone.getOffset(utcMillis + 2 * MILLIS_PER_DAY) != offset)
+        {
+            // Close to a change of the time zone offset, midnight may not exist
+            // or exist twice
+            return Long.MIN_VALUE;
+        }
+        return utcMillis;
+    }
+
+    private static int daysInMonth(int year, int month)
+    {
+        switch (month)
+        {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year)
+    {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * Days from 1970-01-01 to the given date of the Gregorian calendar
+     */
+    static long daysSinceEpoch(int year, int month, int day)
+    {
+        // Count the years from March, so the leap day is the last day of the year
+        long y = month <= 2 ? year - 1 : year;
+        long era = y / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -36,8 +36,13 @@ public class XlsDriver implements Driver
     public static final String SEPARATOR = "separator";
     public static final String SUPPRESS_HEADERS = "suppressHeaders";
     public static final String STRING_DATE_FORMAT = "stringDateFormat"; /// The format to use when converting a string into date in getDate calls
+    public static final String WORKBOOK_CACHE_SIZE = "workbookCacheSize"; /// Max. estimated bytes of parsed workbooks kept in the JVM wide cache, 0 disables the cache. The cache is shared by all connections, the value of the connection opened last applies to all of them, connections without the property keep the current value
+    public static final String COLUMN_CACHE_DIR = "columnCacheDir"; /// Directory for columnar copies of the queried sheets, read instead of the xls/xlsx file until it changes. Not set (default) disables the column cache
+    public static final String TYPE_SAMPLE_ROWS = "typeSampleRows"; /// Number of rows looked at to infer the column types reported by the result set meta data, 0 reports all columns as VARCHAR
+    public static final String SORT_MEMORY_ROWS = "sortMemoryRows"; /// Number of rows sorted in memory for ORDER BY, larger results are sorted in temporary files
+    public static final String SCAN_THREADS = "scanThreads"; /// Number of threads filtering, counting and grouping the rows of a sheet loaded by the POIReader and reading the files of a table name with wildcards, 1 (default) scans sequentially
     private final static String URL_PREFIX_XLS = "jdbc:aarboard:xls:";
-    public static final String XLS_READER_CLASS = "XlsReaderClass";    /// What class to use for acessing xls files, can be either "org.aarboard.jdbc.xls.POIReader" or "org.aarboard.jdbc.xls.JXLReader"
+    public static final String XLS_READER_CLASS = "XlsReaderClass";    /// What class to use for acessing xls files, can be either "org.aarboard.jdbc.xls.POIReader", "org.aarboard.jdbc.xls.XSSFEventReader" (streaming, xlsx only), "org.aarboard.jdbc.xls.HSSFEventReader" (streaming, xls only) or "org.aarboard.jdbc.xls.JXLReader"
 
     /**
      *Gets the propertyInfo attribute of the XlsDriver object
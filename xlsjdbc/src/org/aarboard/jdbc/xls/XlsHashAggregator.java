@@ -0,0 +1,757 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Computes GROUP BY and the aggregate functions COUNT, SUM, AVG, MIN and
+ * MAX in one pass over a reader.
+ *
+ * The groups are found with an open addressing hash table over the cells
+ * of the GROUP BY columns, as read from the reader: a row only creates
+ * objects when it starts a new group. The values of the aggregates are
+ * kept in primitive arrays indexed by the group.
+ *
+ * COUNT(column) counts the cells which are not empty. SUM and AVG add the
+ * numbers, the booleans and the texts holding a number, other cells are
+ * ignored. MIN and MAX compare like ORDER BY. Without any value SUM, AVG,
+ * MIN and MAX are empty. The groups are returned in the order they are
+ * first found in the sheet.
+ *
+ * For a parallel scan every chunk of the sheet is aggregated into its own
+ * partial aggregator, see newPartial(). The partial aggregators are
+ * merged in sheet order, so the groups keep the order of a sequential
+ * scan.
+ *
+ * @author Andre Schild
+ */
+final class XlsHashAggregator
+{
+    /** 1-based reader column of each GROUP BY column */
+    private final int[] groupIndexes;
+    /** Aggregate function of each result column, null for a grouped column */
+    private final String[] functions;
+    /** 1-based reader column of each result column, 0 for COUNT(*) */
+    private final int[] columnIndexes;
+    private final Accumulator[] accumulators;
+
+    /** Slots of the hash table, group + 1 or 0 when free */
+    private int[] table = new int[64];
+    private int groupCount = 0;
+    private int capacity = 16;
+    private int[] hashes = new int[capacity];
+    /** Cells of the GROUP BY columns, groupIndexes.length per group */
+    private byte[] keyTypes;
+    private double[] keyNumbers;
+    private String[] keyTexts;
+    private boolean[] keyDates;
+    /** Date system of the source, detected from the first date cell */
+    private Boolean date1904 = null;
+
+    /**
+     * @param groupIndexes   1-based reader column of each GROUP BY column
+     * @param functions      Aggregate function of each result column, null for a grouped column
+     * @param columnIndexes  1-based reader column of each result column, 0 for COUNT(*)
+     */
+    XlsHashAggregator(int[] groupIndexes, String[] functions, int[] columnIndexes)
+    {
+        this.groupIndexes = groupIndexes;
+        this.functions = functions;
+        this.columnIndexes = columnIndexes;
+        accumulators = new Accumulator[functions.length];
+        for (int loop = 0; loop < functions.length; loop++)
+        {
+            if ("COUNT".equals(functions[loop]))
+            {
+                accumulators[loop] = new CountAccumulator(columnIndexes[loop]);
+            }
+            else if ("SUM".equals(functions[loop]) || "AVG".equals(functions[loop]))
+            {
+                accumulators[loop] = new SumAccumulator(columnIndexes[loop], "AVG".equals(functions[loop]));
+            }
+            else if ("MIN".equals(functions[loop]) || "MAX".equals(functions[loop]))
+            {
+                accumulators[loop] = new ExtremeAccumulator(columnIndexes[loop], "MAX".equals(functions[loop]));
+            }
+        }
+        int keyCount = groupIndexes.length;
+        keyTypes = new byte[capacity * keyCount];
+        keyNumbers = new double[capacity * keyCount];
+        keyTexts = new String[capacity * keyCount];
+        keyDates = new boolean[capacity * keyCount];
+        for (Accumulator accumulator : accumulators)
+        {
+            if (accumulator != null)
+            {
+                accumulator.grow(capacity);
+            }
+        }
+    }
+
+    /**
+     * Read all rows of the source and return one row per group
+     *
+     * @param source       Opened reader, closed when done
+     * @param columnNames  Names of the result columns
+     * @return             Opened reader returning the groups
+     * @throws Exception   When the source cannot be read
+     */
+    IXlsReader aggregate(IXlsReader source, String[] columnNames) throws Exception
+    {
+        try
+        {
+            while (source.next())
+            {
+                addRow(source);
+            }
+        }
+        finally
+        {
+            source.close();
+        }
+        if (groupIndexes.length == 0 && groupCount == 0)
+        {
+            // Without GROUP BY there is one row, even for an empty sheet
+            addGroup(source, 0);
+        }
+        List<XlsRowBuffer> rows = new ArrayList<XlsRowBuffer>(groupCount);
+        for (int group = 0; group < groupCount; group++)
+        {
+            XlsRowBuffer row = new XlsRowBuffer(functions.length);
+            row.clear();
+            for (int loop = 0; loop < functions.length; loop++)
+            {
+                if (accumulators[loop] != null)
+                {
+                    accumulators[loop].getResult(row, loop, group);
+                }
+                else
+                {
+                    setKey(row, loop, group, getKeyIndex(columnIndexes[loop]));
+                }
+            }
+            rows.add(row);
+        }
+        XlsMemoryReader result = new XlsMemoryReader(columnNames, rows);
+        result.setDate1904(date1904 != null && date1904.booleanValue());
+        result.setStringDateFormat(source.getStringDateFormat());
+        result.openFile();
+        return result;
+    }
+
+    /**
+     * Add the current row of the reader to its group
+     *
+     * @param source      Reader positioned on a row
+     * @throws Exception  When the row cannot be read
+     */
+    void addRow(IXlsReader source) throws Exception
+    {
+        int group = 0;
+        if (groupIndexes.length > 0)
+        {
+            group = findGroup(source);
+        }
+        else if (groupCount == 0)
+        {
+            addGroup(source, 0);
+        }
+        for (Accumulator accumulator : accumulators)
+        {
+            if (accumulator != null)
+            {
+                accumulator.add(source, group);
+            }
+        }
+    }
+
+    /**
+     * Create an empty aggregator for the same query, to aggregate a part
+     * of the rows on another thread
+     *
+     * @return  The new aggregator
+     */
+    XlsHashAggregator newPartial()
+    {
+        return new XlsHashAggregator(groupIndexes, functions, columnIndexes);
+    }
+
+    /**
+     * Add the groups of a partial aggregator which read the rows following
+     * the rows read by this one
+     *
+     * @param other  Aggregator created with newPartial()
+     */
+    void merge(XlsHashAggregator other)
+    {
+        if (date1904 == null)
+        {
+            date1904 = other.date1904;
+        }
+        for (int from = 0; from < other.groupCount; from++)
+        {
+            int group = 0;
+            if (groupIndexes.length > 0)
+            {
+                group = findGroup(other, from);
+            }
+            else if (groupCount == 0)
+            {
+                copyGroup(other, 0, other.hashes[0]);
+            }
+            for (int loop = 0; loop < accumulators.length; loop++)
+            {
+                if (accumulators[loop] != null)
+                {
+                    accumulators[loop].merge(other.accumulators[loop], from, group);
+                }
+            }
+        }
+    }
+
+    private int getKeyIndex(int columnIndex)
+    {
+        for (int loop = 0; loop < groupIndexes.length; loop++)
+        {
+            if (groupIndexes[loop] == columnIndex)
+            {
+                return loop;
+            }
+        }
+        throw new IllegalArgumentException("Column " + columnIndex + " is not grouped");
+    }
+
+    private void setKey(XlsRowBuffer row, int col, int group, int key)
+    {
+        int index = group * groupIndexes.length + key;
+        switch (keyTypes[index])
+        {
+            case XlsRowBuffer.STRING:
+                row.setString(col, keyTexts[index]);
+                break;
+            case XlsRowBuffer.NUMERIC:
+                if (keyDates[index])
+                {
+                    row.setDate(col, keyNumbers[index]);
+                }
+                else
+                {
+                    row.setNumber(col, keyNumbers[index]);
+                }
+                break;
+            case XlsRowBuffer.BOOLEAN:
+                row.setBoolean(col, keyNumbers[index] != 0);
+                break;
+            default:
+                row.setBlank(col);
+                break;
+        }
+    }
+
+    /**
+     * Find the group of the current row of the reader, a new group is
+     * added when not found
+     */
+    private int findGroup(IXlsReader source) throws Exception
+    {
+        int hash = 1;
+        for (int loop = 0; loop < groupIndexes.length; loop++)
+        {
+            int col = groupIndexes[loop];
+            int type = source.getColumnType(col);
+            int cellHash;
+            switch (type)
+            {
+                case IXlsReader.TYPE_STRING:
+                    cellHash = source.getColumn(col).hashCode();
+                    break;
+                case IXlsReader.TYPE_NUMERIC:
+                case IXlsReader.TYPE_BOOLEAN:
+                    // Adding 0.0 turns -0.0 into 0.0, both are equal
+                    long bits = Double.doubleToLongBits(source.getColumnDouble(col) + 0.0);
+                    cellHash = (int) (bits ^ (bits >>> 32));
+                    break;
+                default:
+                    cellHash = 0;
+                    break;
+            }
+            hash = 31 * hash + cellHash + type;
+        }
+        int mask = table.length - 1;
+        int slot = getSlot(hash, mask);
+        while (table[slot] != 0)
+        {
+            int group = table[slot] - 1;
+            if (hashes[group] == hash && isKeyEqual(source, group))
+            {
+                return group;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int group = groupCount;
+        addGroup(source, hash);
+        table[slot] = group + 1;
+        if (groupCount * 2 > table.length)
+        {
+            rehash();
+        }
+        return group;
+    }
+
+    /**
+     * Find the group of a group of another aggregator, a new group is added
+     * when not found
+     */
+    private int findGroup(XlsHashAggregator other, int from)
+    {
+        int hash = other.hashes[from];
+        int mask = table.length - 1;
+        int slot = getSlot(hash, mask);
+        while (table[slot] != 0)
+        {
+            int group = table[slot] - 1;
+            if (hashes[group] == hash && isKeyEqual(other, from, group))
+            {
+                return group;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int group = groupCount;
+        copyGroup(other, from, hash);
+        table[slot] = group + 1;
+        if (groupCount * 2 > table.length)
+        {
+            rehash();
+        }
+        return group;
+    }
+
+    private boolean isKeyEqual(XlsHashAggregator other, int from, int group)
+    {
+        int base = group * groupIndexes.length;
+        int otherBase = from * groupIndexes.length;
+        for (int loop = 0; loop < groupIndexes.length; loop++)
+        {
+            byte type = other.keyTypes[otherBase + loop];
+            if (type != keyTypes[base + loop])
+            {
+                return false;
+            }
+            switch (type)
+            {
+                case XlsRowBuffer.STRING:
+                    if (!keyTexts[base + loop].equals(other.keyTexts[otherBase + loop]))
+                    {
+                        return false;
+                    }
+                    break;
+                case XlsRowBuffer.NUMERIC:
+                case XlsRowBuffer.BOOLEAN:
+                    if (keyNumbers[base + loop] != other.keyNumbers[otherBase + loop])
+                    {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a group with the GROUP BY cells of a group of another aggregator
+     */
+    private void copyGroup(XlsHashAggregator other, int from, int hash)
+    {
+        ensureCapacity();
+        int group = groupCount++;
+        hashes[group] = hash;
+        int keyCount = groupIndexes.length;
+        System.arraycopy(other.keyTypes, from * keyCount, keyTypes, group * keyCount, keyCount);
+        System.arraycopy(other.keyNumbers, from * keyCount, keyNumbers, group * keyCount, keyCount);
+        System.arraycopy(other.keyTexts, from * keyCount, keyTexts, group * keyCount, keyCount);
+        System.arraycopy(other.keyDates, from * keyCount, keyDates, group * keyCount, keyCount);
+    }
+
+    private boolean isKeyEqual(IXlsReader source, int group) throws Exception
+    {
+        int base = group * groupIndexes.length;
+        for (int loop = 0; loop < groupIndexes.length; loop++)
+        {
+            int col = groupIndexes[loop];
+            int type = source.getColumnType(col);
+            if (type != keyTypes[base + loop])
+            {
+                return false;
+            }
+            switch (type)
+            {
+                case IXlsReader.TYPE_STRING:
+                    if (!keyTexts[base + loop].equals(source.getColumn(col)))
+                    {
+                        return false;
+                    }
+                    break;
+                case IXlsReader.TYPE_NUMERIC:
+                case IXlsReader.TYPE_BOOLEAN:
+                    if (keyNumbers[base + loop] != source.getColumnDouble(col))
+                    {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a group with the GROUP BY cells of the current row
+     */
+    private void addGroup(IXlsReader source, int hash) throws Exception
+    {
+        ensureCapacity();
+        int group = groupCount++;
+        hashes[group] = hash;
+        int base = group * groupIndexes.length;
+        for (int loop = 0; loop < groupIndexes.length; loop++)
+        {
+            int col = groupIndexes[loop];
+            int type = source.getColumnType(col);
+            keyTypes[base + loop] = (byte) type;
+            switch (type)
+            {
+                case IXlsReader.TYPE_STRING:
+                    keyTexts[base + loop] = source.getColumn(col);
+                    break;
+                case IXlsReader.TYPE_NUMERIC:
+                case IXlsReader.TYPE_BOOLEAN:
+                    keyNumbers[base + loop] = source.getColumnDouble(col);
+                    keyDates[base + loop] = isDate(source, col);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Make room for one more group
+     */
+    private void ensureCapacity()
+    {
+        if (groupCount == capacity)
+        {
+            capacity *= 2;
+            int keyCount = groupIndexes.length;
+            hashes = Arrays.copyOf(hashes, capacity);
+            keyTypes = Arrays.copyOf(keyTypes, capacity * keyCount);
+            keyNumbers = Arrays.copyOf(keyNumbers, capacity * keyCount);
+            keyTexts = Arrays.copyOf(keyTexts, capacity * keyCount);
+            keyDates = Arrays.copyOf(keyDates, capacity * keyCount);
+            for (Accumulator accumulator : accumulators)
+            {
+                if (accumulator != null)
+                {
+                    accumulator.grow(capacity);
+                }
+            }
+        }
+    }
+
+    private static int getSlot(int hash, int mask)
+    {
+        int spread = hash * 0x9e3779b9;
+        return (spread ^ (spread >>> 16)) & mask;
+    }
+
+    private void rehash()
+    {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int group = 0; group < groupCount; group++)
+        {
+            int slot = getSlot(hashes[group], mask);
+            while (table[slot] != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = group + 1;
+        }
+    }
+
+    /**
+     * Check for a date cell and detect the date system of the source with
+     * the first one
+     */
+    private boolean isDate(IXlsReader source, int col) throws Exception
+    {
+        if (!source.isColumnDate(col))
+        {
+            return false;
+        }
+        if (date1904 == null)
+        {
+            // The source converts with the date system of the workbook
+            Date date = source.getColumnDate(col);
+            date1904 = Boolean.valueOf(date != null && !date.equals(DateUtil.getJavaDate(source.getColumnDouble(col), false)));
+        }
+        return true;
+    }
+
+    /**
+     * Value of an aggregate function for each group
+     */
+    private abstract static class Accumulator
+    {
+        /** 1-based reader column, 0 for COUNT(*) */
+        final int columnIndex;
+
+        Accumulator(int columnIndex)
+        {
+            this.columnIndex = columnIndex;
+        }
+
+        abstract void grow(int capacity);
+
+        abstract void add(IXlsReader source, int group) throws Exception;
+
+        /**
+         * Add the value of a group of the same accumulator of a partial
+         * aggregator
+         */
+        abstract void merge(Accumulator other, int from, int group);
+
+        abstract void getResult(XlsRowBuffer row, int col, int group);
+    }
+
+    private static final class CountAccumulator extends Accumulator
+    {
+        private long[] counts = new long[0];
+
+        CountAccumulator(int columnIndex)
+        {
+            super(columnIndex);
+        }
+
+        @Override
+        void grow(int capacity)
+        {
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(IXlsReader source, int group)
+        {
+            if (columnIndex == 0 || source.getColumnType(columnIndex) != IXlsReader.TYPE_BLANK)
+            {
+                counts[group]++;
+            }
+        }
+
+        @Override
+        void merge(Accumulator other, int from, int group)
+        {
+            counts[group] += ((CountAccumulator) other).counts[from];
+        }
+
+        @Override
+        void getResult(XlsRowBuffer row, int col, int group)
+        {
+            row.setNumber(col, counts[group]);
+        }
+    }
+
+    private static final class SumAccumulator extends Accumulator
+    {
+        private final boolean average;
+        private double[] sums = new double[0];
+        private long[] counts = new long[0];
+
+        SumAccumulator(int columnIndex, boolean average)
+        {
+            super(columnIndex);
+            this.average = average;
+        }
+
+        @Override
+        void grow(int capacity)
+        {
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        @Override
+        void add(IXlsReader source, int group) throws Exception
+        {
+            switch (source.getColumnType(columnIndex))
+            {
+                case IXlsReader.TYPE_NUMERIC:
+                case IXlsReader.TYPE_BOOLEAN:
+                    sums[group] += source.getColumnDouble(columnIndex);
+                    counts[group]++;
+                    break;
+                case IXlsReader.TYPE_STRING:
+                    String text = source.getColumn(columnIndex).trim();
+                    if (XlsCondition.isNumber(text))
+                    {
+                        sums[group] += Double.parseDouble(text);
+                        counts[group]++;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        void merge(Accumulator other, int from, int group)
+        {
+            SumAccumulator sum = (SumAccumulator) other;
+            sums[group] += sum.sums[from];
+            counts[group] += sum.counts[from];
+        }
+
+        @Override
+        void getResult(XlsRowBuffer row, int col, int group)
+        {
+            if (counts[group] == 0)
+            {
+                row.setBlank(col);
+            }
+            else
+            {
+                row.setNumber(col, average ? sums[group] / counts[group] : sums[group]);
+            }
+        }
+    }
+
+    private final class ExtremeAccumulator extends Accumulator
+    {
+        private final boolean maximum;
+        private byte[] types = new byte[0];
+        private double[] numbers = new double[0];
+        private String[] texts = new String[0];
+        private boolean[] dates = new boolean[0];
+
+        ExtremeAccumulator(int columnIndex, boolean maximum)
+        {
+            super(columnIndex);
+            this.maximum = maximum;
+        }
+
+        @Override
+        void grow(int capacity)
+        {
+            types = Arrays.copyOf(types, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            dates = Arrays.copyOf(dates, capacity);
+        }
+
+        @Override
+        void add(IXlsReader source, int group) throws Exception
+        {
+            int type = source.getColumnType(columnIndex);
+            if (type == IXlsReader.TYPE_BLANK)
+            {
+                return;
+            }
+            boolean isText = type == IXlsReader.TYPE_STRING;
+            double value = isText ? 0 : source.getColumnDouble(columnIndex);
+            String text = isText ? source.getColumn(columnIndex) : null;
+            if (isBetter(group, isText, value, text))
+            {
+                types[group] = (byte) type;
+                numbers[group] = value;
+                texts[group] = text;
+                dates[group] = !isText && isDate(source, columnIndex);
+            }
+        }
+
+        @Override
+        void merge(Accumulator other, int from, int group)
+        {
+            ExtremeAccumulator extreme = (ExtremeAccumulator) other;
+            byte type = extreme.types[from];
+            if (type != XlsRowBuffer.BLANK
+                    && isBetter(group, type == XlsRowBuffer.STRING, extreme.numbers[from], extreme.texts[from]))
+            {
+                types[group] = type;
+                numbers[group] = extreme.numbers[from];
+                texts[group] = extreme.texts[from];
+                dates[group] = extreme.dates[from];
+            }
+        }
+
+        /**
+         * Check if a value replaces the current minimum or maximum of the group
+         */
+        private boolean isBetter(int group, boolean isText, double value, String text)
+        {
+            // Numbers and booleans sort before texts, as with ORDER BY
+            int result;
+            if (types[group] == XlsRowBuffer.BLANK)
+            {
+                result = maximum ? 1 : -1;
+            }
+            else if (isText != (types[group] == XlsRowBuffer.STRING))
+            {
+                result = isText ? 1 : -1;
+            }
+            else
+            {
+                result = isText ? text.compareTo(texts[group]) : Double.compare(value, numbers[group]);
+            }
+            return maximum ? result > 0 : result < 0;
+        }
+
+        @Override
+        void getResult(XlsRowBuffer row, int col, int group)
+        {
+            switch (types[group])
+            {
+                case XlsRowBuffer.STRING:
+                    row.setString(col, texts[group]);
+                    break;
+                case XlsRowBuffer.NUMERIC:
+                    if (dates[group])
+                    {
+                        row.setDate(col, numbers[group]);
+                    }
+                    else
+                    {
+                        row.setNumber(col, numbers[group]);
+                    }
+                    break;
+                case XlsRowBuffer.BOOLEAN:
+                    row.setBoolean(col, numbers[group] != 0);
+                    break;
+                default:
+                    row.setBlank(col);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Reader returning the rows of an INNER or LEFT JOIN of two readers, with
+ * the columns of the left reader followed by the columns of the right one.
+ *
+ * The rows of the smaller input, as given by the dimensions of the sheets,
+ * are read into a hash table on their join columns. The larger input is
+ * then read once and each of its rows is looked up in the table, so only
+ * the smaller input is held in memory. For a LEFT JOIN built on the left
+ * input the left rows without match are returned after the others.
+ *
+ * The join columns are equal like with = in a WHERE clause: numbers are
+ * compared numerically, also when one of the cells is a text holding a
+ * number. Empty cells never match.
+ *
+ * @author Andre Schild
+ */
+final class XlsJoinReader extends AbstractRowReader
+{
+    /** Number of days between the 1900 and the 1904 date system */
+    private static final int DAYS_1904 = 1462;
+    /** Most rows the hash table is sized for before reading the build input */
+    private static final int MAX_PRESIZE_ROWS = 1 << 20;
+
+    private final IXlsReader left;
+    private final IXlsReader right;
+    private final String[] names;
+    private final int leftWidth;
+    /** 1-based columns compared, of the left and the right reader */
+    private final int[] leftKeys;
+    private final int[] rightKeys;
+    private final boolean leftJoin;
+    private boolean[] leftUsed = null;
+    private boolean[] rightUsed = null;
+
+    /** The left input is held in the hash table, the right one is read through it */
+    private boolean buildLeft;
+    private boolean built = false;
+    /** Rows of the build input, with the cells at the columns of the joined row */
+    private List<XlsRowBuffer> buildRows;
+    private int[] buildHashes;
+    /** Next build row with the same slot, -1 at the end of the chain */
+    private int[] buildNext;
+    /** First build row of each slot, -1 when empty */
+    private int[] table;
+    /** Build rows which found a match, for a LEFT JOIN built on the left input */
+    private boolean[] matched = null;
+    /** Date system of the inputs, null until the first date cell */
+    private Boolean leftDate1904 = null;
+    private Boolean rightDate1904 = null;
+
+    /** The current row of the probe input, copied */
+    private final XlsRowBuffer probeRow = new XlsRowBuffer();
+    private boolean probeRead = false;
+    private boolean probeDone = false;
+    private boolean probeMatched = false;
+    private int probeHash = 0;
+    /** Next build row to check for the current probe row, -1 when done */
+    private int candidate = -1;
+    /** Next build row checked for a missing match, after the probe input */
+    private int unmatchedRow = 0;
+
+    /** Join columns of the last row read by readKeys(): a number or a text */
+    private final double[] keyNumbers;
+    private final String[] keyTexts;
+    private final boolean[] keyIsText;
+
+    /**
+     * @param left        Opened left reader
+     * @param leftNames   Column names of the left reader, as alias.column
+     * @param right       Opened right reader
+     * @param rightNames  Column names of the right reader, as alias.column
+     * @param leftKeys    1-based left column of each compared pair
+     * @param rightKeys   1-based right column of each compared pair
+     * @param leftJoin    Keep the left rows without match
+     */
+    XlsJoinReader(IXlsReader left, String[] leftNames, IXlsReader right, String[] rightNames,
+            int[] leftKeys, int[] rightKeys, boolean leftJoin)
+    {
+        this.left = left;
+        this.right = right;
+        this.leftWidth = leftNames.length;
+        this.names = new String[leftNames.length + rightNames.length];
+        System.arraycopy(leftNames, 0, names, 0, leftNames.length);
+        System.arraycopy(rightNames, 0, names, leftNames.length, rightNames.length);
+        this.leftKeys = leftKeys;
+        this.rightKeys = rightKeys;
+        this.leftJoin = leftJoin;
+        keyNumbers = new double[leftKeys.length];
+        keyTexts = new String[leftKeys.length];
+        keyIsText = new boolean[leftKeys.length];
+        setStringDateFormat(left.getStringDateFormat());
+        setColumnNames(names);
+    }
+
+    @Override
+    public void openFile() throws Exception
+    {
+        openSource();
+        setColumnNames(names);
+    }
+
+    @Override
+    protected void openSource()
+    {
+        // The inputs are opened by the caller
+    }
+
+    @Override
+    public void setColumnsUsed(boolean[] columnsUsed)
+    {
+        super.setColumnsUsed(columnsUsed);
+        if (columnsUsed == null)
+        {
+            leftUsed = null;
+            rightUsed = null;
+            left.setColumnsUsed(null);
+            right.setColumnsUsed(null);
+            return;
+        }
+        leftUsed = new boolean[leftWidth];
+        rightUsed = new boolean[names.length - leftWidth];
+        for (int col = 0; col < columnsUsed.length && col < names.length; col++)
+        {
+            if (col < leftWidth)
+            {
+                leftUsed[col] = columnsUsed[col];
+            }
+            else
+            {
+                rightUsed[col - leftWidth] = columnsUsed[col];
+            }
+        }
+        for (int loop = 0; loop < leftKeys.length; loop++)
+        {
+            leftUsed[leftKeys[loop] - 1] = true;
+            rightUsed[rightKeys[loop] - 1] = true;
+        }
+        left.setColumnsUsed(leftUsed.clone());
+        right.setColumnsUsed(rightUsed.clone());
+    }
+
+    /**
+     * Estimate the number of rows of a reader from the dimensions of the sheet
+     *
+     * @param reader  Opened reader
+     * @return        About the number of rows, Integer.MAX_VALUE when unknown
+     */
+    private static int estimateRows(IXlsReader reader)
+    {
+        int rows = -1;
+        if (reader instanceof AbstractRowReader)
+        {
+            rows = ((AbstractRowReader) reader).getDimensionRows();
+        }
+        else if (reader instanceof POIReader)
+        {
+            rows = ((POIReader) reader).getDimensionRows();
+        }
+        else if (reader instanceof XlsColumnarReader)
+        {
+            rows = ((XlsColumnarReader) reader).getDimensionRows();
+        }
+        return rows < 0 ? Integer.MAX_VALUE : rows;
+    }
+
+    /**
+     * Read the smaller input into the hash table
+     */
+    private void build() throws Exception
+    {
+        int leftRows = estimateRows(left);
+        int rightRows = estimateRows(right);
+        buildLeft = leftRows < rightRows;
+        IXlsReader source = buildLeft ? left : right;
+        int[] keys = buildLeft ? leftKeys : rightKeys;
+        int presize = Math.min(Math.min(leftRows, rightRows), MAX_PRESIZE_ROWS);
+        buildRows = new ArrayList<XlsRowBuffer>(presize);
+        buildHashes = new int[Math.max(16, presize)];
+        while (source.next())
+        {
+            XlsRowBuffer row = new XlsRowBuffer(keys.length);
+            row.clear();
+            int offset = buildLeft ? 0 : leftWidth;
+            copyRow(source, buildLeft, row, offset);
+            if (buildRows.size() == buildHashes.length)
+            {
+                buildHashes = Arrays.copyOf(buildHashes, buildHashes.length * 2);
+            }
+            buildHashes[buildRows.size()] = readKeys(row, keys, offset) ? getKeyHash() : 0;
+            buildRows.add(row);
+        }
+        source.close();
+        int count = buildRows.size();
+        int size = 16;
+        while (size < count * 2)
+        {
+            size *= 2;
+        }
+        table = new int[size];
+        Arrays.fill(table, -1);
+        buildNext = new int[count];
+        // Added backwards, so each chain lists the rows in the order of the sheet
+        for (int loop = count - 1; loop >= 0; loop--)
+        {
+            int slot = getSlot(buildHashes[loop], size - 1);
+            buildNext[loop] = table[slot];
+            table[slot] = loop;
+        }
+        if (buildLeft && leftJoin)
+        {
+            matched = new boolean[count];
+        }
+        built = true;
+    }
+
+    private static int getSlot(int hash, int mask)
+    {
+        int spread = hash * 0x9e3779b9;
+        return (spread ^ (spread >>> 16)) & mask;
+    }
+
+    /**
+     * Copy the cells of the current row of an input. Dates of a workbook
+     * using the 1904 date system are converted to the 1900 one, so both
+     * inputs can be returned with the same date system.
+     */
+    private void copyRow(IXlsReader source, boolean isLeft, XlsRowBuffer row, int offset) throws Exception
+    {
+        boolean[] used = isLeft ? leftUsed : rightUsed;
+        int width = isLeft ? leftWidth : names.length - leftWidth;
+        for (int col = 0; col < width; col++)
+        {
+            if (used != null && !used[col])
+            {
+                continue;
+            }
+            switch (source.getColumnType(col + 1))
+            {
+                case IXlsReader.TYPE_STRING:
+                    row.setString(offset + col, source.getColumn(col + 1));
+                    break;
+                case IXlsReader.TYPE_NUMERIC:
+                    double value = source.getColumnDouble(col + 1);
+                    if (source.isColumnDate(col + 1))
+                    {
+                        if (isDate1904(source, isLeft, col + 1, value))
+                        {
+                            value += DAYS_1904;
+                        }
+                        row.setDate(offset + col, value);
+                    }
+                    else
+                    {
+                        row.setNumber(offset + col, value);
+                    }
+                    break;
+                case IXlsReader.TYPE_BOOLEAN:
+                    row.setBoolean(offset + col, source.getColumnBoolean(col + 1));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private boolean isDate1904(IXlsReader source, boolean isLeft, int col, double value) throws Exception
+    {
+        Boolean date1904 = isLeft ? leftDate1904 : rightDate1904;
+        if (date1904 == null)
+        {
+            // The source converts with the date system of the workbook
+            Date date = source.getColumnDate(col);
+            date1904 = Boolean.valueOf(date != null && !date.equals(DateUtil.getJavaDate(value, false)));
+            if (isLeft)
+            {
+                leftDate1904 = date1904;
+            }
+            else
+            {
+                rightDate1904 = date1904;
+            }
+        }
+        return date1904.booleanValue();
+    }
+
+    /**
+     * Read the join columns of a row into keyNumbers and keyTexts
+     *
+     * @return  false when one of them is empty, the row matches no row
+     */
+    private boolean readKeys(XlsRowBuffer row, int[] keys, int offset)
+    {
+        for (int loop = 0; loop < keys.length; loop++)
+        {
+            int col = offset + keys[loop] - 1;
+            switch (row.getType(col))
+            {
+                case XlsRowBuffer.NUMERIC:
+                case XlsRowBuffer.BOOLEAN:
+                    keyIsText[loop] = false;
+                    keyNumbers[loop] = row.numbers[col];
+                    break;
+                case XlsRowBuffer.STRING:
+                    String text = row.strings[col];
+                    if (XlsCondition.isNumber(text))
+                    {
+                        keyIsText[loop] = false;
+                        keyNumbers[loop] = Double.parseDouble(text.trim());
+                    }
+                    else
+                    {
+                        keyIsText[loop] = true;
+                        keyTexts[loop] = text;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private int getKeyHash()
+    {
+        int hash = 1;
+        for (int loop = 0; loop < keyNumbers.length; loop++)
+        {
+            int cellHash;
+            if (keyIsText[loop])
+            {
+                cellHash = keyTexts[loop].hashCode();
+            }
+            else
+            {
+                // Adding 0.0 turns -0.0 into 0.0, both are equal
+                long bits = Double.doubleToLongBits(keyNumbers[loop] + 0.0);
+                cellHash = (int) (bits ^ (bits >>> 32));
+            }
+            hash = 31 * hash + cellHash;
+        }
+        return hash;
+    }
+
+    /**
+     * Check if a build row has the join columns read by readKeys()
+     */
+    private boolean isKeyEqual(XlsRowBuffer row, int[] keys, int offset)
+    {
+        for (int loop = 0; loop < keys.length; loop++)
+        {
+            int col = offset + keys[loop] - 1;
+            byte type = row.getType(col);
+            if (type == XlsRowBuffer.BLANK)
+            {
+                return false;
+            }
+            if (type == XlsRowBuffer.STRING)
+            {
+                String text = row.strings[col];
+                if (keyIsText[loop])
+                {
+                    if (!text.equals(keyTexts[loop]))
+                    {
+                        return false;
+                    }
+                }
+                else if (!XlsCondition.isNumber(text) || Double.parseDouble(text.trim()) != keyNumbers[loop])
+                {
+                    return false;
+                }
+            }
+            else if (keyIsText[loop] || row.numbers[col] != keyNumbers[loop])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean readRow(XlsRowBuffer row) throws Exception
+    {
+        if (!built)
+        {
+            build();
+        }
+        IXlsReader probe = buildLeft ? right : left;
+        int[] probeKeys = buildLeft ? rightKeys : leftKeys;
+        int[] buildKeys = buildLeft ? leftKeys : rightKeys;
+        int probeOffset = buildLeft ? leftWidth : 0;
+        int buildOffset = buildLeft ? 0 : leftWidth;
+        while (!probeDone)
+        {
+            if (probeRead)
+            {
+                while (candidate != -1)
+                {
+                    int buildRow = candidate;
+                    candidate = buildNext[candidate];
+                    if (buildHashes[buildRow] == probeHash && isKeyEqual(buildRows.get(buildRow), buildKeys, buildOffset))
+                    {
+                        probeMatched = true;
+                        if (matched != null)
+                        {
+                            matched[buildRow] = true;
+                        }
+                        joinRow(row, buildRows.get(buildRow));
+                        return true;
+                    }
+                }
+                probeRead = false;
+                if (!probeMatched && leftJoin && !buildLeft)
+                {
+                    // Left row without match
+                    joinRow(row, null);
+                    return true;
+                }
+            }
+            if (!probe.next())
+            {
+                probeDone = true;
+                break;
+            }
+            probeRow.clear();
+            copyRow(probe, !buildLeft, probeRow, probeOffset);
+            probeRead = true;
+            probeMatched = false;
+            candidate = -1;
+            if (readKeys(probeRow, probeKeys, probeOffset))
+            {
+                probeHash = getKeyHash();
+                candidate = table[getSlot(probeHash, table.length - 1)];
+            }
+        }
+        while (matched != null && unmatchedRow < matched.length)
+        {
+            int buildRow = unmatchedRow++;
+            if (!matched[buildRow])
+            {
+                // Left row without match, after all right rows
+                row.copyFrom(buildRows.get(buildRow));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Combine the current probe row with a build row into the row returned
+     *
+     * @param row       Cleared row to fill
+     * @param buildRow  The matching build row, null to leave its columns empty
+     */
+    private void joinRow(XlsRowBuffer row, XlsRowBuffer buildRow)
+    {
+        if (buildRow != null)
+        {
+            row.copyFrom(buildRow);
+        }
+        for (int col = 0; col < probeRow.width; col++)
+        {
+            switch (probeRow.getType(col))
+            {
+                case XlsRowBuffer.STRING:
+                    row.setString(col, probeRow.strings[col]);
+                    break;
+                case XlsRowBuffer.NUMERIC:
+                    if (probeRow.isDate(col))
+                    {
+                        row.setDate(col, probeRow.numbers[col]);
+                    }
+                    else
+                    {
+                        row.setNumber(col, probeRow.numbers[col]);
+                    }
+                    break;
+                case XlsRowBuffer.BOOLEAN:
+                    row.setBoolean(col, probeRow.numbers[col] != 0);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    protected void closeSource()
+    {
+        left.close();
+        right.close();
+        buildRows = null;
+        table = null;
+        buildNext = null;
+        buildHashes = null;
+        matched = null;
+        probeDone = true;
+        built = true;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.util.List;
+
+/**
+ * Reader over rows held in memory, used for results computed by the driver
+ * itself instead of being read from a sheet, like COUNT(*).
+ *
+ * @author Andre Schild
+ */
+final class XlsMemoryReader extends AbstractRowReader implements IXlsSeekableReader
+{
+    private final String[] names;
+    private final List<XlsRowBuffer> rows;
+    private int index = 0;
+
+    /**
+     * @param columnNames  Upper case column names
+     * @param rows         The rows to return, not copied
+     */
+    XlsMemoryReader(String[] columnNames, List<XlsRowBuffer> rows)
+    {
+        this.names = columnNames;
+        this.rows = rows;
+    }
+
+    @Override
+    public void openFile() throws Exception
+    {
+        openSource();
+        setColumnNames(names);
+    }
+
+    @Override
+    protected void openSource()
+    {
+        index = 0;
+    }
+
+    @Override
+    protected boolean readRow(XlsRowBuffer row)
+    {
+        if (index >= rows.size())
+        {
+            return false;
+        }
+        row.copyFrom(rows.get(index++));
+        return true;
+    }
+
+    @Override
+    public int getRowPosition()
+    {
+        return index - 1;
+    }
+
+    @Override
+    public void seekRow(int position)
+    {
+        row.copyFrom(rows.get(position));
+        index = position + 1;
+    }
+
+    /**
+     * Use the 1904 date windowing when converting numbers to dates
+     *
+     * @param date1904  The date system of the workbook the rows are from
+     */
+    void setDate1904(boolean date1904)
+    {
+        this.date1904 = date1904;
+    }
+
+    @Override
+    void setPrefetchRows(int prefetchRows)
+    {
+        // The rows are already in memory
+    }
+
+    @Override
+    protected void closeSource()
+    {
+        index = rows.size();
+    }
+}
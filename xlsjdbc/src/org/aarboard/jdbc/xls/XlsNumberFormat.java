@@ -0,0 +1,75 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+/**
+ * Conversion of numeric cells into strings.
+ *
+ * The result is the same as Double.toString() without a trailing ".0", but
+ * whole numbers are written directly and small ones are taken from a table,
+ * so reading a numeric column as string does not allocate for them.
+ *
+ * @author Andre Schild
+ */
+final class XlsNumberFormat
+{
+    /** Whole numbers below this are returned from the table */
+    private static final int CACHED_NUMBERS = 1024;
+    /** Double.toString() uses the exponent notation from here on */
+    private static final double EXPONENT_LIMIT = 1e7;
+    private static final String[] NUMBERS = new String[CACHED_NUMBERS];
+
+    static
+    {
+        for (int i = 0; i < CACHED_NUMBERS; i++)
+        {
+            NUMBERS[i] = Integer.toString(i);
+        }
+    }
+
+    private XlsNumberFormat()
+    {
+    }
+
+    /**
+     * Convert a number into the string shown for a numeric cell
+     *
+     * @param value  The cell value
+     * @return       The value as string, without a trailing ".0"
+     */
+    static String toString(double value)
+    {
+        if (value > -EXPONENT_LIMIT && value < EXPONENT_LIMIT)
+        {
+            int intValue = (int) value;
+            if (intValue == value && (intValue != 0 || Double.doubleToRawLongBits(value) == 0L))
+            {
+                if (intValue >= 0 && intValue < CACHED_NUMBERS)
+                {
+                    return NUMBERS[intValue];
+                }
+                return Integer.toString(intValue);
+            }
+        }
+        String retVal = Double.toString(value);
+        if (retVal.endsWith(".0"))
+        {
+            retVal = retVal.substring(0, retVal.length() - 2);
+        }
+        return retVal;
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * This class implements the PreparedStatement interface for the XlsJdbc
+ * driver.
+ *
+ * The statement is parsed once by the connection, executing it again only
+ * binds the current parameter values and opens the file.
+ *
+ * @author     Andre Schild
+ */
+public class XlsPreparedStatement extends XlsStatement implements PreparedStatement
+{
+    private final XlsQueryPlan plan;
+    private final Object[] parameters;
+    private final boolean[] parameterSet;
+
+    /**
+     *Constructor for the XlsPreparedStatement object
+     *
+     * @param  connection  The connection
+     * @param  plan        The parsed statement
+     */
+    protected XlsPreparedStatement(XlsConnection connection, XlsQueryPlan plan)
+    {
+        this(connection, plan, ResultSet.TYPE_FORWARD_ONLY);
+    }
+
+    /**
+     * @param  connection     The connection
+     * @param  plan           The parsed statement
+     * @param  resultSetType  TYPE_FORWARD_ONLY or TYPE_SCROLL_INSENSITIVE
+     */
+    protected XlsPreparedStatement(XlsConnection connection, XlsQueryPlan plan, int resultSetType)
+    {
+        super(connection, resultSetType);
+        this.plan = plan;
+        this.parameters = new Object[plan.getParameterCount()];
+        this.parameterSet = new boolean[plan.getParameterCount()];
+    }
+
+    /**
+     * Set the value of a parameter
+     *
+     * @param  parameterIndex    1-based parameter index
+     * @param  value             The value, null for SQL NULL
+     * @exception  SQLException  When the index is out of range
+     */
+    private void setParameter(int parameterIndex, Object value) throws SQLException
+    {
+        if (parameterIndex < 1 || parameterIndex > parameters.length)
+        {
+            throw new SQLException("Parameter index " + parameterIndex + " out of range.");
+        }
+        parameters[parameterIndex - 1] = value;
+        parameterSet[parameterIndex - 1] = true;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException
+    {
+        DriverManager.println("XlsJdbc - XlsPreparedStatement:executeQuery() - sql= " + plan.getSql());
+        for (int i = 0; i < parameterSet.length; i++)
+        {
+            if (!parameterSet[i])
+            {
+                throw new SQLException("No value specified for parameter " + (i + 1));
+            }
+        }
+        return executeQuery(plan, parameters);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException
+    {
+        Arrays.fill(parameters, null);
+        Arrays.fill(parameterSet, false);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException
+    {
+        setParameter(parameterIndex, null);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException
+    {
+        setParameter(parameterIndex, null);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException
+    {
+        setParameter(parameterIndex, Boolean.valueOf(x));
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException
+    {
+        setParameter(parameterIndex, Byte.valueOf(x));
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException
+    {
+        setParameter(parameterIndex, Short.valueOf(x));
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException
+    {
+        setParameter(parameterIndex, Integer.valueOf(x));
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException
+    {
+        setParameter(parameterIndex, Long.valueOf(x));
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException
+    {
+        setParameter(parameterIndex, Float.valueOf(x));
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException
+    {
+        setParameter(parameterIndex, Double.valueOf(x));
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException
+    {
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException
+    {
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException
+    {
+        setParameter(parameterIndex, value);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException
+    {
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException
+    {
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException
+    {
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException
+    {
+        if (x != null && !(x instanceof Number) && !(x instanceof String)
+                && !(x instanceof Boolean) && !(x instanceof java.util.Date))
+        {
+            throw new SQLException("Parameter type " + x.getClass().getName() + " not supported.");
+        }
+        setParameter(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException
+    {
+        setObject(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException
+    {
+        setObject(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    @Deprecated
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public boolean execute() throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public void addBatch() throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException
+    {
+        throw new SQLException("Not Supported !");
+    }
+}
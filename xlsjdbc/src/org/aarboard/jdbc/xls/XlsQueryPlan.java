@@ -0,0 +1,465 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed query together with everything which can be resolved without
+ * reading the data: the files and sheets to read and the mapping of the
+ * selected columns to the columns of the sheet, or of the joined sheets.
+ *
+ * A table name with the wildcards * or ? reads all matching files of the
+ * directory; the files are listed each time the query is executed.
+ *
+ * Plans are cached by the connection and shared by all statements
+ * executing the same SQL, so they must not be modified once created. The
+ * column mapping is resolved on first use and kept as long as the sheet
+ * has the same header.
+ *
+ * @author Andre Schild
+ */
+final class XlsQueryPlan
+{
+    private final String sql;
+    private final XlsSqlParser parser;
+    private final String tableName;
+    /** Sheet of each table, null for the first sheet */
+    private final String[] sheetNames;
+    /** Data file of each table, or the file name pattern */
+    private final String[] fileNames;
+    private volatile ColumnMapping columnMapping = null;
+
+    /**
+     * Columns of the result resolved for one sheet header
+     */
+    static final class ColumnMapping
+    {
+        final String[] header;
+        /** 1-based sheet column of every selected column, 0 for COUNT(*), null for select * */
+        final int[] columnIndexes;
+        /** Columns needed for the select list, the groups and the sort, null for select * */
+        final boolean[] columnsUsed;
+        /** 1-based sheet column of every GROUP BY column, null when not aggregated */
+        final int[] groupIndexes;
+        /**
+         * 1-based column of every ORDER BY column, null when not sorted. A
+         * sheet column, or a result column when the rows are aggregated.
+         */
+        final int[] orderIndexes;
+
+        ColumnMapping(String[] header, int[] columnIndexes, boolean[] columnsUsed, int[] groupIndexes, int[] orderIndexes)
+        {
+            this.header = header;
+            this.columnIndexes = columnIndexes;
+            this.columnsUsed = columnsUsed;
+            this.groupIndexes = groupIndexes;
+            this.orderIndexes = orderIndexes;
+        }
+    }
+
+    private XlsQueryPlan(String sql, XlsSqlParser parser, String tableName, String[] sheetNames, String[] fileNames)
+    {
+        this.sql = sql;
+        this.parser = parser;
+        this.tableName = tableName;
+        this.sheetNames = sheetNames;
+        this.fileNames = fileNames;
+    }
+
+    /**
+     * Parse the statement and resolve the file it reads
+     *
+     * @param sql         The SELECT statement
+     * @param connection  Connection giving the directory and file extension
+     * @return            The plan
+     * @throws SQLException  On syntax errors or when the file cannot be read
+     */
+    static XlsQueryPlan create(String sql, XlsConnection connection) throws SQLException
+    {
+        XlsSqlParser parser = new XlsSqlParser();
+        try
+        {
+            parser.parse(sql);
+        }
+        catch (Exception e)
+        {
+            throw new SQLException("Syntax Error. " + e.getMessage());
+        }
+
+        int tableCount = parser.getTableNames().size();
+        String[] tableNames = new String[tableCount];
+        String[] sheetNames = new String[tableCount];
+        String[] fileNames = new String[tableCount];
+        for (int loop = 0; loop < tableCount; loop++)
+        {
+            String tableName = parser.getTableNames().get(loop);
+            String sheetName = parser.getSheetNames().get(loop);
+            String fileName = connection.getFilePath() + tableName + connection.getExtension();
+            File checkFile = new File(fileName);
+            if (isPattern(tableName))
+            {
+                if (sheetName == null && tableName.indexOf('$') > 0)
+                {
+                    sheetName = tableName.substring(tableName.indexOf('$') + 1);
+                    tableName = tableName.substring(0, tableName.indexOf('$'));
+                    fileName = connection.getFilePath() + tableName + connection.getExtension();
+                }
+                if (isPattern(new File(fileName).getParent()))
+                {
+                    throw new SQLException("Wildcards are only supported in the file name '" + tableName + "'  !");
+                }
+                // The matching files are listed when the query is executed
+                tableNames[loop] = tableName;
+                sheetNames[loop] = sheetName;
+                fileNames[loop] = fileName;
+                continue;
+            }
+            if (sheetName == null && tableName.indexOf('$') > 0 && !checkFile.exists())
+            {
+                // file$sheet notation
+                sheetName = tableName.substring(tableName.indexOf('$') + 1);
+                tableName = tableName.substring(0, tableName.indexOf('$'));
+                fileName = connection.getFilePath() + tableName + connection.getExtension();
+                checkFile = new File(fileName);
+            }
+
+            if (!checkFile.exists())
+            {
+                throw new SQLException("Cannot open data file '" + fileName + "'  !");
+            }
+
+            if (!checkFile.canRead())
+            {
+                throw new SQLException("Data file '" + fileName + "'  not readable !");
+            }
+            tableNames[loop] = tableName;
+            sheetNames[loop] = sheetName;
+            fileNames[loop] = fileName;
+        }
+        return new XlsQueryPlan(sql, parser, tableNames[0], sheetNames, fileNames);
+    }
+
+    String getSql()
+    {
+        return sql;
+    }
+
+    XlsSqlParser getParser()
+    {
+        return parser;
+    }
+
+    String getTableName()
+    {
+        return tableName;
+    }
+
+    String getSheetName()
+    {
+        return sheetNames[0];
+    }
+
+    String getFileName()
+    {
+        return fileNames[0];
+    }
+
+    /**
+     * @return Number of tables read, more than one for a join
+     */
+    int getTableCount()
+    {
+        return fileNames.length;
+    }
+
+    /**
+     * @param table  0-based index of the table in the FROM clause
+     * @return       Sheet of the table, null for the first sheet
+     */
+    String getSheetName(int table)
+    {
+        return sheetNames[table];
+    }
+
+    /**
+     * @param table  0-based index of the table in the FROM clause
+     * @return       Data file of the table, or the file name pattern
+     */
+    String getFileName(int table)
+    {
+        return fileNames[table];
+    }
+
+    /**
+     * @param table  0-based index of the table in the FROM clause
+     * @return       true when the table name has wildcards
+     */
+    boolean isFilePattern(int table)
+    {
+        return isPattern(new File(fileNames[table]).getName());
+    }
+
+    private static boolean isPattern(String name)
+    {
+        return name != null && (name.indexOf('*') >= 0 || name.indexOf('?') >= 0);
+    }
+
+    /**
+     * List the files matching the name of a table with wildcards
+     *
+     * @param table  0-based index of the table in the FROM clause
+     * @return       Paths of the matching files, sorted by name
+     * @throws SQLException  When no file matches
+     */
+    String[] listFiles(int table) throws SQLException
+    {
+        File pattern = new File(fileNames[table]);
+        StringBuilder regex = new StringBuilder();
+        String name = pattern.getName();
+        int start = 0;
+        for (int loop = 0; loop < name.length(); loop++)
+        {
+            char c = name.charAt(loop);
+            if (c == '*' || c == '?')
+            {
+                if (loop > start)
+                {
+                    regex.append(Pattern.quote(name.substring(start, loop)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                start = loop + 1;
+            }
+        }
+        if (start < name.length())
+        {
+            regex.append(Pattern.quote(name.substring(start)));
+        }
+        // File names are not case sensitive on Windows
+        Pattern matcher = Pattern.compile(regex.toString(), File.separatorChar == '\\' ? Pattern.CASE_INSENSITIVE : 0);
+        File directory = pattern.getParentFile();
+        String[] names = directory == null ? null : directory.list();
+        int count = 0;
+        for (int loop = 0; names != null && loop < names.length; loop++)
+        {
+            File file = new File(directory, names[loop]);
+            if (matcher.matcher(names[loop]).matches() && file.isFile() && file.canRead())
+            {
+                names[count++] = file.getPath();
+            }
+        }
+        if (count == 0)
+        {
+            throw new SQLException("No data file matches '" + fileNames[table] + "'  !");
+        }
+        String[] files = Arrays.copyOf(names, count);
+        Arrays.sort(files);
+        return files;
+    }
+
+    int getParameterCount()
+    {
+        return parser.getParameterCount();
+    }
+
+    /**
+     * Get the mapping of the selected columns for the given sheet header
+     *
+     * @param header  Column names of the opened reader
+     * @return        The mapping
+     * @throws SQLException  When a selected column is not found
+     */
+    ColumnMapping getColumnMapping(String[] header) throws SQLException
+    {
+        ColumnMapping mapping = columnMapping;
+        if (mapping != null && (mapping.header == header || Arrays.equals(mapping.header, header)))
+        {
+            return mapping;
+        }
+        String[] selectColumns = parser.getSelectColumns();
+        int[] columnIndexes = null;
+        boolean[] columnsUsed = null;
+        int[] groupIndexes = null;
+        if (parser.isCountAll())
+        {
+            columnsUsed = new boolean[header.length];
+        }
+        else if (parser.isAggregate())
+        {
+            columnsUsed = new boolean[header.length];
+            columnIndexes = new int[selectColumns.length];
+            for (int loop = 0; loop < selectColumns.length; loop++)
+            {
+                if (!selectColumns[loop].equals("*"))
+                {
+                    columnIndexes[loop] = findColumn(header, selectColumns[loop]);
+                    columnsUsed[columnIndexes[loop] - 1] = true;
+                }
+            }
+            String[] groupColumns = parser.getGroupColumns();
+            groupIndexes = new int[groupColumns.length];
+            for (int loop = 0; loop < groupColumns.length; loop++)
+            {
+                groupIndexes[loop] = findColumn(header, groupColumns[loop]);
+                columnsUsed[groupIndexes[loop] - 1] = true;
+            }
+        }
+        else if (selectColumns.length > 0 && !selectColumns[0].equals("*"))
+        {
+            columnsUsed = new boolean[header.length];
+            columnIndexes = new int[selectColumns.length];
+            for (int loop = 0; loop < selectColumns.length; loop++)
+            {
+                columnIndexes[loop] = findColumn(header, selectColumns[loop]);
+                columnsUsed[columnIndexes[loop] - 1] = true;
+            }
+        }
+        else
+        {
+            columnIndexes = getStarColumns(header);
+            if (columnIndexes != null)
+            {
+                columnsUsed = new boolean[header.length];
+                for (int loop = 0; loop < columnIndexes.length; loop++)
+                {
+                    columnsUsed[columnIndexes[loop] - 1] = true;
+                }
+            }
+        }
+        int[] orderIndexes = null;
+        String[] orderColumns = parser.getOrderColumns();
+        if (orderColumns.length > 0 && !parser.isCountAll())
+        {
+            orderIndexes = new int[orderColumns.length];
+            for (int loop = 0; loop < orderColumns.length; loop++)
+            {
+                if (parser.isAggregate())
+                {
+                    orderIndexes[loop] = findResultColumn(orderColumns[loop]);
+                }
+                else
+                {
+                    orderIndexes[loop] = findOrderColumn(header, orderColumns[loop]);
+                    if (columnsUsed != null)
+                    {
+                        columnsUsed[orderIndexes[loop] - 1] = true;
+                    }
+                }
+            }
+        }
+        mapping = new ColumnMapping(header, columnIndexes, columnsUsed, groupIndexes, orderIndexes);
+        columnMapping = mapping;
+        return mapping;
+    }
+
+    /**
+     * Get the columns returned by select *, all but the __FILE__ pseudo
+     * columns of the tables with wildcards
+     *
+     * @param header  Column names of the reader
+     * @return        1-based sheet columns, null when there are no pseudo columns
+     */
+    private static int[] getStarColumns(String[] header)
+    {
+        int[] columns = new int[header.length];
+        int count = 0;
+        for (int loop = 0; loop < header.length; loop++)
+        {
+            if (!header[loop].equals(XlsUnionReader.FILE_COLUMN) && !header[loop].endsWith("." + XlsUnionReader.FILE_COLUMN))
+            {
+                columns[count++] = loop + 1;
+            }
+        }
+        return count == header.length ? null : Arrays.copyOf(columns, count);
+    }
+
+    /**
+     * Search for an ORDER BY column in the sheet, or by its alias in the
+     * select list
+     *
+     * @param header      Column names of the reader
+     * @param columnName  Upper case name of the column
+     * @return            1-based sheet column
+     * @throws SQLException  When the column is not found
+     */
+    private int findOrderColumn(String[] header, String columnName) throws SQLException
+    {
+        String[] columnNames = parser.getColumnNames();
+        int found = XlsColumnIndex.findColumn(header, columnName);
+        if (found != -1)
+        {
+            return found;
+        }
+        for (int loop = 0; loop < columnNames.length; loop++)
+        {
+            if (columnName.equals(columnNames[loop]))
+            {
+                return findColumn(header, parser.getSelectColumns()[loop]);
+            }
+        }
+        throw new SQLException("Column '" + columnName + "' not found.");
+    }
+
+    /**
+     * Search for an ORDER BY column in the result of an aggregate query, by
+     * the name of the result column or by the grouped sheet column
+     *
+     * @param columnName  Upper case name of the column
+     * @return            1-based result column
+     * @throws SQLException  When the column is not selected
+     */
+    private int findResultColumn(String columnName) throws SQLException
+    {
+        String[] columnNames = parser.getColumnNames();
+        for (int loop = 0; loop < columnNames.length; loop++)
+        {
+            if (columnName.equals(columnNames[loop]))
+            {
+                return loop + 1;
+            }
+        }
+        for (int loop = 0; loop < columnNames.length; loop++)
+        {
+            if (parser.getFunctions()[loop] == null && columnName.equals(parser.getSelectColumns()[loop]))
+            {
+                return loop + 1;
+            }
+        }
+        throw new SQLException("ORDER BY column '" + columnName + "' must be in the select list");
+    }
+
+    /**
+     * Search for the column with the given name
+     *
+     * @param columnNames  Column names of the reader
+     * @param columnName   Upper case name of the column
+     * @return             1-based column index
+     * @throws SQLException  When the column is not found
+     */
+    private static int findColumn(String[] columnNames, String columnName) throws SQLException
+    {
+        int found = XlsColumnIndex.findColumn(columnNames, columnName);
+        if (found == -1)
+        {
+            throw new SQLException("Column '" + columnName + "' not found.");
+        }
+        return found;
+    }
+}
@@ -20,6 +20,7 @@ import java.math.BigDecimal;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Calendar;
 
@@ -37,8 +38,32 @@ public class XlsResultSet implements ResultSet
     protected XlsStatement statement;
     protected IXlsReader reader;
     protected String[] columnNames;
+    /** Reader column of each result column, null when all columns are selected */
+    protected int[] columnIndexes;
     protected String tableName;
     protected ResultSetMetaData resultSetMetaData;
+    /** Lookup of the column names, built on first use */
+    private XlsColumnIndex columnIndex = null;
+    /** Rows still to skip before the first returned row */
+    private int skipRows = 0;
+    /** Maximum number of rows to return, -1 for all */
+    private int limit = -1;
+    private int rowCount = 0;
+    /** The last column read was empty */
+    private boolean wasNull = false;
+    private int fetchSize = 0;
+    /** SQL types of the columns, null to infer them from the sheet */
+    private int[] columnTypes = null;
+    /** The cursor can be moved backwards and to any row */
+    private boolean scrollable = false;
+    /** 1-based number of the current row, 0 before the first row */
+    private int currentRow = 0;
+    /** Row the reader is positioned on, -1 when it is on no row */
+    private int readerRow = 0;
+    /** Reader position of each row read so far, for scrollable result sets */
+    private int[] rowPositions = null;
+    /** The last row has been read */
+    private boolean allRowsRead = false;
 
     /**
      *Constructor for the XlsResultSet object
@@ -47,14 +72,16 @@ public class XlsResultSet implements ResultSet
      * @param  reader       Description of Parameter
      * @param tableName
      * @param  columnNames  Description of Parameter
+     * @param  columnIndexes  1-based reader column of each selected column, or null for all columns
      * @since
      */
-    protected XlsResultSet(XlsStatement statement, IXlsReader reader, String tableName, String[] columnNames)
+    protected XlsResultSet(XlsStatement statement, IXlsReader reader, String tableName, String[] columnNames, int[] columnIndexes)
     {
         this.statement = statement;
         this.reader = reader;
         this.tableName = tableName;
         this.columnNames = columnNames;
+        this.columnIndexes = columnIndexes;
 
         if (columnNames.length == 0 || columnNames[0].equals("*"))
         {
@@ -62,6 +89,31 @@ public class XlsResultSet implements ResultSet
         }
     }
     
+    /**
+     * Restrict the rows returned by this result set
+     *
+     * @param offset  Number of rows to skip
+     * @param limit   Maximum number of rows to return, -1 for all
+     */
+    void setLimit(int offset, int limit)
+    {
+        this.skipRows = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Allow moving the cursor backwards and to any row. The reader keeps
+     * the rows read, only the position of each row is held here.
+     *
+     * @param reader  The reader of this result set
+     */
+    void setScrollable(IXlsSeekableReader reader)
+    {
+        this.reader = reader;
+        this.scrollable = true;
+        this.rowPositions = new int[64];
+    }
+
     /**
      * Search for the column with the given name
      * Returns 1-based numbers als used by the JDBC standards
@@ -71,16 +123,46 @@ public class XlsResultSet implements ResultSet
      */
     protected int getColumnIndex(String columnName)
     {
-        columnName = columnName.toUpperCase();
+        if (columnIndex == null || !columnIndex.isFor(columnNames))
+        {
+            columnIndex = new XlsColumnIndex(columnNames);
+        }
+        return columnIndex.indexOf(columnName);
+    }
 
-        for (int loop = 0; loop < columnNames.length; loop++)
+    /**
+     * Map a column of this result set to the column of the reader
+     *
+     * @param columnIndex  1-based column of the result set
+     * @return             1-based column of the reader
+     * @throws SQLException  When the column index is out of range
+     */
+    protected int getReaderIndex(int columnIndex) throws SQLException
+    {
+        if (columnIndexes == null)
         {
-            if (columnName.equals(columnNames[loop]))
-            {
-                return loop+1;
-            }
+            return columnIndex;
         }
-        return -1;
+        if (columnIndex < 1 || columnIndex > columnIndexes.length)
+        {
+            throw new SQLException("Column index " + columnIndex + " out of range.");
+        }
+        return columnIndexes[columnIndex - 1];
+    }
+
+    /**
+     * Map a column of this result set to the column of the reader and
+     * remember if it is empty, for wasNull()
+     *
+     * @param columnIndex  1-based column of the result set
+     * @return             1-based column of the reader
+     * @throws SQLException  When the column index is out of range
+     */
+    private int readColumn(int columnIndex) throws SQLException
+    {
+        int readerIndex = getReaderIndex(columnIndex);
+        wasNull = reader.getColumnType(readerIndex) == IXlsReader.TYPE_BLANK;
+        return readerIndex;
     }
 
     /**
@@ -93,7 +175,11 @@ public class XlsResultSet implements ResultSet
     @Override
     public void setFetchDirection(int p0) throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        if (p0 != FETCH_FORWARD && !(scrollable && (p0 == FETCH_REVERSE || p0 == FETCH_UNKNOWN)))
+        {
+            throw new SQLException("Not Supported !");
+        }
+        // Only a hint, the rows are always read in the order of the sheet
     }
 
     /**
@@ -106,10 +192,17 @@ public class XlsResultSet implements ResultSet
     @Override
     public void setFetchSize(int p0) throws SQLException
     {
-        // 
-        // Allowed just to ignore
-        //
-        // throw new SQLException("Not Supported !");
+        if (p0 < 0)
+        {
+            throw new SQLException("fetchSize must be >= 0");
+        }
+        fetchSize = p0;
+        // The streaming readers decode this many rows ahead on a background
+        // thread, when set before the first row is read
+        if (reader instanceof AbstractRowReader)
+        {
+            ((AbstractRowReader) reader).setPrefetchRows(p0);
+        }
     }
 
     /**
@@ -123,13 +216,14 @@ public class XlsResultSet implements ResultSet
     @Override
     public String getString(int columnIndex) throws SQLException
     {
-        try
+        int readerIndex = readColumn(columnIndex);
+        if (wasNull)
         {
-            return reader.getColumn(columnIndex);
+            return null;
         }
-        catch (NullPointerException ne)
+        try
         {
-            return null;
+            return reader.getColumn(readerIndex);
         }
         catch (Exception e)
         {
@@ -183,9 +277,14 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean getBoolean(int columnIndex) throws SQLException
     {
+        int readerIndex = readColumn(columnIndex);
+        if (wasNull)
+        {
+            return false;
+        }
         try
         {
-            return reader.getColumnBoolean(columnIndex);
+            return reader.getColumnBoolean(readerIndex);
         }
         catch (Exception e)
         {
@@ -218,7 +317,12 @@ public class XlsResultSet implements ResultSet
     @Override
     public short getShort(int p0) throws SQLException
     {
-        return reader.getColumnShort(p0);
+        int readerIndex = readColumn(p0);
+        if (wasNull)
+        {
+            return 0;
+        }
+        return reader.getColumnShort(readerIndex);
     }
 
     /**
@@ -232,7 +336,12 @@ public class XlsResultSet implements ResultSet
     @Override
     public int getInt(int p0) throws SQLException
     {
-        return reader.getColumnInt(p0);
+        int readerIndex = readColumn(p0);
+        if (wasNull)
+        {
+            return 0;
+        }
+        return reader.getColumnInt(readerIndex);
     }
 
     /**
@@ -246,7 +355,12 @@ public class XlsResultSet implements ResultSet
     @Override
     public long getLong(int p0) throws SQLException
     {
-        return reader.getColumnLong(p0);
+        int readerIndex = readColumn(p0);
+        if (wasNull)
+        {
+            return 0;
+        }
+        return reader.getColumnLong(readerIndex);
     }
 
     /**
@@ -274,9 +388,14 @@ public class XlsResultSet implements ResultSet
     @Override
     public double getDouble(int columnIndex) throws SQLException
     {
+        int readerIndex = readColumn(columnIndex);
+        if (wasNull)
+        {
+            return 0;
+        }
         try
         {
-            return reader.getColumnDouble(columnIndex);
+            return reader.getColumnDouble(readerIndex);
         }
         catch (Exception e)
         {
@@ -325,22 +444,25 @@ public class XlsResultSet implements ResultSet
     @Override
     public Date getDate(int columnIndex) throws SQLException
     {
+        int readerIndex = readColumn(columnIndex);
+        if (wasNull)
+        {
+            return null;
+        }
         try
         {
-            java.util.Date retVal = reader.getColumnDate(columnIndex);
+            java.util.Date retVal = reader.getColumnDate(readerIndex);
             if (retVal != null)
             {
                 return new java.sql.Date(retVal.getTime());
             }
             else
             {
+                // A text cell with only blanks
+                wasNull = true;
                 return null;
             }
         }
-        catch (java.lang.NullPointerException ne)
-        {
-            return null;
-        }
         catch (Exception e)
         {
             throw new SQLException(e.getMessage());
@@ -725,38 +847,221 @@ public class XlsResultSet implements ResultSet
     {
         if (resultSetMetaData == null)
         {
-            resultSetMetaData = new XlsResultSetMetaData(tableName, columnNames);
+            resultSetMetaData = new XlsResultSetMetaData(tableName, columnNames, getColumnTypes());
         }
 
         return resultSetMetaData;
     }
 
     /**
-     *Gets the object attribute of the XlsResultSet object
+     * Set the SQL types of the columns, for results not read from a sheet
      *
-     * @param  p0                Description of Parameter
-     * @return                   The object value
-     * @exception  SQLException  Description of Exception
+     * @param columnTypes  java.sql.Types constant of each column, null to
+     *                     infer them from the sheet
+     */
+    void setColumnTypes(int[] columnTypes)
+    {
+        this.columnTypes = columnTypes;
+    }
+
+    /**
+     * Get the SQL types of the columns
+     *
+     * @return  java.sql.Types constant of each column, null when unknown
+     * @throws SQLException  When the sheet cannot be read
+     */
+    private int[] getColumnTypes() throws SQLException
+    {
+        if (columnTypes != null || reader.getFileName() == null)
+        {
+            return columnTypes;
+        }
+        XlsConnection connection = (XlsConnection) statement.getConnection();
+        XlsColumnTypes sheetTypes = connection.getColumnTypes(reader.getFileName(), reader.getSheetName());
+        if (sheetTypes == null)
+        {
+            return null;
+        }
+        int[] types = new int[columnNames.length];
+        for (int loop = 0; loop < types.length; loop++)
+        {
+            types[loop] = sheetTypes.getType(columnIndexes == null ? loop + 1 : columnIndexes[loop]);
+        }
+        return types;
+    }
+
+    /**
+     *Gets the value of the cell converted to the class reported by
+     * ResultSetMetaData.getColumnClassName(). When the column types are
+     * not known the Java type of the cell is used: String for text, Long
+     * for whole numbers, Double for other numbers, java.sql.Date for
+     * numbers formatted as date and Boolean for booleans
+     *
+     * @param  columnIndex       Column to read
+     * @return                   The object value, null for an empty cell
+     * @exception  SQLException  When the value cannot be converted
      * @since
      */
     @Override
-    public Object getObject(int p0) throws SQLException
+    public Object getObject(int columnIndex) throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        int[] types = ((XlsResultSetMetaData) getMetaData()).columnTypes;
+        if (types == null || columnIndex < 1 || columnIndex > types.length)
+        {
+            return getCellObject(columnIndex);
+        }
+        int type = types[columnIndex - 1];
+        Object value;
+        try
+        {
+            switch (type)
+            {
+                case Types.BIGINT:
+                    value = Long.valueOf(getLong(columnIndex));
+                    break;
+                case Types.DOUBLE:
+                    value = Double.valueOf(getDouble(columnIndex));
+                    break;
+                case Types.DATE:
+                    value = getDate(columnIndex);
+                    break;
+                case Types.BOOLEAN:
+                    value = Boolean.valueOf(getBoolean(columnIndex));
+                    break;
+                default:
+                    value = getString(columnIndex);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            throw new SQLException("Conversion to " + XlsColumnTypes.getClassName(type) + " not supported.");
+        }
+        return wasNull ? null : value;
+    }
+
+    /**
+     * Get the value of the cell with the Java type of the cell
+     */
+    private Object getCellObject(int columnIndex) throws SQLException
+    {
+        int readerIndex = readColumn(columnIndex);
+        if (wasNull)
+        {
+            return null;
+        }
+        try
+        {
+            switch (reader.getColumnType(readerIndex))
+            {
+                case IXlsReader.TYPE_STRING:
+                    return reader.getColumn(readerIndex);
+                case IXlsReader.TYPE_BOOLEAN:
+                    return Boolean.valueOf(reader.getColumnBoolean(readerIndex));
+                default:
+                    if (reader.isColumnDate(readerIndex))
+                    {
+                        return new java.sql.Date(reader.getColumnDate(readerIndex).getTime());
+                    }
+                    double value = reader.getColumnDouble(readerIndex);
+                    long longValue = (long) value;
+                    if (longValue == value)
+                    {
+                        return Long.valueOf(longValue);
+                    }
+                    return Double.valueOf(value);
+            }
+        }
+        catch (Exception e)
+        {
+            throw new SQLException(e.getMessage());
+        }
     }
 
     /**
      *Gets the object attribute of the XlsResultSet object
      *
-     * @param  p0                Description of Parameter
+     * @param  columnName        Description of Parameter
      * @return                   The object value
      * @exception  SQLException  Description of Exception
      * @since
      */
     @Override
-    public Object getObject(String p0) throws SQLException
+    public Object getObject(String columnName) throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return getObject(findColumn(columnName));
+    }
+
+    /**
+     *Gets the value of the cell converted to the given type. Supported are
+     * String, Long, Integer, Short, Double, Boolean, java.sql.Date,
+     * java.util.Date and Object
+     *
+     * @param  columnIndex       Column to read
+     * @param  type              Class of the returned value
+     * @return                   The object value, null for an empty cell
+     * @exception  SQLException  When the value cannot be converted
+     */
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException
+    {
+        Object value;
+        try
+        {
+            if (type == String.class)
+            {
+                value = getString(columnIndex);
+            }
+            else if (type == Long.class)
+            {
+                value = Long.valueOf(getLong(columnIndex));
+            }
+            else if (type == Integer.class)
+            {
+                value = Integer.valueOf(getInt(columnIndex));
+            }
+            else if (type == Short.class)
+            {
+                value = Short.valueOf(getShort(columnIndex));
+            }
+            else if (type == Double.class)
+            {
+                value = Double.valueOf(getDouble(columnIndex));
+            }
+            else if (type == Boolean.class)
+            {
+                value = Boolean.valueOf(getBoolean(columnIndex));
+            }
+            else if (type == java.sql.Date.class || type == java.util.Date.class)
+            {
+                value = getDate(columnIndex);
+            }
+            else
+            {
+                value = getObject(columnIndex);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // Text cells read as number
+            throw new SQLException("Conversion to " + type.getName() + " not supported.");
+        }
+        if (value != null && !type.isInstance(value))
+        {
+            throw new SQLException("Conversion to " + type.getName() + " not supported.");
+        }
+        return wasNull ? null : type.cast(value);
+    }
+
+    /**
+     *Gets the value of the cell converted to the given type
+     *
+     * @param  columnName        Description of Parameter
+     * @param  type              Class of the returned value
+     * @return                   The object value, null for an empty cell
+     * @exception  SQLException  When the value cannot be converted
+     */
+    public <T> T getObject(String columnName, Class<T> type) throws SQLException
+    {
+        return getObject(findColumn(columnName), type);
     }
 
     /**
@@ -825,7 +1130,8 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean isBeforeFirst() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        return currentRow == 0 && fetchRows(1);
     }
 
     /**
@@ -838,7 +1144,8 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean isAfterLast() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        return allRowsRead && rowCount > 0 && currentRow > rowCount;
     }
 
     /**
@@ -851,7 +1158,7 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean isFirst() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return currentRow == 1 && rowCount > 0;
     }
 
     /**
@@ -864,7 +1171,14 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean isLast() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        if (currentRow < 1 || currentRow > rowCount)
+        {
+            return false;
+        }
+        boolean more = fetchRows(currentRow + 1);
+        positionReader();
+        return !more;
     }
 
     /**
@@ -877,7 +1191,7 @@ public class XlsResultSet implements ResultSet
     @Override
     public int getRow() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return currentRow > rowCount ? 0 : currentRow;
     }
 
     /**
@@ -890,7 +1204,7 @@ public class XlsResultSet implements ResultSet
     @Override
     public int getFetchDirection() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return FETCH_FORWARD;
     }
 
     /**
@@ -903,7 +1217,7 @@ public class XlsResultSet implements ResultSet
     @Override
     public int getFetchSize() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return fetchSize;
     }
 
     /**
@@ -916,7 +1230,7 @@ public class XlsResultSet implements ResultSet
     @Override
     public int getType() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return scrollable ? TYPE_SCROLL_INSENSITIVE : TYPE_FORWARD_ONLY;
     }
 
     /**
@@ -929,7 +1243,7 @@ public class XlsResultSet implements ResultSet
     @Override
     public int getConcurrency() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return CONCUR_READ_ONLY;
     }
 
     /**
@@ -1173,10 +1487,155 @@ public class XlsResultSet implements ResultSet
      */
     @Override
     public boolean next() throws SQLException
+    {
+        if (scrollable)
+        {
+            return moveTo(currentRow > rowCount ? currentRow : currentRow + 1);
+        }
+        if (readNextRow())
+        {
+            currentRow++;
+            return true;
+        }
+        currentRow = rowCount + 1;
+        return false;
+    }
+
+    /**
+     * Read the next row from the reader, after the rows to skip and up
+     * to the limit
+     *
+     * @return                   false when there are no more rows
+     * @exception  SQLException  When the file cannot be read
+     */
+    private boolean readNextRow() throws SQLException
+    {
+        try
+        {
+            while (skipRows > 0)
+            {
+                skipRows--;
+                if (!reader.next())
+                {
+                    skipRows = 0;
+                    return false;
+                }
+            }
+            if (limit >= 0 && rowCount >= limit)
+            {
+                if (!scrollable)
+                {
+                    // No more rows wanted, release the file without reading the rest
+                    reader.close();
+                }
+                return false;
+            }
+            if (reader.next())
+            {
+                if (scrollable)
+                {
+                    if (rowCount == rowPositions.length)
+                    {
+                        rowPositions = Arrays.copyOf(rowPositions, rowCount * 2);
+                    }
+                    rowPositions[rowCount] = ((IXlsSeekableReader) reader).getRowPosition();
+                }
+                rowCount++;
+                if (limit >= 0 && rowCount >= limit && !scrollable)
+                {
+                    // Last row wanted, release the file right away, the
+                    // values of the current row stay readable
+                    reader.close();
+                }
+                return true;
+            }
+            return false;
+        }
+        catch (Exception e)
+        {
+            throw new SQLException("Error reading data. Message was: " + e);
+        }
+    }
+
+    private void checkScrollable() throws SQLException
+    {
+        if (!scrollable)
+        {
+            throw new SQLException("The result set is TYPE_FORWARD_ONLY");
+        }
+    }
+
+    /**
+     * Read rows from the reader until the given number of rows is known
+     *
+     * @param  rows              Number of rows needed
+     * @return                   false when the result has fewer rows
+     * @exception  SQLException  When the file cannot be read
+     */
+    private boolean fetchRows(int rows) throws SQLException
+    {
+        while (rowCount < rows && !allRowsRead)
+        {
+            if (readerRow != rowCount)
+            {
+                // Continue after the last row read
+                seekRow(rowCount);
+            }
+            if (readNextRow())
+            {
+                readerRow = rowCount;
+            }
+            else
+            {
+                readerRow = -1;
+                allRowsRead = true;
+            }
+        }
+        return rowCount >= rows;
+    }
+
+    /**
+     * Move the cursor of a scrollable result set
+     *
+     * @param  row               1-based row number, 0 for before the first row
+     * @return                   true when the cursor is on a row
+     * @exception  SQLException  When the file cannot be read
+     */
+    private boolean moveTo(int row) throws SQLException
+    {
+        if (row == 0)
+        {
+            currentRow = 0;
+            return false;
+        }
+        if (!fetchRows(row))
+        {
+            currentRow = rowCount + 1;
+            return false;
+        }
+        currentRow = row;
+        positionReader();
+        return true;
+    }
+
+    /**
+     * Position the reader on the current row, after rows have been read
+     * ahead of it
+     */
+    private void positionReader() throws SQLException
+    {
+        if (readerRow != currentRow)
+        {
+            seekRow(currentRow);
+        }
+    }
+
+    private void seekRow(int row) throws SQLException
     {
         try
         {
-            return reader.next();
+            ((IXlsSeekableReader) reader).seekRow(rowPositions[row - 1]);
+            readerRow = row;
         }
         catch (Exception e)
         {
@@ -1206,7 +1665,7 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean wasNull() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return wasNull;
     }
 
     /**
@@ -1232,7 +1691,12 @@ public class XlsResultSet implements ResultSet
     @Override
     public int findColumn(String p0) throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        int index= getColumnIndex(p0);
+        if (index == -1)
+        {
+            throw new SQLException("Column '" + p0 + "' not found.");
+        }
+        return index;
     }
 
     /**
@@ -1244,7 +1708,8 @@ public class XlsResultSet implements ResultSet
     @Override
     public void beforeFirst() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        currentRow = 0;
     }
 
     /**
@@ -1256,7 +1721,9 @@ public class XlsResultSet implements ResultSet
     @Override
     public void afterLast() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        fetchRows(Integer.MAX_VALUE);
+        currentRow = rowCount == 0 ? 0 : rowCount + 1;
     }
 
     /**
@@ -1269,7 +1736,8 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean first() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        return moveTo(1);
     }
 
     /**
@@ -1282,7 +1750,9 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean last() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        fetchRows(Integer.MAX_VALUE);
+        return moveTo(rowCount);
     }
 
     /**
@@ -1296,7 +1766,14 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean absolute(int p0) throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        if (p0 >= 0)
+        {
+            return moveTo(p0);
+        }
+        // Counted from the end
+        fetchRows(Integer.MAX_VALUE);
+        return moveTo(Math.max(0, rowCount + 1 + p0));
     }
 
     /**
@@ -1310,7 +1787,9 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean relative(int p0) throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        long target = (long) currentRow + p0;
+        return moveTo((int) Math.max(0, Math.min(Integer.MAX_VALUE, target)));
     }
 
     /**
@@ -1323,7 +1802,8 @@ public class XlsResultSet implements ResultSet
     @Override
     public boolean previous() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        checkScrollable();
+        return moveTo(Math.max(0, currentRow - 1));
     }
 
     /**
@@ -35,6 +35,8 @@ public class XlsResultSetMetaData implements ResultSetMetaData
     protected String[] columnNames;
     /** Name of table */
     protected String tableName;
+    /** java.sql.Types constant of each column, null when all are VARCHAR */
+    protected int[] columnTypes;
 
     /**Constructor for the XlsResultSetMetaData object
      *
@@ -42,13 +44,26 @@ public class XlsResultSetMetaData implements ResultSetMetaData
      * @param  columnNames  Names of columns in table
      */
     XlsResultSetMetaData(String tableName, String[] columnNames)
+    {
+        this(tableName, columnNames, null);
+    }
+
+    /**Constructor for the XlsResultSetMetaData object
+     *
+     * @param  tableName    Name of table
+     * @param  columnNames  Names of columns in table
+     * @param  columnTypes  java.sql.Types constant of each column, null when all are VARCHAR
+     */
+    XlsResultSetMetaData(String tableName, String[] columnNames, int[] columnTypes)
     {
         this.tableName = tableName;
         this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
     }
 
-    /**Returns the name of the class for the specified column. Always returns
-     * String.
+    /**Returns the name of the class for the specified column. String for
+     * VARCHAR columns, Long, Double, java.sql.Date or Boolean for the
+     * inferred types.
      *
      * @param  column            The column number
      * @return                   The name of the class for the requested column
@@ -57,7 +72,7 @@ public class XlsResultSetMetaData implements ResultSetMetaData
     @Override
     public String getColumnClassName(int column) throws SQLException
     {
-        return String.class.getName();
+        return XlsColumnTypes.getClassName(getColumnType(column));
     }
 
     /** Returns the number of columns in the table.
@@ -123,14 +138,13 @@ public class XlsResultSetMetaData implements ResultSetMetaData
     /** Returns the searchable flag for the specified column
      *
      * @param  column            the column to return the flag form
-     * @return                   The searchable flag (always false)
+     * @return                   The searchable flag (always true)
      * @exception  SQLException  Thrown if there is a problem
      */
     @Override
     public boolean isSearchable(int column) throws SQLException
     {
-        // the implementation doesn't support the where clause
-        return false;
+        return true;
     }
 
     /**Returns the currency flag for the specified column
@@ -160,13 +174,14 @@ public class XlsResultSetMetaData implements ResultSetMetaData
     /**Returns the signed flag for the specfied column
      *
      * @param  column            The column to return the flag for
-     * @return                   The signed flag (always false)
+     * @return                   The signed flag, true for numeric columns
      * @exception  SQLException  Thrown if there is a problem
      */
     @Override
     public boolean isSigned(int column) throws SQLException
     {
-        return false;
+        int type = getColumnType(column);
+        return type == Types.BIGINT || type == Types.DOUBLE;
     }
 
     /** Returns the label for the specified column
@@ -229,20 +244,34 @@ public class XlsResultSetMetaData implements ResultSetMetaData
         return tableName;
     }
 
-    /**Comments to be done
+    /**Returns the SQL type of the specified column, inferred from the
+     * first rows of the sheet
+     *
+     * @param  column            The column number
+     * @return                   One of the java.sql.Types constants
+     * @exception  SQLException  Thrown if there was a problem
      */
     @Override
     public int getColumnType(int column) throws SQLException
     {
-        return Types.VARCHAR;
+        if (columnTypes == null)
+        {
+            return Types.VARCHAR;
+        }
+        // SQL column numbers start at 1
+        return columnTypes[column - 1];
     }
 
-    /**Comments to be done
+    /**Returns the SQL name of the type of the specified column
+     *
+     * @param  column            The column number
+     * @return                   The type name, like VARCHAR or BIGINT
+     * @exception  SQLException  Thrown if there was a problem
      */
     @Override
     public String getColumnTypeName(int column) throws SQLException
     {
-        return String.class.getName();
+        return XlsColumnTypes.getTypeName(getColumnType(column));
     }
 
     /**Comments to be done
@@ -0,0 +1,160 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.util.Arrays;
+
+/**
+ * Reusable holder for the cell values of one sheet row.
+ *
+ * The streaming readers decode a row straight into an instance of this
+ * class and then reuse it for the next row, so the number of objects
+ * kept alive does not depend on the size of the sheet.
+ * Column indexes are 0-based.
+ *
+ * @author Andre Schild
+ */
+final class XlsRowBuffer
+{
+    static final byte BLANK = IXlsReader.TYPE_BLANK;
+    static final byte STRING = IXlsReader.TYPE_STRING;
+    static final byte NUMERIC = IXlsReader.TYPE_NUMERIC;
+    static final byte BOOLEAN = IXlsReader.TYPE_BOOLEAN;
+
+    /** 0-based row number within the sheet */
+    int rowNum;
+    /** Number of cell slots in use (last column index + 1) */
+    int width;
+    byte[] types;
+    double[] numbers;
+    String[] strings;
+    /** Numeric cells formatted as date or time */
+    boolean[] dates;
+
+    XlsRowBuffer()
+    {
+        this(16);
+    }
+
+    XlsRowBuffer(int capacity)
+    {
+        types = new byte[capacity];
+        numbers = new double[capacity];
+        strings = new String[capacity];
+        dates = new boolean[capacity];
+    }
+
+    /**
+     * Reset the buffer before the next row is decoded into it.
+     */
+    void clear()
+    {
+        Arrays.fill(types, 0, width, BLANK);
+        Arrays.fill(strings, 0, width, null);
+        Arrays.fill(dates, 0, width, false);
+        width = 0;
+        rowNum = -1;
+    }
+
+    void setBlank(int col)
+    {
+        ensureCapacity(col);
+        types[col] = BLANK;
+    }
+
+    void setString(int col, String value)
+    {
+        ensureCapacity(col);
+        types[col] = STRING;
+        strings[col] = value;
+    }
+
+    void setNumber(int col, double value)
+    {
+        ensureCapacity(col);
+        types[col] = NUMERIC;
+        numbers[col] = value;
+    }
+
+    void setDate(int col, double value)
+    {
+        setNumber(col, value);
+        dates[col] = true;
+    }
+
+    void setBoolean(int col, boolean value)
+    {
+        ensureCapacity(col);
+        types[col] = BOOLEAN;
+        numbers[col] = value ? 1 : 0;
+    }
+
+    /**
+     * Replace the content of this buffer with a copy of another row.
+     */
+    void copyFrom(XlsRowBuffer src)
+    {
+        clear();
+        if (src.width > 0)
+        {
+            ensureCapacity(src.width - 1);
+            System.arraycopy(src.types, 0, types, 0, src.width);
+            System.arraycopy(src.numbers, 0, numbers, 0, src.width);
+            System.arraycopy(src.strings, 0, strings, 0, src.width);
+            System.arraycopy(src.dates, 0, dates, 0, src.width);
+        }
+        rowNum = src.rowNum;
+    }
+
+    /**
+     * Get the type of the cell at the given 0-based column.
+     * Columns outside of the row are reported as blank.
+     */
+    byte getType(int col)
+    {
+        if (col < 0 || col >= width)
+        {
+            return BLANK;
+        }
+        return types[col];
+    }
+
+    /**
+     * Check if the cell at the given 0-based column is a numeric cell
+     * formatted as date or time.
+     */
+    boolean isDate(int col)
+    {
+        return col >= 0 && col < width && types[col] == NUMERIC && dates[col];
+    }
+
+    private void ensureCapacity(int col)
+    {
+        if (col >= types.length)
+        {
+            int newLength = Math.max(col + 1, types.length * 2);
+            types = Arrays.copyOf(types, newLength);
+            numbers = Arrays.copyOf(numbers, newLength);
+            strings = Arrays.copyOf(strings, newLength);
+            dates = Arrays.copyOf(dates, newLength);
+        }
+        if (col >= width)
+        {
+            width = col + 1;
+        }
+    }
+}
@@ -0,0 +1,678 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Sorts the rows of a reader for ORDER BY.
+ *
+ * Up to memoryRows rows are sorted in memory. Larger results are sorted in
+ * chunks of memoryRows rows, each chunk is written to a temporary file and
+ * the files are merged while the sorted rows are read. With a row limit
+ * of at most memoryRows only the best rows seen so far are kept in a heap,
+ * so the number of rows held does not depend on the size of the sheet.
+ *
+ * Empty cells come first, then numbers, dates and booleans by their value,
+ * then texts. Rows with the same keys keep the order of the sheet.
+ *
+ * @author Andre Schild
+ */
+final class XlsRowSorter implements Comparator<XlsRowBuffer>
+{
+    /** Most files merged at once, more are merged in several passes */
+    private static final int MAX_MERGE_RUNS = 64;
+    /** Flag of date cells in the type byte of the temporary files */
+    private static final int DATE = 0x10;
+    private static final int BUFFER_SIZE = 65536;
+
+    /** 0-based reader column of each sort key */
+    private final int[] keyColumns;
+    private final boolean[] descending;
+    private final int memoryRows;
+
+    /**
+     * @param orderIndexes  1-based reader column of each sort key
+     * @param descending    Sort direction of each sort key
+     * @param memoryRows    Most rows sorted in memory
+     */
+    XlsRowSorter(int[] orderIndexes, boolean[] descending, int memoryRows)
+    {
+        keyColumns = new int[orderIndexes.length];
+        for (int loop = 0; loop < orderIndexes.length; loop++)
+        {
+            keyColumns[loop] = orderIndexes[loop] - 1;
+        }
+        this.descending = descending;
+        this.memoryRows = Math.max(1, memoryRows);
+    }
+
+    @Override
+    public int compare(XlsRowBuffer a, XlsRowBuffer b)
+    {
+        for (int loop = 0; loop < keyColumns.length; loop++)
+        {
+            int result = compareCells(a, b, keyColumns[loop]);
+            if (result != 0)
+            {
+                return descending[loop] ? -result : result;
+            }
+        }
+        // The row number is the position in the reader, keeps the sort stable
+        return a.rowNum < b.rowNum ? -1 : (a.rowNum == b.rowNum ? 0 : 1);
+    }
+
+    private static int compareCells(XlsRowBuffer a, XlsRowBuffer b, int col)
+    {
+        int rank = getRank(a.getType(col));
+        int result = rank - getRank(b.getType(col));
+        if (result != 0)
+        {
+            return result;
+        }
+        switch (rank)
+        {
+            case 1:
+                return Double.compare(a.numbers[col], b.numbers[col]);
+            case 2:
+                return a.strings[col].compareTo(b.strings[col]);
+            default:
+                return 0;
+        }
+    }
+
+    private static int getRank(int type)
+    {
+        switch (type)
+        {
+            case IXlsReader.TYPE_NUMERIC:
+            case IXlsReader.TYPE_BOOLEAN:
+                return 1;
+            case IXlsReader.TYPE_STRING:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Read all rows of the source and return them sorted
+     *
+     * @param source       Opened reader, closed when done
+     * @param columnsUsed  Columns to keep, null for all columns
+     * @param maxRows      Number of rows needed, -1 for all rows
+     * @return             Opened reader returning the sorted rows
+     * @throws Exception   When the source or a temporary file cannot be read
+     */
+    IXlsReader sort(IXlsReader source, boolean[] columnsUsed, int maxRows) throws Exception
+    {
+        SortedReader sorted = new SortedReader(source, columnsUsed);
+        try
+        {
+            if (maxRows >= 0 && maxRows <= memoryRows)
+            {
+                sorted.readTopRows(source, maxRows);
+            }
+            else
+            {
+                sorted.readAllRows(source);
+            }
+        }
+        catch (Exception e)
+        {
+            sorted.close();
+            throw e;
+        }
+        finally
+        {
+            source.close();
+        }
+        sorted.openFile();
+        return sorted;
+    }
+
+    /**
+     * A sorted chunk of rows, written to a temporary file
+     */
+    private static final class Run
+    {
+        final File file;
+        final int rowCount;
+
+        Run(File file, int rowCount)
+        {
+            this.file = file;
+            this.rowCount = rowCount;
+        }
+    }
+
+    /**
+     * Rows of a run or of the memory, read one after the other while merging
+     */
+    private abstract static class RunCursor
+    {
+        XlsRowBuffer current;
+
+        /**
+         * Move to the next row
+         *
+         * @return  false after the last row
+         */
+        abstract boolean advance() throws IOException;
+
+        void close()
+        {
+        }
+    }
+
+    private static final class MemoryCursor extends RunCursor
+    {
+        private final List<XlsRowBuffer> rows;
+        private int index = 0;
+
+        MemoryCursor(List<XlsRowBuffer> rows)
+        {
+            this.rows = rows;
+        }
+
+        @Override
+        boolean advance()
+        {
+            if (index >= rows.size())
+            {
+                current = null;
+                return false;
+            }
+            current = rows.get(index++);
+            return true;
+        }
+    }
+
+    private static final class FileCursor extends RunCursor
+    {
+        private final DataInputStream in;
+        private int rowsLeft;
+        private byte[] text = new byte[256];
+
+        FileCursor(Run run, int columnCount) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file), BUFFER_SIZE));
+            rowsLeft = run.rowCount;
+            current = new XlsRowBuffer(columnCount);
+        }
+
+        @Override
+        boolean advance() throws IOException
+        {
+            if (rowsLeft == 0)
+            {
+                current = null;
+                return false;
+            }
+            rowsLeft--;
+            XlsRowBuffer row = current;
+            row.clear();
+            row.rowNum = in.readInt();
+            int width = readCount(in);
+            for (int col = 0; col < width; col++)
+            {
+                int type = in.readByte();
+                switch (type & ~DATE)
+                {
+                    case XlsRowBuffer.NUMERIC:
+                        if ((type & DATE) != 0)
+                        {
+                            row.setDate(col, in.readDouble());
+                        }
+                        else
+                        {
+                            row.setNumber(col, in.readDouble());
+                        }
+                        break;
+                    case XlsRowBuffer.BOOLEAN:
+                        row.setBoolean(col, in.readBoolean());
+                        break;
+                    case XlsRowBuffer.STRING:
+                        int length = readCount(in);
+                        if (length > text.length)
+                        {
+                            text = new byte[Math.max(length, text.length * 2)];
+                        }
+                        in.readFully(text, 0, length);
+                        row.setString(col, new String(text, 0, length, XlsColumnarFile.UTF8));
+                        break;
+                    default:
+                        row.setBlank(col);
+                        break;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void close()
+        {
+            try
+            {
+                in.close();
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
+    private static void writeCount(DataOutputStream out, int count) throws IOException
+    {
+        while ((count & ~0x7f) != 0)
+        {
+            out.writeByte((count & 0x7f) | 0x80);
+            count >>>= 7;
+        }
+        out.writeByte(count);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException
+    {
+        int count = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = in.readUnsignedByte();
+            count |= (b & 0x7f) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return count;
+    }
+
+    /**
+     * Reader returning the sorted rows. The rows of the source are kept with
+     * the columns of the source, so the column indexes of the query stay
+     * valid.
+     */
+    private final class SortedReader extends AbstractRowReader
+    {
+        private final String[] names;
+        private final int columnCount;
+        private final boolean[] columnsUsed;
+        /** Sorted rows held in memory */
+        private List<XlsRowBuffer> rows = new ArrayList<XlsRowBuffer>();
+        /** Sorted chunks written to temporary files */
+        private final List<Run> runs = new ArrayList<Run>();
+        /** Cursors ordered by their current row, while reading */
+        private PriorityQueue<RunCursor> cursors = null;
+        private final List<RunCursor> openCursors = new ArrayList<RunCursor>();
+        /** Date system of the source, detected from the first date cell */
+        private boolean date1904Detected = false;
+
+        SortedReader(IXlsReader source, boolean[] columnsUsed)
+        {
+            names = source.getColumnNames();
+            columnCount = names.length;
+            this.columnsUsed = columnsUsed;
+            setFileName(source.getFileName());
+            setSheetName(source.getSheetName());
+            setStringDateFormat(source.getStringDateFormat());
+            setSuppressHeaders(source.isSuppressHeaders());
+            setSeparator(source.getSeparator());
+        }
+
+        /**
+         * Copy the cells of the current row of the source
+         *
+         * @param source    Reader positioned on a row
+         * @param row       Cleared buffer receiving the cells
+         * @param keysOnly  Only copy the sort keys
+         */
+        private void copyRow(IXlsReader source, XlsRowBuffer row, boolean keysOnly) throws Exception
+        {
+            if (keysOnly)
+            {
+                for (int loop = 0; loop < keyColumns.length; loop++)
+                {
+                    copyCell(source, row, keyColumns[loop]);
+                }
+                return;
+            }
+            for (int col = 0; col < columnCount; col++)
+            {
+                if (columnsUsed == null || columnsUsed[col])
+                {
+                    copyCell(source, row, col);
+                }
+            }
+        }
+
+        private void copyCell(IXlsReader source, XlsRowBuffer row, int col) throws Exception
+        {
+            switch (source.getColumnType(col + 1))
+            {
+                case IXlsReader.TYPE_STRING:
+                    row.setString(col, source.getColumn(col + 1));
+                    break;
+                case IXlsReader.TYPE_NUMERIC:
+                    double value = source.getColumnDouble(col + 1);
+                    if (source.isColumnDate(col + 1))
+                    {
+                        if (!date1904Detected)
+                        {
+                            // The source converts with the date system of the workbook
+                            Date date = source.getColumnDate(col + 1);
+                            date1904 = date != null && !date.equals(DateUtil.getJavaDate(value, false));
+                            date1904Detected = true;
+                        }
+                        row.setDate(col, value);
+                    }
+                    else
+                    {
+                        row.setNumber(col, value);
+                    }
+                    break;
+                case IXlsReader.TYPE_BOOLEAN:
+                    row.setBoolean(col, source.getColumnBoolean(col + 1));
+                    break;
+                default:
+                    row.setBlank(col);
+                    break;
+            }
+        }
+
+        /**
+         * Keep the first maxRows rows of the sort order in a heap, the
+         * worst of them on top
+         */
+        void readTopRows(IXlsReader source, int maxRows) throws Exception
+        {
+            if (maxRows == 0)
+            {
+                return;
+            }
+            PriorityQueue<XlsRowBuffer> heap = new PriorityQueue<XlsRowBuffer>(maxRows, Collections.reverseOrder(XlsRowSorter.this));
+            XlsRowBuffer row = null;
+            int sequence = 0;
+            while (source.next())
+            {
+                if (row == null)
+                {
+                    row = new XlsRowBuffer(columnCount);
+                }
+                row.clear();
+                row.rowNum = sequence++;
+                if (heap.size() < maxRows)
+                {
+                    copyRow(source, row, false);
+                    heap.add(row);
+                    row = null;
+                    continue;
+                }
+                // Compare the keys first, most rows are not copied at all
+                copyRow(source, row, true);
+                if (compare(row, heap.peek()) < 0)
+                {
+                    copyRow(source, row, false);
+                    XlsRowBuffer worst = heap.poll();
+                    heap.add(row);
+                    row = worst;
+                }
+            }
+            rows = new ArrayList<XlsRowBuffer>(heap);
+            Collections.sort(rows, XlsRowSorter.this);
+        }
+
+        /**
+         * Sort all rows, writing sorted chunks to temporary files when
+         * there are more than memoryRows rows
+         */
+        void readAllRows(IXlsReader source) throws Exception
+        {
+            List<XlsRowBuffer> spare = new ArrayList<XlsRowBuffer>();
+            int sequence = 0;
+            while (source.next())
+            {
+                XlsRowBuffer row = spare.isEmpty() ? new XlsRowBuffer(columnCount) : spare.remove(spare.size() - 1);
+                row.clear();
+                row.rowNum = sequence++;
+                copyRow(source, row, false);
+                rows.add(row);
+                if (rows.size() >= memoryRows)
+                {
+                    Collections.sort(rows, XlsRowSorter.this);
+                    MemoryCursor cursor = new MemoryCursor(rows);
+                    cursor.advance();
+                    runs.add(writeRun(Collections.<RunCursor>singletonList(cursor), rows.size()));
+                    // The buffers are reused for the next chunk
+                    spare.addAll(rows);
+                    rows.clear();
+                }
+            }
+            Collections.sort(rows, XlsRowSorter.this);
+            // Keep one file handle free for the rows in memory
+            while (runs.size() >= MAX_MERGE_RUNS)
+            {
+                List<Run> batch = new ArrayList<Run>(runs.subList(0, MAX_MERGE_RUNS));
+                runs.subList(0, MAX_MERGE_RUNS).clear();
+                runs.add(mergeRuns(batch));
+            }
+        }
+
+        /**
+         * Merge several runs into one new run, the merged files are deleted
+         */
+        private Run mergeRuns(List<Run> batch) throws Exception
+        {
+            List<RunCursor> batchCursors = new ArrayList<RunCursor>();
+            int rowCount = 0;
+            try
+            {
+                for (Run run : batch)
+                {
+                    FileCursor cursor = new FileCursor(run, columnCount);
+                    batchCursors.add(cursor);
+                    cursor.advance();
+                    rowCount += run.rowCount;
+                }
+                return writeRun(batchCursors, rowCount);
+            }
+            finally
+            {
+                for (RunCursor cursor : batchCursors)
+                {
+                    cursor.close();
+                }
+                for (Run run : batch)
+                {
+                    run.file.delete();
+                }
+            }
+        }
+
+        /**
+         * Write the merged rows of positioned cursors to a temporary file
+         */
+        private Run writeRun(List<RunCursor> sources, int rowCount) throws Exception
+        {
+            PriorityQueue<RunCursor> queue = createQueue(sources.size());
+            for (RunCursor cursor : sources)
+            {
+                if (cursor.current != null)
+                {
+                    queue.add(cursor);
+                }
+            }
+            File file = File.createTempFile("xlsjdbc", ".sort");
+            boolean written = false;
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            try
+            {
+                while (!queue.isEmpty())
+                {
+                    RunCursor cursor = queue.poll();
+                    writeRow(out, cursor.current);
+                    if (cursor.advance())
+                    {
+                        queue.add(cursor);
+                    }
+                }
+                out.close();
+                written = true;
+            }
+            finally
+            {
+                if (!written)
+                {
+                    try
+                    {
+                        out.close();
+                    }
+                    catch (IOException e)
+                    {
+                    }
+                    file.delete();
+                }
+            }
+            return new Run(file, rowCount);
+        }
+
+        private void writeRow(DataOutputStream out, XlsRowBuffer row) throws IOException
+        {
+            out.writeInt(row.rowNum);
+            writeCount(out, row.width);
+            for (int col = 0; col < row.width; col++)
+            {
+                byte type = row.getType(col);
+                switch (type)
+                {
+                    case XlsRowBuffer.NUMERIC:
+                        out.writeByte(row.isDate(col) ? type | DATE : type);
+                        out.writeDouble(row.numbers[col]);
+                        break;
+                    case XlsRowBuffer.BOOLEAN:
+                        out.writeByte(type);
+                        out.writeBoolean(row.numbers[col] != 0);
+                        break;
+                    case XlsRowBuffer.STRING:
+                        out.writeByte(type);
+                        byte[] bytes = row.strings[col].getBytes(XlsColumnarFile.UTF8);
+                        writeCount(out, bytes.length);
+                        out.write(bytes);
+                        break;
+                    default:
+                        out.writeByte(XlsRowBuffer.BLANK);
+                        break;
+                }
+            }
+        }
+
+        private PriorityQueue<RunCursor> createQueue(int size)
+        {
+            return new PriorityQueue<RunCursor>(Math.max(1, size), new Comparator<RunCursor>()
+            {
+                @Override
+                public int compare(RunCursor a, RunCursor b)
+                {
+                    return XlsRowSorter.this.compare(a.current, b.current);
+                }
+            });
+        }
+
+        @Override
+        public void openFile() throws Exception
+        {
+            openSource();
+            setColumnNames(names);
+        }
+
+        @Override
+        protected void openSource() throws Exception
+        {
+            closeCursors();
+            openCursors.add(new MemoryCursor(rows));
+            for (Run run : runs)
+            {
+                openCursors.add(new FileCursor(run, columnCount));
+            }
+            cursors = createQueue(openCursors.size());
+            for (RunCursor cursor : openCursors)
+            {
+                if (cursor.advance())
+                {
+                    cursors.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        protected boolean readRow(XlsRowBuffer row) throws Exception
+        {
+            if (cursors == null || cursors.isEmpty())
+            {
+                return false;
+            }
+            RunCursor cursor = cursors.poll();
+            row.copyFrom(cursor.current);
+            if (cursor.advance())
+            {
+                cursors.add(cursor);
+            }
+            return true;
+        }
+
+        @Override
+        void setPrefetchRows(int prefetchRows)
+        {
+            // The rows are already decoded
+        }
+
+        private void closeCursors()
+        {
+            for (RunCursor cursor : openCursors)
+            {
+                cursor.close();
+            }
+            openCursors.clear();
+            cursors = null;
+        }
+
+        @Override
+        protected void closeSource()
+        {
+            closeCursors();
+            for (Run run : runs)
+            {
+                run.file.delete();
+            }
+            runs.clear();
+            rows = Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the rows of a streaming reader for the scrollable result sets.
+ *
+ * The rows are read from the source when the result set first moves to
+ * them and are appended to one byte array, with the start of each row in
+ * an int array. Jumping to a row read before only decodes that row, no
+ * other row is read again and only the rows reached so far are held.
+ *
+ * @author Andre Schild
+ */
+final class XlsRowStore extends AbstractRowReader implements IXlsSeekableReader
+{
+    /** Flag added to the type of numeric cells formatted as date */
+    private static final int DATE = 0x10;
+
+    private final AbstractRowReader source;
+    private final String[] names;
+    /** Encoded cells of all rows read */
+    private byte[] data = new byte[8192];
+    private int size = 0;
+    /** Start of each row in data, the row count + 1 is the end */
+    private int[] offsets = new int[257];
+    private int count = 0;
+    /** Index of the current row, -1 before the first row */
+    private int position = -1;
+    /** All rows of the source have been read */
+    private boolean sourceDone = false;
+
+    /**
+     * @param source  Opened reader, closed with this reader
+     */
+    XlsRowStore(AbstractRowReader source)
+    {
+        this.source = source;
+        this.names = source.getColumnNames();
+        setFileName(source.getFileName());
+        setSheetName(source.getSheetName());
+        setStringDateFormat(source.getStringDateFormat());
+        setSuppressHeaders(source.isSuppressHeaders());
+        setSeparator(source.getSeparator());
+        setColumnNames(names);
+    }
+
+    @Override
+    public void openFile() throws Exception
+    {
+        openSource();
+        setColumnNames(names);
+    }
+
+    @Override
+    protected void openSource()
+    {
+        position = -1;
+    }
+
+    @Override
+    protected boolean readRow(XlsRowBuffer row) throws Exception
+    {
+        if (position + 1 < count)
+        {
+            position++;
+            decodeRow(position, row);
+            return true;
+        }
+        if (sourceDone || !source.next())
+        {
+            sourceDone = true;
+            return false;
+        }
+        // The source converts its dates with the date system of the workbook
+        date1904 = source.date1904;
+        appendRow(source.row);
+        position = count - 1;
+        row.copyFrom(source.row);
+        row.rowNum = position;
+        return true;
+    }
+
+    @Override
+    public int getRowPosition()
+    {
+        return position;
+    }
+
+    @Override
+    public void seekRow(int position) throws Exception
+    {
+        if (position < 0 || position >= count)
+        {
+            throw new Exception("Row " + position + " has not been read");
+        }
+        row.clear();
+        decodeRow(position, row);
+        this.position = position;
+    }
+
+    private void appendRow(XlsRowBuffer row) throws Exception
+    {
+        if (count + 1 >= offsets.length)
+        {
+            offsets = Arrays.copyOf(offsets, grow(offsets.length, count + 2L));
+        }
+        // Type byte and value of each cell, strings are added below
+        ensureSpace(5 + 9L * row.width);
+        putCount(row.width);
+        for (int col = 0; col < row.width; col++)
+        {
+            byte type = row.getType(col);
+            switch (type)
+            {
+                case XlsRowBuffer.NUMERIC:
+                    data[size++] = (byte) (row.isDate(col) ? type | DATE : type);
+                    long bits = Double.doubleToRawLongBits(row.numbers[col]);
+                    for (int shift = 56; shift >= 0; shift -= 8)
+                    {
+                        data[size++] = (byte) (bits >>> shift);
+                    }
+                    break;
+                case XlsRowBuffer.BOOLEAN:
+                    data[size++] = type;
+                    data[size++] = (byte) (row.numbers[col] != 0 ? 1 : 0);
+                    break;
+                case XlsRowBuffer.STRING:
+                    data[size++] = type;
+                    byte[] bytes = row.strings[col].getBytes(XlsColumnarFile.UTF8);
+                    ensureSpace(5L + bytes.length);
+                    putCount(bytes.length);
+                    System.arraycopy(bytes, 0, data, size, bytes.length);
+                    size += bytes.length;
+                    break;
+                default:
+                    data[size++] = XlsRowBuffer.BLANK;
+                    break;
+            }
+        }
+        count++;
+        offsets[count] = size;
+    }
+
+    private void decodeRow(int index, XlsRowBuffer row)
+    {
+        int pos = offsets[index];
+        // Variable length width, as written by putCount()
+        int width = 0;
+        int shift = 0;
+        int b;
+        do
+        {
+            b = data[pos++] & 0xff;
+            width |= (b & 0x7f) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        for (int col = 0; col < width; col++)
+        {
+            int type = data[pos++];
+            switch (type & ~DATE)
+            {
+                case XlsRowBuffer.NUMERIC:
+                    long bits = 0;
+                    for (int loop = 0; loop < 8; loop++)
+                    {
+                        bits = (bits << 8) | (data[pos++] & 0xff);
+                    }
+                    if ((type & DATE) != 0)
+                    {
+                        row.setDate(col, Double.longBitsToDouble(bits));
+                    }
+                    else
+                    {
+                        row.setNumber(col, Double.longBitsToDouble(bits));
+                    }
+                    break;
+                case XlsRowBuffer.BOOLEAN:
+                    row.setBoolean(col, data[pos++] != 0);
+                    break;
+                case XlsRowBuffer.STRING:
+                    int length = 0;
+                    shift = 0;
+                    do
+                    {
+                        b = data[pos++] & 0xff;
+                        length |= (b & 0x7f) << shift;
+                        shift += 7;
+                    }
+                    while ((b & 0x80) != 0);
+                    row.setString(col, new String(data, pos, length, XlsColumnarFile.UTF8));
+                    pos += length;
+                    break;
+                default:
+                    row.setBlank(col);
+                    break;
+            }
+        }
+        row.rowNum = index;
+    }
+
+    private void putCount(int value)
+    {
+        while ((value & ~0x7f) != 0)
+        {
+            data[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    private void ensureSpace(long bytes) throws Exception
+    {
+        if (size + bytes > data.length)
+        {
+            data = Arrays.copyOf(data, grow(data.length, size + bytes));
+        }
+    }
+
+    private static int grow(int length, long needed) throws Exception
+    {
+        long newLength = Math.max(needed, length + (length >> 1));
+        if (newLength > Integer.MAX_VALUE - 8)
+        {
+            if (needed > Integer.MAX_VALUE - 8)
+            {
+                throw new Exception("Result too large for a scrollable result set, use TYPE_FORWARD_ONLY");
+            }
+            newLength = Integer.MAX_VALUE - 8;
+        }
+        return (int) newLength;
+    }
+
+    @Override
+    void setPrefetchRows(int prefetchRows)
+    {
+        // The rows not read yet come from the source
+        source.setPrefetchRows(prefetchRows);
+    }
+
+    @Override
+    protected void closeSource()
+    {
+        // The rows are kept for seekRow() until the reader is closed
+        position = count;
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        source.close();
+        sourceDone = true;
+        data = new byte[0];
+        size = 0;
+        offsets = new int[1];
+        count = 0;
+    }
+}
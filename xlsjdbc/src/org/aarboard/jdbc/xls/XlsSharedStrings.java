@@ -0,0 +1,241 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Compact copy of the shared strings table of an .xlsx file.
+ *
+ * All texts are kept UTF-8 encoded in one byte array, with the start of
+ * each entry in an int array, so the table needs little more memory than
+ * the text itself. An entry is only turned into a String when a cell
+ * refers to it; the last decoded entries are kept, as the same texts are
+ * often repeated in neighbouring rows.
+ *
+ * @author Andre Schild
+ */
+final class XlsSharedStrings
+{
+    /** Number of decoded entries kept, must be a power of 2 */
+    private static final int RECENT_SIZE = 1024;
+
+    /** UTF-8 bytes of all entries */
+    private byte[] bytes = new byte[4096];
+    private int byteCount = 0;
+    /** Start of each entry in bytes, the entry count + 1 is the end */
+    private int[] offsets = new int[257];
+    private int count = 0;
+    private final String[] recent = new String[RECENT_SIZE];
+    private final int[] recentIds = new int[RECENT_SIZE];
+
+    private XlsSharedStrings()
+    {
+        Arrays.fill(recentIds, -1);
+    }
+
+    /**
+     * Read the &lt;si&gt; entries of sharedStrings.xml. Rich text runs are
+     * joined, phonetic runs are skipped.
+     *
+     * @param data  Content of sharedStrings.xml, null when the file has no table
+     * @return      The table
+     * @throws XMLStreamException  When the XML cannot be parsed
+     */
+    static XlsSharedStrings read(InputStream data) throws XMLStreamException
+    {
+        XlsSharedStrings table = new XlsSharedStrings();
+        if (data == null)
+        {
+            return table;
+        }
+        XMLStreamReader parser = XSSFEventReader.createInputFactory().createXMLStreamReader(data);
+        try
+        {
+            StringBuilder text = new StringBuilder();
+            boolean phonetic = false;
+            while (parser.hasNext())
+            {
+                int event = parser.next();
+                if (event == XMLStreamConstants.START_ELEMENT)
+                {
+                    String name = parser.getLocalName();
+                    if ("si".equals(name))
+                    {
+                        text.setLength(0);
+                    }
+                    else if ("rPh".equals(name))
+                    {
+                        phonetic = true;
+                    }
+                    else if ("t".equals(name))
+                    {
+                        String t = parser.getElementText();
+                        if (!phonetic)
+                        {
+                            text.append(t);
+                        }
+                    }
+                    else if ("sst".equals(name))
+                    {
+                        table.presize(parser.getAttributeValue(null, "uniqueCount"));
+                    }
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT)
+                {
+                    String name = parser.getLocalName();
+                    if ("rPh".equals(name))
+                    {
+                        phonetic = false;
+                    }
+                    else if ("si".equals(name))
+                    {
+                        table.add(text);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            parser.close();
+        }
+        table.trim();
+        return table;
+    }
+
+    private void presize(String uniqueCount)
+    {
+        try
+        {
+            int size = Integer.parseInt(uniqueCount);
+            if (size >= offsets.length)
+            {
+                offsets = new int[size + 1];
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            // Grown while reading
+        }
+    }
+
+    private void add(CharSequence text)
+    {
+        if (count + 1 >= offsets.length)
+        {
+            offsets = Arrays.copyOf(offsets, grow(offsets.length, count + 2));
+        }
+        // At most 3 bytes per char, a surrogate pair takes 4 bytes for 2 chars
+        int length = text.length();
+        if (byteCount + 3L * length > bytes.length)
+        {
+            bytes = Arrays.copyOf(bytes, grow(bytes.length, byteCount + 3L * length));
+        }
+        int pos = byteCount;
+        for (int loop = 0; loop < length; loop++)
+        {
+            char c = text.charAt(loop);
+            if (c < 0x80)
+            {
+                bytes[pos++] = (byte) c;
+            }
+            else if (c < 0x800)
+            {
+                bytes[pos++] = (byte) (0xc0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+            else if (Character.isHighSurrogate(c) && loop + 1 < length && Character.isLowSurrogate(text.charAt(loop + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, text.charAt(++loop));
+                bytes[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+            }
+            else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+            {
+                // Unpaired surrogate, replaced like the JDK encoder does
+                bytes[pos++] = '?';
+            }
+            else
+            {
+                bytes[pos++] = (byte) (0xe0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        byteCount = pos;
+        count++;
+        offsets[count] = byteCount;
+    }
+
+    private static int grow(int length, long needed)
+    {
+        long newLength = Math.max(needed, length + (length >> 1));
+        if (newLength > Integer.MAX_VALUE - 8)
+        {
+            if (needed > Integer.MAX_VALUE - 8)
+            {
+                throw new OutOfMemoryError("Shared strings table too large");
+            }
+            newLength = Integer.MAX_VALUE - 8;
+        }
+        return (int) newLength;
+    }
+
+    /**
+     * Release the unused space at the end of the arrays
+     */
+    private void trim()
+    {
+        if (bytes.length - byteCount > (bytes.length >> 4))
+        {
+            bytes = Arrays.copyOf(bytes, byteCount);
+        }
+        if (offsets.length > count + 1)
+        {
+            offsets = Arrays.copyOf(offsets, count + 1);
+        }
+    }
+
+    /**
+     * Get an entry of the table
+     *
+     * @param index  0-based index of the entry, the value of an "s" cell
+     * @return       The text
+     */
+    String getEntryAt(int index)
+    {
+        if (index < 0 || index >= count)
+        {
+            throw new IndexOutOfBoundsException("Shared string " + index + " not found, the table has " + count + " entries");
+        }
+        int slot = index & (RECENT_SIZE - 1);
+        if (recentIds[slot] == index)
+        {
+            return recent[slot];
+        }
+        String text = new String(bytes, offsets[index], offsets[index + 1] - offsets[index], XlsColumnarFile.UTF8);
+        recent[slot] = text;
+        recentIds[slot] = index;
+        return text;
+    }
+}
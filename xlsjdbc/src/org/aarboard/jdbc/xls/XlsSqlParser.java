@@ -0,0 +1,905 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for the SELECT statements understood by the driver.
+ *
+ * <pre>
+ * SELECT * | item [, item ...] FROM table[.sheet] [[AS] alias]
+ *     [[INNER | LEFT [OUTER]] JOIN table[.sheet] [[AS] alias]
+ *         ON column = column [AND column = column ...] ...]
+ *     [WHERE condition]
+ *     [GROUP BY column [, column ...]]
+ *     [ORDER BY column [ASC | DESC] [, column [ASC | DESC] ...]]
+ *     [LIMIT count] [OFFSET skip]
+ * </pre>
+ *
+ * An item of the select list is a column or one of the aggregate functions
+ * COUNT(*), COUNT(column), SUM(column), AVG(column), MIN(column) and
+ * MAX(column), optionally followed by AS name. Columns selected together
+ * with aggregate functions must be listed in GROUP BY.
+ *
+ * The table is the name of the file without extension. A sheet other than
+ * the first one is selected with table.sheet, for example "file"."Sheet2".
+ *
+ * Tables are joined on equal columns. The columns of a join are named
+ * alias.column, where the alias defaults to the table name. A column may
+ * be given without alias when only one of the tables has it. The result
+ * columns are named after the column without alias.
+ *
+ * Conditions may use the comparison operators =, &lt;&gt;, !=, &lt;, &lt;=,
+ * &gt; and &gt;=, IN (...), LIKE with % and _ wildcards, IS [NOT] NULL,
+ * AND, OR, NOT and parentheses. Values may be given as ? parameters of a
+ * prepared statement. Names may be quoted with double quotes,
+ * string constants with single quotes. Column names are converted to upper
+ * case, as the readers do with the sheet headers.
+ *
+ * @author Andre Schild
+ */
+public class XlsSqlParser
+{
+    private static final int EOF = 0;
+    private static final int IDENT = 1;
+    private static final int QUOTED_IDENT = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+    private static final int SYMBOL = 5;
+
+    private String sql;
+    private int pos;
+    private int tokenType;
+    private String token;
+
+    private List<String> tableNames;
+    private List<String> sheetNames;
+    private List<String> tableAliases;
+    private List<String> joinTypes;
+    private List<String[]> joinColumns;
+    /** Column of the last name parsed, without the table alias */
+    private String nameColumn;
+    private String[] columnNames;
+    private String[] selectColumns;
+    private String[] functions;
+    private String[] groupColumns;
+    private XlsCondition whereClause;
+    private String[] orderColumns;
+    private boolean[] orderDescending;
+    private boolean countAll;
+    private boolean aggregate;
+    private int parameterCount;
+    private int limit;
+    private int offset;
+
+    /**
+     * Parse the given SQL statement
+     *
+     * @param sql         The SELECT statement
+     * @throws Exception  Describing the syntax error
+     */
+    public void parse(String sql) throws Exception
+    {
+        this.sql = sql;
+        this.pos = 0;
+        tableNames = new ArrayList<String>();
+        sheetNames = new ArrayList<String>();
+        tableAliases = new ArrayList<String>();
+        joinTypes = new ArrayList<String>();
+        joinColumns = new ArrayList<String[]>();
+        columnNames = null;
+        selectColumns = null;
+        functions = null;
+        groupColumns = new String[0];
+        whereClause = null;
+        orderColumns = new String[0];
+        orderDescending = new boolean[0];
+        countAll = false;
+        aggregate = false;
+        parameterCount = 0;
+        limit = -1;
+        offset = 0;
+        nextToken();
+
+        expectKeyword("SELECT");
+        List<String> names = new ArrayList<String>();
+        List<String> columns = new ArrayList<String>();
+        List<String> items = new ArrayList<String>();
+        if (isSymbol("*"))
+        {
+            names.add("*");
+            columns.add("*");
+            items.add(null);
+            nextToken();
+        }
+        else
+        {
+            parseSelectItem(names, columns, items);
+            while (isSymbol(","))
+            {
+                nextToken();
+                parseSelectItem(names, columns, items);
+            }
+        }
+        columnNames = names.toArray(new String[names.size()]);
+        selectColumns = columns.toArray(new String[columns.size()]);
+        functions = items.toArray(new String[items.size()]);
+
+        expectKeyword("FROM");
+        parseTable();
+        while (isKeyword("JOIN") || isKeyword("INNER") || isKeyword("LEFT"))
+        {
+            parseJoin();
+        }
+
+        if (isKeyword("WHERE"))
+        {
+            nextToken();
+            whereClause = parseOr();
+        }
+        if (isKeyword("GROUP"))
+        {
+            nextToken();
+            expectKeyword("BY");
+            List<String> groups = new ArrayList<String>();
+            groups.add(parseName());
+            while (isSymbol(","))
+            {
+                nextToken();
+                groups.add(parseName());
+            }
+            groupColumns = groups.toArray(new String[groups.size()]);
+        }
+        if (isKeyword("ORDER"))
+        {
+            nextToken();
+            expectKeyword("BY");
+            parseOrderBy();
+        }
+        if (isKeyword("LIMIT"))
+        {
+            nextToken();
+            limit = parseCount();
+        }
+        if (isKeyword("OFFSET"))
+        {
+            nextToken();
+            offset = parseCount();
+        }
+        if (isSymbol(";"))
+        {
+            nextToken();
+        }
+        if (tokenType != EOF)
+        {
+            throw new Exception("Unexpected '" + token + "' at position " + pos);
+        }
+        checkAggregates();
+    }
+
+    /**
+     * Check that the columns selected together with aggregate functions
+     * are grouped, and detect the SELECT COUNT(*) statement
+     */
+    private void checkAggregates() throws Exception
+    {
+        aggregate = groupColumns.length > 0;
+        for (int loop = 0; loop < functions.length; loop++)
+        {
+            aggregate |= functions[loop] != null;
+        }
+        countAll = groupColumns.length == 0 && functions.length == 1 && "COUNT".equals(functions[0])
+                && "*".equals(selectColumns[0]);
+        if (!aggregate)
+        {
+            return;
+        }
+        for (int loop = 0; loop < functions.length; loop++)
+        {
+            if (functions[loop] != null)
+            {
+                continue;
+            }
+            if ("*".equals(selectColumns[loop]))
+            {
+                throw new Exception("SELECT * cannot be used with GROUP BY");
+            }
+            boolean grouped = false;
+            for (int group = 0; group < groupColumns.length && !grouped; group++)
+            {
+                grouped = groupColumns[group].equals(selectColumns[loop]);
+            }
+            if (!grouped)
+            {
+                throw new Exception("Column '" + selectColumns[loop] + "' must be listed in GROUP BY");
+            }
+        }
+    }
+
+    public List<String> getTableNames()
+    {
+        return tableNames;
+    }
+
+    /**
+     * @return The sheet name given for each table, null when not given
+     */
+    public List<String> getSheetNames()
+    {
+        return sheetNames;
+    }
+
+    /**
+     * @return The upper case alias of each table, the table name when not given
+     */
+    public List<String> getTableAliases()
+    {
+        return tableAliases;
+    }
+
+    /**
+     * @return "INNER" or "LEFT" for each joined table, null for the first table
+     */
+    public List<String> getJoinTypes()
+    {
+        return joinTypes;
+    }
+
+    /**
+     * @return The upper case columns compared in the ON clause of each
+     *         joined table as pairs, null for the first table
+     */
+    public List<String[]> getJoinColumns()
+    {
+        return joinColumns;
+    }
+
+    /**
+     * @return The names of the result columns, the alias when given
+     */
+    public String[] getColumnNames()
+    {
+        return columnNames;
+    }
+
+    /**
+     * @return The upper case sheet column of each select item, "*" for
+     *         SELECT * and COUNT(*)
+     */
+    public String[] getSelectColumns()
+    {
+        return selectColumns;
+    }
+
+    /**
+     * @return The aggregate function of each select item, null for columns
+     */
+    public String[] getFunctions()
+    {
+        return functions;
+    }
+
+    /**
+     * @return The upper case names of the GROUP BY columns, empty when not grouped
+     */
+    public String[] getGroupColumns()
+    {
+        return groupColumns;
+    }
+
+    /**
+     * @return true when the rows are grouped or aggregated, except for a
+     *         plain SELECT COUNT(*)
+     */
+    public boolean isAggregate()
+    {
+        return aggregate && !countAll;
+    }
+
+    /**
+     * @return The parsed WHERE clause, not yet bound to a reader, or null
+     */
+    public XlsCondition getWhereClause()
+    {
+        return whereClause;
+    }
+
+    /**
+     * @return The upper case names of the ORDER BY columns, empty when not sorted
+     */
+    public String[] getOrderColumns()
+    {
+        return orderColumns;
+    }
+
+    /**
+     * @return For each ORDER BY column, true when sorted descending
+     */
+    public boolean[] getOrderDescending()
+    {
+        return orderDescending;
+    }
+
+    /**
+     * @return Number of ? parameters in the statement
+     */
+    public int getParameterCount()
+    {
+        return parameterCount;
+    }
+
+    /**
+     * @return true for a SELECT COUNT(*) statement
+     */
+    public boolean isCountAll()
+    {
+        return countAll;
+    }
+
+    /**
+     * @return The maximum number of rows to return, or -1 for all rows
+     */
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * @return The number of rows to skip before the first returned row
+     */
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    private XlsCondition parseOr() throws Exception
+    {
+        XlsCondition left = parseAnd();
+        while (isKeyword("OR"))
+        {
+            nextToken();
+            left = new XlsCondition.Or(left, parseAnd());
+        }
+        return left;
+    }
+
+    private XlsCondition parseAnd() throws Exception
+    {
+        XlsCondition left = parseNot();
+        while (isKeyword("AND"))
+        {
+            nextToken();
+            left = new XlsCondition.And(left, parseNot());
+        }
+        return left;
+    }
+
+    private XlsCondition parseNot() throws Exception
+    {
+        if (isKeyword("NOT"))
+        {
+            nextToken();
+            return new XlsCondition.Not(parseNot());
+        }
+        if (isSymbol("("))
+        {
+            nextToken();
+            XlsCondition condition = parseOr();
+            expectSymbol(")");
+            return condition;
+        }
+        return parsePredicate();
+    }
+
+    private XlsCondition parsePredicate() throws Exception
+    {
+        XlsCondition.Operand left = parseOperand();
+        if (isKeyword("IS"))
+        {
+            nextToken();
+            boolean negate = false;
+            if (isKeyword("NOT"))
+            {
+                negate = true;
+                nextToken();
+            }
+            expectKeyword("NULL");
+            return new XlsCondition.IsNull(left, negate);
+        }
+        boolean negate = false;
+        if (isKeyword("NOT"))
+        {
+            negate = true;
+            nextToken();
+        }
+        if (isKeyword("IN"))
+        {
+            nextToken();
+            expectSymbol("(");
+            List<XlsCondition.Operand> values = new ArrayList<XlsCondition.Operand>();
+            values.add(parseOperand());
+            while (isSymbol(","))
+            {
+                nextToken();
+                values.add(parseOperand());
+            }
+            expectSymbol(")");
+            return new XlsCondition.In(left, values, negate);
+        }
+        if (isKeyword("LIKE"))
+        {
+            nextToken();
+            if (tokenType != STRING)
+            {
+                throw new Exception("Pattern expected after LIKE at position " + pos);
+            }
+            String pattern = token;
+            nextToken();
+            return new XlsCondition.Like(left, pattern, negate);
+        }
+        if (negate)
+        {
+            throw new Exception("IN or LIKE expected after NOT at position " + pos);
+        }
+        int operator;
+        if (isSymbol("="))
+        {
+            operator = XlsCondition.Comparison.EQ;
+        }
+        else if (isSymbol("<>") || isSymbol("!="))
+        {
+            operator = XlsCondition.Comparison.NE;
+        }
+        else if (isSymbol("<"))
+        {
+            operator = XlsCondition.Comparison.LT;
+        }
+        else if (isSymbol("<="))
+        {
+            operator = XlsCondition.Comparison.LE;
+        }
+        else if (isSymbol(">"))
+        {
+            operator = XlsCondition.Comparison.GT;
+        }
+        else if (isSymbol(">="))
+        {
+            operator = XlsCondition.Comparison.GE;
+        }
+        else
+        {
+            throw new Exception("Comparison operator expected at position " + pos);
+        }
+        nextToken();
+        return new XlsCondition.Comparison(operator, left, parseOperand());
+    }
+
+    private XlsCondition.Operand parseOperand() throws Exception
+    {
+        XlsCondition.Operand operand;
+        if (tokenType == STRING)
+        {
+            operand = new XlsCondition.Literal(token);
+        }
+        else if (tokenType == NUMBER)
+        {
+            operand = new XlsCondition.Literal(Double.parseDouble(token));
+        }
+        else if (isSymbol("-"))
+        {
+            nextToken();
+            if (tokenType != NUMBER)
+            {
+                throw new Exception("Number expected at position " + pos);
+            }
+            operand = new XlsCondition.Literal(-Double.parseDouble(token));
+        }
+        else if (isSymbol("?"))
+        {
+            operand = new XlsCondition.Parameter(++parameterCount);
+        }
+        else if (tokenType == IDENT || tokenType == QUOTED_IDENT)
+        {
+            return new XlsCondition.Column(parseName());
+        }
+        else
+        {
+            throw new Exception("Column or value expected at position " + pos);
+        }
+        nextToken();
+        return operand;
+    }
+
+    private void parseTable() throws Exception
+    {
+        if (tokenType != IDENT && tokenType != QUOTED_IDENT)
+        {
+            throw new Exception("Table name expected at position " + pos);
+        }
+        String table = token;
+        String sheet = null;
+        nextToken();
+        if (isSymbol("."))
+        {
+            nextToken();
+            if (tokenType != IDENT && tokenType != QUOTED_IDENT)
+            {
+                throw new Exception("Sheet name expected at position " + pos);
+            }
+            sheet = token;
+            nextToken();
+        }
+        String alias = table.toUpperCase();
+        if (isKeyword("AS"))
+        {
+            nextToken();
+            if (tokenType != IDENT && tokenType != QUOTED_IDENT)
+            {
+                throw new Exception("Table alias expected at position " + pos);
+            }
+            alias = token.toUpperCase();
+            nextToken();
+        }
+        else if (tokenType == QUOTED_IDENT || (tokenType == IDENT && !isReserved()))
+        {
+            alias = token.toUpperCase();
+            nextToken();
+        }
+        if (tableAliases.contains(alias))
+        {
+            throw new Exception("Table alias '" + alias + "' used twice");
+        }
+        tableNames.add(table);
+        sheetNames.add(sheet);
+        tableAliases.add(alias);
+        if (joinTypes.size() < tableNames.size())
+        {
+            // The first table
+            joinTypes.add(null);
+            joinColumns.add(null);
+        }
+    }
+
+    private void parseJoin() throws Exception
+    {
+        String type = "INNER";
+        if (isKeyword("LEFT"))
+        {
+            type = "LEFT";
+            nextToken();
+            if (isKeyword("OUTER"))
+            {
+                nextToken();
+            }
+        }
+        else if (isKeyword("INNER"))
+        {
+            nextToken();
+        }
+        expectKeyword("JOIN");
+        joinTypes.add(type);
+        List<String> columns = new ArrayList<String>();
+        joinColumns.add(null);
+        parseTable();
+        expectKeyword("ON");
+        while (true)
+        {
+            columns.add(parseName());
+            expectSymbol("=");
+            columns.add(parseName());
+            if (!isKeyword("AND"))
+            {
+                break;
+            }
+            nextToken();
+        }
+        joinColumns.set(joinColumns.size() - 1, columns.toArray(new String[columns.size()]));
+    }
+
+    /**
+     * Check for a keyword which may follow a table, and is therefore no alias
+     */
+    private boolean isReserved()
+    {
+        String[] keywords = { "WHERE", "GROUP", "ORDER", "LIMIT", "OFFSET", "JOIN", "INNER", "LEFT", "ON" };
+        for (int loop = 0; loop < keywords.length; loop++)
+        {
+            if (isKeyword(keywords[loop]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void parseSelectItem(List<String> names, List<String> columns, List<String> items) throws Exception
+    {
+        String function = null;
+        String column;
+        String name;
+        if (isFunction("COUNT") || isFunction("SUM") || isFunction("AVG") || isFunction("MIN") || isFunction("MAX"))
+        {
+            function = token.toUpperCase();
+            nextToken();
+            expectSymbol("(");
+            if (isSymbol("*") && function.equals("COUNT"))
+            {
+                column = "*";
+                nextToken();
+            }
+            else
+            {
+                column = parseName();
+            }
+            expectSymbol(")");
+            name = function + "(" + column + ")";
+        }
+        else
+        {
+            column = parseName();
+            name = nameColumn;
+        }
+        if (isKeyword("AS"))
+        {
+            nextToken();
+            name = parseName();
+        }
+        names.add(name);
+        columns.add(column);
+        items.add(function);
+    }
+
+    private void parseOrderBy() throws Exception
+    {
+        List<String> columns = new ArrayList<String>();
+        List<Boolean> descending = new ArrayList<Boolean>();
+        while (true)
+        {
+            columns.add(parseName());
+            boolean desc = false;
+            if (isKeyword("DESC"))
+            {
+                desc = true;
+                nextToken();
+            }
+            else if (isKeyword("ASC"))
+            {
+                nextToken();
+            }
+            descending.add(Boolean.valueOf(desc));
+            if (!isSymbol(","))
+            {
+                break;
+            }
+            nextToken();
+        }
+        orderColumns = columns.toArray(new String[columns.size()]);
+        orderDescending = new boolean[descending.size()];
+        for (int loop = 0; loop < orderDescending.length; loop++)
+        {
+            orderDescending[loop] = descending.get(loop).booleanValue();
+        }
+    }
+
+    private int parseCount() throws Exception
+    {
+        if (tokenType != NUMBER || !isDigits(token, 0, token.length()))
+        {
+            throw new Exception("Row count expected at position " + pos);
+        }
+        int count;
+        try
+        {
+            count = Integer.parseInt(token);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new Exception("Row count too large at position " + pos);
+        }
+        nextToken();
+        return count;
+    }
+
+    /**
+     * Parse a column name, optionally preceded by the table alias
+     *
+     * @return  The upper case name, alias.column when an alias is given
+     */
+    private String parseName() throws Exception
+    {
+        if (tokenType != IDENT && tokenType != QUOTED_IDENT)
+        {
+            throw new Exception("Column name expected at position " + pos);
+        }
+        String name = token.toUpperCase();
+        nameColumn = name;
+        nextToken();
+        if (isSymbol("."))
+        {
+            nextToken();
+            if (tokenType != IDENT && tokenType != QUOTED_IDENT)
+            {
+                throw new Exception("Column name expected at position " + pos);
+            }
+            nameColumn = token.toUpperCase();
+            name = name + "." + nameColumn;
+            nextToken();
+        }
+        return name;
+    }
+
+    private boolean isKeyword(String keyword)
+    {
+        return tokenType == IDENT && keyword.equalsIgnoreCase(token);
+    }
+
+    /**
+     * Check for a function name, a name directly followed by an opening
+     * parenthesis. Columns may still be named like a function.
+     */
+    private boolean isFunction(String name)
+    {
+        if (!isKeyword(name))
+        {
+            return false;
+        }
+        int i = pos;
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i)))
+        {
+            i++;
+        }
+        return i < sql.length() && sql.charAt(i) == '(';
+    }
+
+    private boolean isSymbol(String symbol)
+    {
+        return tokenType == SYMBOL && symbol.equals(token);
+    }
+
+    private void expectKeyword(String keyword) throws Exception
+    {
+        if (!isKeyword(keyword))
+        {
+            throw new Exception(keyword + " expected at position " + pos);
+        }
+        nextToken();
+    }
+
+    private void expectSymbol(String symbol) throws Exception
+    {
+        if (!isSymbol(symbol))
+        {
+            throw new Exception("'" + symbol + "' expected at position " + pos);
+        }
+        nextToken();
+    }
+
+    /**
+     * Read the next token of the statement into token and tokenType
+     */
+    private void nextToken() throws Exception
+    {
+        while (pos < sql.length() && Character.isWhitespace(sql.charAt(pos)))
+        {
+            pos++;
+        }
+        if (pos >= sql.length())
+        {
+            tokenType = EOF;
+            token = "";
+            return;
+        }
+        char c = sql.charAt(pos);
+        if (c == '\'' || c == '"')
+        {
+            // Quoted string or name, the quote is escaped by doubling it
+            StringBuilder value = new StringBuilder();
+            int start = pos++;
+            while (true)
+            {
+                if (pos >= sql.length())
+                {
+                    throw new Exception("Unterminated quote at position " + start);
+                }
+                char q = sql.charAt(pos++);
+                if (q == c)
+                {
+                    if (pos < sql.length() && sql.charAt(pos) == c)
+                    {
+                        value.append(c);
+                        pos++;
+                    }
+                    else
+                    {
+                        break;
+                    }
+                }
+                else
+                {
+                    value.append(q);
+                }
+            }
+            tokenType = c == '\'' ? STRING : QUOTED_IDENT;
+            token = value.toString();
+            return;
+        }
+        if (isNameChar(c))
+        {
+            int start = pos;
+            while (pos < sql.length() && isNameChar(sql.charAt(pos)))
+            {
+                pos++;
+            }
+            // Decimal part and exponent of numbers
+            if (isDigits(sql, start, pos) && pos < sql.length() && sql.charAt(pos) == '.')
+            {
+                pos++;
+                while (pos < sql.length() && isNameChar(sql.charAt(pos)))
+                {
+                    pos++;
+                }
+            }
+            token = sql.substring(start, pos);
+            tokenType = XlsCondition.isNumber(token) ? NUMBER : IDENT;
+            return;
+        }
+        if (c == '.' && pos + 1 < sql.length() && Character.isDigit(sql.charAt(pos + 1)))
+        {
+            int start = pos++;
+            while (pos < sql.length() && isNameChar(sql.charAt(pos)))
+            {
+                pos++;
+            }
+            token = sql.substring(start, pos);
+            tokenType = NUMBER;
+            return;
+        }
+        if (pos + 1 < sql.length())
+        {
+            String two = sql.substring(pos, pos + 2);
+            if (two.equals("<>") || two.equals("!=") || two.equals("<=") || two.equals(">="))
+            {
+                pos += 2;
+                tokenType = SYMBOL;
+                token = two;
+                return;
+            }
+        }
+        pos++;
+        tokenType = SYMBOL;
+        token = String.valueOf(c);
+    }
+
+    private static boolean isNameChar(char c)
+    {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isDigits(String s, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            if (!Character.isDigit(s.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
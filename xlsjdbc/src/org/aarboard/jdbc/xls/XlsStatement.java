@@ -17,8 +17,7 @@
 package org.aarboard.jdbc.xls;
 
 import java.sql.*;
-import java.io.File;
-import org.relique.jdbc.csv.*;
+import java.util.Collections;
 
 /**
  * This class implements the Statement interface for the XlsJdbc driver.
@@ -33,6 +32,11 @@ public class XlsStatement implements Statement
 {
 
     private final XlsConnection connection;
+    private int maxRows = 0;
+    /** Rows decoded ahead by the streaming readers, 0 or 1 for none */
+    private int fetchSize = 0;
+    /** TYPE_FORWARD_ONLY or TYPE_SCROLL_INSENSITIVE */
+    private final int resultSetType;
 
     /**
      *Constructor for the XlsStatement object
@@ -41,9 +45,21 @@ public class XlsStatement implements Statement
      * @since
      */
     protected XlsStatement(XlsConnection connection)
+    {
+        this(connection, ResultSet.TYPE_FORWARD_ONLY);
+    }
+
+    /**
+     *Constructor for the XlsStatement object
+     *
+     * @param  connection     Description of Parameter
+     * @param  resultSetType  TYPE_FORWARD_ONLY or TYPE_SCROLL_INSENSITIVE
+     */
+    protected XlsStatement(XlsConnection connection, int resultSetType)
     {
         DriverManager.println("XlsJdbc - XlsStatement() - connection=" + connection);
         this.connection = connection;
+        this.resultSetType = resultSetType;
     }
 
     /**
@@ -69,7 +85,11 @@ public class XlsStatement implements Statement
     @Override
     public void setMaxRows(int p0) throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        if (p0 < 0)
+        {
+            throw new SQLException("maxRows must be >= 0");
+        }
+        maxRows = p0;
     }
 
     /**
@@ -134,7 +154,11 @@ public class XlsStatement implements Statement
     @Override
     public void setFetchSize(int p0) throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        if (p0 < 0)
+        {
+            throw new SQLException("fetchSize must be >= 0");
+        }
+        fetchSize = p0;
     }
 
     /**
@@ -160,7 +184,7 @@ public class XlsStatement implements Statement
     @Override
     public int getMaxRows() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return maxRows;
     }
 
     /**
@@ -258,7 +282,7 @@ public class XlsStatement implements Statement
     @Override
     public int getFetchSize() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return fetchSize;
     }
 
     /**
@@ -271,7 +295,7 @@ public class XlsStatement implements Statement
     @Override
     public int getResultSetConcurrency() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return ResultSet.CONCUR_READ_ONLY;
     }
 
     /**
@@ -284,7 +308,7 @@ public class XlsStatement implements Statement
     @Override
     public int getResultSetType() throws SQLException
     {
-        throw new SQLException("Not Supported !");
+        return resultSetType;
     }
 
     /**
@@ -312,49 +336,443 @@ public class XlsStatement implements Statement
     public ResultSet executeQuery(String sql) throws SQLException
     {
         DriverManager.println("XlsJdbc - XlsStatement:executeQuery() - sql= " + sql);
-        SqlParser parser = new SqlParser();
+        XlsQueryPlan plan = connection.getQueryPlan(sql);
+        if (plan.getParameterCount() > 0)
+        {
+            throw new SQLException("Statement contains parameters, use a PreparedStatement");
+        }
+        return executeQuery(plan, null);
+    }
+
+    /**
+     * Execute a parsed query
+     *
+     * @param  plan              The parsed query
+     * @param  parameters        Values of the ? parameters, null when there are none
+     * @return                   The result set
+     * @exception  SQLException  When the data file cannot be read
+     */
+    ResultSet executeQuery(XlsQueryPlan plan, Object[] parameters) throws SQLException
+    {
+        XlsSqlParser parser = plan.getParser();
+        IXlsReader reader;
         try
         {
-            parser.parse(sql);
+            reader = createReader(plan, 0);
+            if (reader instanceof POIReader)
+            {
+                // With a limit the sequential scan stops after the first rows,
+                // unless all rows are needed to group or sort them. The scan
+                // threads may be needed by the other tables of a join.
+                boolean limited = !parser.isCountAll() && !parser.isAggregate() && parser.getOrderColumns().length == 0
+                        && (parser.getLimit() >= 0 || maxRows > 0);
+                if (connection.getScanThreads() > 1 && !limited && plan.getTableCount() == 1)
+                {
+                    ((POIReader) reader).setParallelScan(connection.getScanExecutor(), connection.getScanThreads());
+                }
+            }
+            reader.openFile();
+        }
+        catch (SQLException e)
+        {
+            throw e;
         }
         catch (Exception e)
         {
-            throw new SQLException("Syntax Error. " + e.getMessage());
+            SQLException ex= new SQLException("Error reading data file. Message was: " + e );
+            ex.setStackTrace(e.getStackTrace());
+            throw ex;
+        }
+
+        XlsColumnTypes joinTypes = null;
+        if (plan.getTableCount() > 1)
+        {
+            IXlsReader[] tables = new IXlsReader[plan.getTableCount()];
+            reader = joinTables(plan, reader, tables);
+            try
+            {
+                joinTypes = getJoinTypes(tables);
+            }
+            catch (SQLException e)
+            {
+                reader.close();
+                throw e;
+            }
+        }
+
+        String[] columnNames = parser.getColumnNames();
+        int[] columnIndexes;
+        XlsQueryPlan.ColumnMapping mapping;
+        try
+        {
+            mapping = plan.getColumnMapping(reader.getColumnNames());
+            columnIndexes = mapping.columnIndexes;
+            XlsCondition whereClause = null;
+            if (parser.getWhereClause() != null)
+            {
+                whereClause = parser.getWhereClause().bind(reader.getColumnNames(), parameters);
+                reader.setWhereClause(whereClause);
+            }
+            if (mapping.columnsUsed != null)
+            {
+                // Only decode the selected columns and the ones used in the where clause
+                boolean[] columnsUsed = mapping.columnsUsed.clone();
+                if (whereClause != null)
+                {
+                    whereClause.markColumns(columnsUsed);
+                }
+                reader.setColumnsUsed(columnsUsed);
+            }
+        }
+        catch (SQLException e)
+        {
+            reader.close();
+            throw e;
         }
 
-        String fileName = connection.getFilePath() + parser.getTableNames().get(0) + connection.getExtension();
-        File checkFile = new File(fileName);
+        int limit = parser.getLimit();
+        if (maxRows > 0 && (limit < 0 || maxRows < limit))
+        {
+            limit = maxRows;
+        }
 
-        if (!checkFile.exists())
+        int[] columnTypes = null;
+        if (parser.isCountAll())
+        {
+            reader = countRows(reader, columnNames);
+            columnTypes = new int[] { Types.BIGINT };
+        }
+        else if (parser.isAggregate())
+        {
+            // For a table with wildcards the types of the first file
+            String fileName = reader.getFileName();
+            String sheetName = reader.getSheetName();
+            reader = aggregateRows(reader, mapping, parser);
+            columnTypes = getAggregateTypes(parser, mapping,
+                    joinTypes != null ? joinTypes : connection.getColumnTypes(fileName, sheetName));
+            // The result has the columns of the select list
+            columnIndexes = null;
+        }
+        else if (joinTypes != null)
         {
-            throw new SQLException("Cannot open data file '" + fileName + "'  !");
+            columnTypes = new int[columnIndexes == null ? reader.getColumnNames().length : columnIndexes.length];
+            for (int loop = 0; loop < columnTypes.length; loop++)
+            {
+                columnTypes[loop] = joinTypes.getType(columnIndexes == null ? loop + 1 : columnIndexes[loop]);
+            }
         }
+        if (mapping.orderIndexes != null)
+        {
+            // The rows before the offset are needed to find the first returned row
+            long sortRows = limit < 0 ? -1 : (long) parser.getOffset() + limit;
+            reader = sortRows(reader, mapping.orderIndexes, parser.isAggregate() ? null : mapping.columnsUsed,
+                    parser.getOrderDescending(), sortRows > Integer.MAX_VALUE ? -1 : (int) sortRows);
+        }
+        if (resultSetType == ResultSet.TYPE_SCROLL_INSENSITIVE && !(reader instanceof IXlsSeekableReader))
+        {
+            reader = storeRows(reader);
+        }
+        if (columnIndexes != null && columnNames.length > 0 && columnNames[0].equals("*"))
+        {
+            // select * without the pseudo columns
+            String[] header = mapping.header;
+            columnNames = new String[columnIndexes.length];
+            for (int loop = 0; loop < columnNames.length; loop++)
+            {
+                columnNames[loop] = header[columnIndexes[loop] - 1];
+            }
+        }
+        XlsResultSet resultSet = new XlsResultSet(this, reader, plan.getTableName(), columnNames, columnIndexes);
+        resultSet.setLimit(parser.getOffset(), limit);
+        if (resultSetType == ResultSet.TYPE_SCROLL_INSENSITIVE)
+        {
+            resultSet.setScrollable((IXlsSeekableReader) reader);
+        }
+        resultSet.setColumnTypes(columnTypes);
+        // Lets the streaming readers decode the rows ahead on a background thread
+        resultSet.setFetchSize(fetchSize);
+        return resultSet;
+    }
 
-        if (!checkFile.canRead())
+    /**
+     * Create the reader of a table of the FROM clause
+     *
+     * @param plan   The parsed query
+     * @param table  0-based index of the table
+     * @return       The reader, not opened yet. For a table name with
+     *               wildcards a reader of all matching files.
+     * @throws Exception  When the reader class cannot be loaded or no file matches
+     */
+    private IXlsReader createReader(XlsQueryPlan plan, int table) throws Exception
+    {
+        if (plan.isFilePattern(table))
         {
-            throw new SQLException("Data file '" + fileName + "'  not readable !");
+            return new XlsUnionReader(connection, plan.listFiles(table), plan.getSheetName(table));
         }
+        return connection.createReader(plan.getFileName(table), plan.getSheetName(table));
+    }
 
-        IXlsReader reader;
+    /**
+     * Join the tables of the FROM clause to the first one
+     *
+     * @param plan    The parsed query
+     * @param reader  Opened reader of the first table, closed when done
+     * @param tables  Filled with the opened reader of each table
+     * @return        Reader returning the joined rows, with the columns
+     *                named alias.column
+     * @throws SQLException  When a file cannot be read or a join column is not found
+     */
+    private IXlsReader joinTables(XlsQueryPlan plan, IXlsReader reader, IXlsReader[] tables) throws SQLException
+    {
+        tables[0] = reader;
+        XlsSqlParser parser = plan.getParser();
+        IXlsReader joined = reader;
+        IXlsReader right = null;
         try
         {
-            Class newClass = Class.forName(connection.getXlsReaderClass());
-            reader = (IXlsReader) newClass.newInstance();
+            String[] leftNames = qualify(parser.getTableAliases().get(0), reader.getColumnNames());
+            for (int table = 1; table < plan.getTableCount(); table++)
+            {
+                right = createReader(plan, table);
+                right.openFile();
+                tables[table] = right;
+                String[] rightNames = qualify(parser.getTableAliases().get(table), right.getColumnNames());
+                String[] on = parser.getJoinColumns().get(table);
+                int[] leftKeys = new int[on.length / 2];
+                int[] rightKeys = new int[on.length / 2];
+                for (int loop = 0; loop < leftKeys.length; loop++)
+                {
+                    String first = on[2 * loop];
+                    String second = on[2 * loop + 1];
+                    int leftFirst = XlsColumnIndex.findColumn(leftNames, first);
+                    int rightSecond = XlsColumnIndex.findColumn(rightNames, second);
+                    int leftSecond = XlsColumnIndex.findColumn(leftNames, second);
+                    int rightFirst = XlsColumnIndex.findColumn(rightNames, first);
+                    boolean forward = leftFirst != -1 && rightSecond != -1;
+                    boolean backward = leftSecond != -1 && rightFirst != -1;
+                    if (forward == backward)
+                    {
+                        throw new SQLException((forward ? "Ambiguous" : "Invalid") + " join condition " + first + " = "
+                                + second + ", it must compare a column of " + parser.getTableAliases().get(table)
+                                + " with a column of the tables before");
+                    }
+                    leftKeys[loop] = forward ? leftFirst : leftSecond;
+                    rightKeys[loop] = forward ? rightSecond : rightFirst;
+                }
+                joined = new XlsJoinReader(joined, leftNames, right, rightNames, leftKeys, rightKeys,
+                        "LEFT".equals(parser.getJoinTypes().get(table)));
+                right = null;
+                joined.openFile();
+                leftNames = joined.getColumnNames();
+            }
+            return joined;
+        }
+        catch (Exception e)
+        {
+            joined.close();
+            if (right != null)
+            {
+                right.close();
+            }
+            if (e instanceof SQLException)
+            {
+                throw (SQLException) e;
+            }
+            SQLException ex= new SQLException("Error reading data file. Message was: " + e );
+            ex.setStackTrace(e.getStackTrace());
+            throw ex;
+        }
+    }
 
-            reader.setSeparator(connection.getSeperator());
-            reader.setSuppressHeaders(connection.isSuppressHeaders());
-            reader.setStringDateFormat(connection.getStringDateFormat());
-            reader.setFileName(fileName);
-            reader.openFile();
+    /**
+     * Name the columns of a table of a join
+     *
+     * @param alias        Upper case alias of the table
+     * @param columnNames  Column names of the sheet
+     * @return             The names as alias.column
+     */
+    private static String[] qualify(String alias, String[] columnNames)
+    {
+        String[] names = new String[columnNames.length];
+        for (int loop = 0; loop < names.length; loop++)
+        {
+            names[loop] = alias + "." + columnNames[loop];
+        }
+        return names;
+    }
+
+    /**
+     * Get the SQL types of the columns of a join
+     *
+     * @param tables  Opened reader of each table
+     * @return        The types of the joined columns, null when the inference is disabled
+     * @throws SQLException  When a sheet cannot be read
+     */
+    private XlsColumnTypes getJoinTypes(IXlsReader[] tables) throws SQLException
+    {
+        XlsColumnTypes[] parts = new XlsColumnTypes[tables.length];
+        int[] widths = new int[tables.length];
+        for (int table = 0; table < parts.length; table++)
+        {
+            // For a table with wildcards the types of the first file
+            parts[table] = connection.getColumnTypes(tables[table].getFileName(), tables[table].getSheetName());
+            widths[table] = tables[table].getColumnNames().length;
+        }
+        return XlsColumnTypes.concat(parts, widths);
+    }
+
+    /**
+     * Keep the rows of a reader which cannot go back to a row, for a
+     * scrollable result set
+     *
+     * @param reader  Opened reader, closed with the returned reader
+     * @return        Reader keeping the rows read
+     * @throws SQLException  When the reader does not decode into row buffers
+     */
+    private static IXlsReader storeRows(IXlsReader reader) throws SQLException
+    {
+        if (!(reader instanceof AbstractRowReader))
+        {
+            reader.close();
+            throw new SQLException("Scrollable result sets are not supported by " + reader.getClass().getName());
+        }
+        return new XlsRowStore((AbstractRowReader) reader);
+    }
+
+    /**
+     * Count the rows of the reader and return the result as a one row
+     * reader.
+     *
+     * @param reader       Opened reader, closed when done
+     * @param columnNames  Name of the count column
+     * @return             Reader returning the count
+     * @throws SQLException  When the file cannot be read
+     */
+    private static IXlsReader countRows(IXlsReader reader, String[] columnNames) throws SQLException
+    {
+        XlsRowBuffer countRow = new XlsRowBuffer(1);
+        try
+        {
+            countRow.setNumber(0, reader.countRows());
+            IXlsReader countReader = new XlsMemoryReader(columnNames, Collections.singletonList(countRow));
+            countReader.openFile();
+            return countReader;
         }
         catch (Exception e)
         {
+            reader.close();
             SQLException ex= new SQLException("Error reading data file. Message was: " + e );
             ex.setStackTrace(e.getStackTrace());
             throw ex;
         }
+    }
 
-        return new XlsResultSet(this, reader, parser.getTableNames().get(0), parser.getColumnNames());
+    /**
+     * Group the rows of the reader and compute the aggregate functions
+     *
+     * @param reader   Opened reader, closed when done
+     * @param mapping  Columns of the query
+     * @param parser   The parsed query
+     * @return         Reader returning one row per group
+     * @throws SQLException  When the file cannot be read
+     */
+    private IXlsReader aggregateRows(IXlsReader reader, XlsQueryPlan.ColumnMapping mapping, XlsSqlParser parser)
+            throws SQLException
+    {
+        if (fetchSize > 1 && reader instanceof AbstractRowReader)
+        {
+            // Decode the rows on a background thread while aggregating
+            ((AbstractRowReader) reader).setPrefetchRows(fetchSize);
+        }
+        XlsHashAggregator aggregator = new XlsHashAggregator(mapping.groupIndexes, parser.getFunctions(), mapping.columnIndexes);
+        try
+        {
+            if (reader instanceof POIReader)
+            {
+                // Aggregate in chunks on the scan threads, next() then
+                // returns no more rows
+                try
+                {
+                    ((POIReader) reader).aggregateParallel(aggregator);
+                }
+                catch (Exception e)
+                {
+                    reader.close();
+                    throw e;
+                }
+            }
+            return aggregator.aggregate(reader, parser.getColumnNames());
+        }
+        catch (Exception e)
+        {
+            SQLException ex= new SQLException("Error reading data file. Message was: " + e );
+            ex.setStackTrace(e.getStackTrace());
+            throw ex;
+        }
+    }
+
+    /**
+     * Get the SQL types of the result of an aggregate query: BIGINT for
+     * COUNT, DOUBLE for SUM and AVG and the type of the sheet column for
+     * the others
+     *
+     * @param parser      The parsed query
+     * @param mapping     Columns of the query
+     * @param sheetTypes  Types of the columns read, null when unknown
+     * @return            java.sql.Types constant of each result column
+     */
+    private int[] getAggregateTypes(XlsSqlParser parser, XlsQueryPlan.ColumnMapping mapping, XlsColumnTypes sheetTypes)
+    {
+        String[] functions = parser.getFunctions();
+        int[] types = new int[functions.length];
+        for (int loop = 0; loop < types.length; loop++)
+        {
+            if ("COUNT".equals(functions[loop]))
+            {
+                types[loop] = Types.BIGINT;
+            }
+            else if ("SUM".equals(functions[loop]) || "AVG".equals(functions[loop]))
+            {
+                types[loop] = Types.DOUBLE;
+            }
+            else
+            {
+                types[loop] = sheetTypes == null ? Types.VARCHAR : sheetTypes.getType(mapping.columnIndexes[loop]);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Sort the rows of the reader for ORDER BY
+     *
+     * @param reader        Opened reader, closed when done
+     * @param orderIndexes  1-based reader column of each ORDER BY column
+     * @param columnsUsed   Columns to keep, null for all columns
+     * @param descending    Sort direction of each ORDER BY column
+     * @param maxRows       Number of rows needed, -1 for all rows
+     * @return              Reader returning the sorted rows
+     * @throws SQLException  When the file cannot be read
+     */
+    private IXlsReader sortRows(IXlsReader reader, int[] orderIndexes, boolean[] columnsUsed, boolean[] descending,
+            int maxRows) throws SQLException
+    {
+        if (fetchSize > 1 && reader instanceof AbstractRowReader)
+        {
+            // Decode the rows on a background thread while sorting
+            ((AbstractRowReader) reader).setPrefetchRows(fetchSize);
+        }
+        XlsRowSorter sorter = new XlsRowSorter(orderIndexes, descending, connection.getSortMemoryRows());
+        try
+        {
+            return sorter.sort(reader, columnsUsed, maxRows);
+        }
+        catch (Exception e)
+        {
+            SQLException ex= new SQLException("Error reading data file. Message was: " + e );
+            ex.setStackTrace(e.getStackTrace());
+            throw ex;
+        }
     }
 
     /**
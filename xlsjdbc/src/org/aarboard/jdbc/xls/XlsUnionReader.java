@@ -0,0 +1,433 @@
+/*
+ *  XlsJdbc - a JDBC driver for XLS files
+ *  Copyright (C) 2002 Andre Schild
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package org.aarboard.jdbc.xls;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Reader returning the rows of several files one after the other, like a
+ * UNION ALL of the same sheet of each file, for table names with wildcards.
+ *
+ * The files are returned sorted by name. While the rows of one file are
+ * returned, the following files are already read on the scan threads of
+ * the connection, at most one file per thread at a time. Each file is read
+ * in batches of rows; a file which is read ahead by more than a few
+ * batches gives its thread back until its rows are taken, so the memory
+ * used does not depend on the size of the files and a slow caller never
+ * blocks the threads.
+ *
+ * The columns are the ones of the first file. The columns of the other
+ * files are found by name, missing columns are empty. The pseudo column
+ * __FILE__ is added at the end with the name of the file of each row; it
+ * is not returned by select *.
+ *
+ * @author Andre Schild
+ */
+final class XlsUnionReader extends AbstractRowReader
+{
+    /** Name of the pseudo column holding the file name of each row */
+    static final String FILE_COLUMN = "__FILE__";
+    /** Rows read from a file in one step */
+    private static final int BATCH_ROWS = 256;
+    /** Batches a file is read ahead before its thread is given back */
+    private static final int MAX_BATCHES = 4;
+    /** Number of days between the 1900 and the 1904 date system */
+    private static final int DAYS_1904 = 1462;
+
+    private final XlsConnection connection;
+    private final ExecutorService executor;
+    private final int threads;
+    private final FileScan[] scans;
+    private String[] names;
+    /** Number of sheet columns, the file column follows them */
+    private int width;
+    private boolean[] used = null;
+    /** Index of the file returning rows */
+    private int current = 0;
+    /** Number of files which have been started */
+    private int started = 0;
+    private Batch batch = null;
+    private int batchPos = 0;
+
+    /**
+     * Rows read from a file in one step
+     */
+    private static final class Batch
+    {
+        final XlsRowBuffer[] rows = new XlsRowBuffer[BATCH_ROWS];
+        int size = 0;
+    }
+
+    /** Marks the end of a file in the filled queue */
+    private static final Batch END_OF_FILE = new Batch();
+
+    /**
+     * Reads one file in steps of MAX_BATCHES batches on the scan threads
+     */
+    private final class FileScan implements Runnable
+    {
+        private final String fileName;
+        private final String name;
+        private IXlsReader reader = null;
+        /** 1-based column of the file for each union column, 0 when missing */
+        private int[] sourceColumns;
+        /** Date system of the file, null until the first date cell */
+        private Boolean date1904 = null;
+        private final ArrayBlockingQueue<Batch> filled = new ArrayBlockingQueue<Batch>(MAX_BATCHES + 1);
+        private final ConcurrentLinkedQueue<Batch> free = new ConcurrentLinkedQueue<Batch>();
+        private volatile Throwable error = null;
+        // Guarded by this
+        private boolean scheduled = false;
+        private boolean finished = false;
+        private boolean closed = false;
+
+        FileScan(String fileName)
+        {
+            this.fileName = fileName;
+            this.name = new File(fileName).getName();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    synchronized (this)
+                    {
+                        if (closed)
+                        {
+                            closeReader();
+                            scheduled = false;
+                            return;
+                        }
+                        if (filled.size() >= MAX_BATCHES)
+                        {
+                            // Continued by resume() once a batch has been taken
+                            scheduled = false;
+                            return;
+                        }
+                    }
+                    if (reader == null)
+                    {
+                        open();
+                    }
+                    Batch data = free.poll();
+                    if (data == null)
+                    {
+                        data = new Batch();
+                    }
+                    data.size = 0;
+                    while (data.size < BATCH_ROWS && reader.next())
+                    {
+                        if (data.rows[data.size] == null)
+                        {
+                            data.rows[data.size] = new XlsRowBuffer();
+                        }
+                        copyRow(data.rows[data.size++]);
+                    }
+                    if (data.size > 0)
+                    {
+                        filled.add(data);
+                    }
+                    if (data.size < BATCH_ROWS)
+                    {
+                        finish(null);
+                        return;
+                    }
+                }
+            }
+            catch (Throwable t)
+            {
+                finish(t);
+            }
+        }
+
+        private void open() throws Exception
+        {
+            reader = createReader(fileName);
+            reader.openFile();
+            String[] fileNames = reader.getColumnNames();
+            sourceColumns = new int[width];
+            boolean[] fileUsed = used == null ? null : new boolean[fileNames.length];
+            for (int col = 0; col < width; col++)
+            {
+                for (int loop = 0; loop < fileNames.length; loop++)
+                {
+                    if (fileNames[loop].equals(names[col]))
+                    {
+                        sourceColumns[col] = loop + 1;
+                        if (fileUsed != null)
+                        {
+                            fileUsed[loop] = used[col];
+                        }
+                        break;
+                    }
+                }
+            }
+            reader.setColumnsUsed(fileUsed);
+        }
+
+        /**
+         * Copy the cells of the current row of the file. Dates of a
+         * workbook using the 1904 date system are converted to the 1900
+         * one, so all files are returned with the same date system.
+         */
+        private void copyRow(XlsRowBuffer data) throws Exception
+        {
+            data.clear();
+            for (int col = 0; col < width; col++)
+            {
+                int source = sourceColumns[col];
+                if (source == 0 || (used != null && !used[col]))
+                {
+                    continue;
+                }
+                switch (reader.getColumnType(source))
+                {
+                    case IXlsReader.TYPE_STRING:
+                        data.setString(col, reader.getColumn(source));
+                        break;
+                    case IXlsReader.TYPE_NUMERIC:
+                        double value = reader.getColumnDouble(source);
+                        if (reader.isColumnDate(source))
+                        {
+                            if (isDate1904(source, value))
+                            {
+                                value += DAYS_1904;
+                            }
+                            data.setDate(col, value);
+                        }
+                        else
+                        {
+                            data.setNumber(col, value);
+                        }
+                        break;
+                    case IXlsReader.TYPE_BOOLEAN:
+                        data.setBoolean(col, reader.getColumnBoolean(source));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            data.setString(width, name);
+        }
+
+        private boolean isDate1904(int col, double value) throws Exception
+        {
+            if (date1904 == null)
+            {
+                // The reader converts with the date system of the workbook
+                Date date = reader.getColumnDate(col);
+                date1904 = Boolean.valueOf(date != null && !date.equals(DateUtil.getJavaDate(value, false)));
+            }
+            return date1904.booleanValue();
+        }
+
+        private void finish(Throwable t)
+        {
+            error = t;
+            closeReader();
+            synchronized (this)
+            {
+                finished = true;
+                scheduled = false;
+            }
+            filled.add(END_OF_FILE);
+        }
+
+        /**
+         * Continue reading the file on a scan thread, unless it is read
+         * already or has ended
+         */
+        synchronized void resume()
+        {
+            if (!scheduled && !finished && !closed)
+            {
+                scheduled = true;
+                executor.execute(this);
+            }
+        }
+
+        synchronized void close()
+        {
+            closed = true;
+            if (!scheduled)
+            {
+                // Otherwise closed by the scan thread
+                closeReader();
+            }
+            filled.clear();
+            free.clear();
+        }
+
+        private void closeReader()
+        {
+            if (reader != null)
+            {
+                reader.close();
+                reader = null;
+            }
+        }
+    }
+
+    /**
+     * @param connection  Connection creating the readers of the files
+     * @param fileNames   Paths of the files, sorted by name
+     * @param sheetName   Sheet read in each file, null for the first sheet
+     */
+    XlsUnionReader(XlsConnection connection, String[] fileNames, String sheetName)
+    {
+        this.connection = connection;
+        this.executor = connection.getScanExecutor();
+        this.threads = connection.getScanThreads();
+        scans = new FileScan[fileNames.length];
+        for (int loop = 0; loop < fileNames.length; loop++)
+        {
+            scans[loop] = new FileScan(fileNames[loop]);
+        }
+        setFileName(fileNames[0]);
+        setSheetName(sheetName);
+        setStringDateFormat(connection.getStringDateFormat());
+    }
+
+    private IXlsReader createReader(String fileName) throws Exception
+    {
+        IXlsReader reader = connection.createReader(fileName, getSheetName());
+        if (reader instanceof POIReader)
+        {
+            // Each workbook is read once, do not keep all of them in the connection
+            ((POIReader) reader).setConnectionWorkbooks(null);
+        }
+        return reader;
+    }
+
+    @Override
+    public void openFile() throws Exception
+    {
+        // The first file gives the columns
+        FileScan first = scans[0];
+        first.reader = createReader(first.fileName);
+        first.reader.openFile();
+        String[] fileNames = first.reader.getColumnNames();
+        width = fileNames.length;
+        names = new String[width + 1];
+        System.arraycopy(fileNames, 0, names, 0, width);
+        names[width] = FILE_COLUMN;
+        first.sourceColumns = new int[width];
+        for (int col = 0; col < width; col++)
+        {
+            first.sourceColumns[col] = col + 1;
+        }
+        setColumnNames(names);
+    }
+
+    @Override
+    protected void openSource()
+    {
+        // The files are opened by the scans
+    }
+
+    @Override
+    public void setColumnsUsed(boolean[] columnsUsed)
+    {
+        super.setColumnsUsed(columnsUsed);
+        if (columnsUsed == null)
+        {
+            used = null;
+        }
+        else
+        {
+            used = new boolean[width];
+            System.arraycopy(columnsUsed, 0, used, 0, Math.min(width, columnsUsed.length));
+        }
+        if (started == 0 && scans[0].reader != null)
+        {
+            scans[0].reader.setColumnsUsed(used == null ? null : used.clone());
+        }
+    }
+
+    @Override
+    protected boolean readRow(XlsRowBuffer row) throws Exception
+    {
+        while (true)
+        {
+            if (batch != null && batchPos < batch.size)
+            {
+                row.copyFrom(batch.rows[batchPos++]);
+                return true;
+            }
+            if (batch != null)
+            {
+                scans[current].free.offer(batch);
+                batch = null;
+            }
+            startScans();
+            if (current >= scans.length)
+            {
+                return false;
+            }
+            FileScan scan = scans[current];
+            Batch data = scan.filled.take();
+            if (data == END_OF_FILE)
+            {
+                if (scan.error instanceof Exception)
+                {
+                    throw new Exception("Error reading '" + scan.fileName + "': " + scan.error.getMessage(), scan.error);
+                }
+                if (scan.error != null)
+                {
+                    throw new Exception(scan.error);
+                }
+                current++;
+                continue;
+            }
+            // The file may have stopped with all batches filled
+            scan.resume();
+            batch = data;
+            batchPos = 0;
+        }
+    }
+
+    /**
+     * Start reading the next files, up to one file per scan thread
+     */
+    private void startScans()
+    {
+        while (started < scans.length && started < current + threads)
+        {
+            scans[started++].resume();
+        }
+    }
+
+    @Override
+    protected void closeSource()
+    {
+        for (int loop = 0; loop < scans.length; loop++)
+        {
+            scans[loop].close();
+        }
+        batch = null;
+        current = scans.length;
+    }
+}
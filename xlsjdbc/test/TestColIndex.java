@@ -27,7 +27,9 @@ public class TestColIndex extends TestCase {
     public void testNull()
     {
 	testNull("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testNull("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
 	testNull("org.aarboard.jdbc.xls.POIReader", ".xlsx");
+	testNull("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
 	// testNull("org.aarboard.jdbc.xls.JXLReader");
     }
     
@@ -76,4 +78,79 @@ public class TestColIndex extends TestCase {
             assertFalse("SQLException ce: "+ce.getMessage(), true);
         }
     }
+
+    public void testProjection()
+    {
+	testProjection("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testProjection("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testProjection("org.aarboard.jdbc.xls.POIReader", ".xlsx");
+	testProjection("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testProjection(String readerClass, String type)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+        String jdbcTableName= "rowcolmap";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            // columns in a different order than in the sheet
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery("SELECT B, A FROM "+jdbcTableName);
+            assertTrue("Expected 2 columns", results.getMetaData().getColumnCount() == 2);
+            assertTrue("Expected column A at 2", results.findColumn("a") == 2);
+            int rCount= 0;
+            while (results.next())
+            {
+                rCount++;
+                String thisB= results.getString(1);
+                String thisA= results.getString(2);
+                assertTrue("Did not find expected B"+rCount+", but "+thisB, ("B"+rCount).equals(thisB));
+                assertTrue("Did not find expected A"+rCount+", but "+thisA, ("A"+rCount).equals(thisA));
+                assertTrue("Did not find expected "+thisB, thisB.equals(results.getString("B")));
+                assertTrue("Did not find expected "+thisA, thisA.equals(results.getString("a")));
+            }
+            assertTrue("Did not find expected 3 rows, but "+rCount, rCount == 3);
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (SQLException e)
+        {
+            assertFalse("SQLException e: "+e.getMessage(), true);
+        }
+        catch (ClassNotFoundException ce)
+        {
+            assertFalse("SQLException ce: "+ce.getMessage(), true);
+        }
+    }
+
+    public void testReaderColumnNames()
+    {
+        try
+        {
+	    org.aarboard.jdbc.xls.POIReader reader= new org.aarboard.jdbc.xls.POIReader();
+	    reader.setFileName("C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/rowcolmap.xls");
+	    reader.openFile();
+	    int rCount= 0;
+	    while (reader.next())
+	    {
+		rCount++;
+		assertTrue("Did not find expected A"+rCount, ("A"+rCount).equals(reader.getColumn("a")));
+		assertTrue("Did not find expected B"+rCount, ("B"+rCount).equals(reader.getColumn("B")));
+	    }
+	    reader.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
 }
@@ -0,0 +1,111 @@
+import junit.framework.*;
+/*
+ * TestColumnCache.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestColumnCache extends TestCase {
+
+    private java.io.File cacheDir;
+
+    public TestColumnCache(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+	cacheDir= new java.io.File(System.getProperty("java.io.tmpdir"), "xlsjdbc-test-cache");
+	deleteCache();
+    }
+
+    protected void tearDown() throws Exception {
+	deleteCache();
+    }
+
+    private void deleteCache()
+    {
+	java.io.File[] files= cacheDir.listFiles();
+	if (files != null)
+	{
+	    for (int i= 0; i < files.length; i++)
+	    {
+		files[i].delete();
+	    }
+	}
+	cacheDir.delete();
+    }
+
+    public void testColumnCache()
+    {
+	testColumnCache("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testColumnCache("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testColumnCache("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testColumnCache(String readerClass, String type)
+    {
+	String[] queries= {
+	    "SELECT * FROM nulltest1",
+	    "SELECT * FROM nulltest1 WHERE NACHNAME='B'",
+	    "SELECT COUNT(*) FROM nulltest1 WHERE NACHNAME='A' AND STARTNUMMER<100",
+	    "SELECT * FROM 1017rows WHERE COLOUR='00'"
+	};
+	for (int i= 0; i < queries.length; i++)
+	{
+	    String expected= runQuery(readerClass, type, false, queries[i]);
+	    // First run writes the cache files, the second one reads them
+	    assertEquals(queries[i], expected, runQuery(readerClass, type, true, queries[i]));
+	    java.io.File[] files= cacheDir.listFiles();
+	    assertTrue("No cache file written", files != null && files.length > 0);
+	    long written= files[0].lastModified();
+	    assertEquals(queries[i], expected, runQuery(readerClass, type, true, queries[i]));
+	    assertEquals("Cache file written again", written, files[0].lastModified());
+	}
+	deleteCache();
+    }
+
+    private String runQuery(String readerClass, String type, boolean cached, String sql)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+	StringBuffer result= new StringBuffer();
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+	    if (cached)
+	    {
+		info.setProperty(org.aarboard.jdbc.xls.XlsDriver.COLUMN_CACHE_DIR, cacheDir.getPath());
+	    }
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery(sql);
+	    int columns= results.getMetaData().getColumnCount();
+            while (results.next())
+            {
+		for (int i= 1; i <= columns; i++)
+		{
+		    result.append(results.getObject(i)).append('|');
+		}
+		result.append('\n');
+            }
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+	return result.toString();
+    }
+}
@@ -0,0 +1,80 @@
+import junit.framework.*;
+/*
+ * TestGapRows.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ * gaprows has the data rows 1, 2, 4 and 5, row 3 is missing. All readers
+ * end the sheet at the missing row.
+ *
+ * @author sca
+ */
+public class TestGapRows extends TestCase {
+
+    public TestGapRows(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testGapRows()
+    {
+	testGapRows("org.aarboard.jdbc.xls.POIReader", ".xls", null);
+	testGapRows("org.aarboard.jdbc.xls.HSSFEventReader", ".xls", null);
+	testGapRows("org.aarboard.jdbc.xls.HSSFEventReader", ".xls", "16");
+	testGapRows("org.aarboard.jdbc.xls.HSSFEventReader", ".xls", "cache");
+	testGapRows("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx", null);
+	testGapRows("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx", "16");
+	testGapRows("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx", "cache");
+    }
+
+    public void testGapRows(String readerClass, String type, String option)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+	    if ("cache".equals(option))
+	    {
+		java.io.File cacheDir= new java.io.File(System.getProperty("java.io.tmpdir"), "xlsjdbc-test-cache");
+		info.setProperty(org.aarboard.jdbc.xls.XlsDriver.COLUMN_CACHE_DIR, cacheDir.getPath());
+	    }
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+	    if (option != null && !"cache".equals(option))
+	    {
+		// Rows decoded ahead on a background thread
+		stmt.setFetchSize(Integer.parseInt(option));
+	    }
+            java.sql.ResultSet results= stmt.executeQuery("SELECT * FROM gaprows");
+            int rCount= 0;
+            while (results.next())
+            {
+		rCount++;
+		assertEquals(readerClass, rCount, results.getInt("ID"));
+		assertEquals(readerClass, "Row "+rCount, results.getString("NAME"));
+            }
+            results.close();
+	    assertEquals(readerClass+" "+option, 2, rCount);
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import junit.framework.*;
+/*
+ * TestGlob.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestGlob extends TestCase {
+
+    public TestGlob(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testGlob()
+    {
+	testGlob("org.aarboard.jdbc.xls.POIReader", ".xls", "1");
+	testGlob("org.aarboard.jdbc.xls.HSSFEventReader", ".xls", "2");
+	testGlob("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx", "4");
+    }
+
+    public void testGlob(String readerClass, String type, String scanThreads)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.SCAN_THREADS, scanThreads);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+	    // 1017rows, 10rows and 51rows, sorted by file name
+            java.sql.ResultSet results= stmt.executeQuery("SELECT __FILE__, COUNT(*) FROM \"*1*rows\" GROUP BY __FILE__ ORDER BY __FILE__");
+	    assertTrue(results.next());
+	    assertEquals("1017rows"+type, results.getString(1));
+	    assertEquals(8795, results.getInt(2));
+	    assertTrue(results.next());
+	    assertEquals("10rows"+type, results.getString(1));
+	    assertEquals(10, results.getInt(2));
+	    assertTrue(results.next());
+	    assertEquals("51rows"+type, results.getString(1));
+	    assertEquals(51, results.getInt(2));
+	    assertFalse(results.next());
+            results.close();
+
+	    // The pseudo column is not part of select *
+	    results= stmt.executeQuery("SELECT * FROM \"1?rows\"");
+	    assertEquals(1, results.getMetaData().getColumnCount());
+	    assertEquals("HEADER", results.getMetaData().getColumnName(1));
+            int rCount= 0;
+            while (results.next())
+            {
+		rCount++;
+		assertEquals(rCount, results.getInt(1));
+            }
+            results.close();
+	    assertEquals(10, rCount);
+
+	    results= stmt.executeQuery("SELECT COUNT(*) FROM \"1*rows\" WHERE __FILE__ = '1017rows"+type+"'");
+	    assertTrue(results.next());
+	    assertEquals(8795, results.getInt(1));
+            results.close();
+
+	    try
+	    {
+		stmt.executeQuery("SELECT * FROM \"nomatch*\"");
+		fail("Missing files not detected");
+	    }
+	    catch (java.sql.SQLException e)
+	    {
+		// Expected, no file matches
+	    }
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import junit.framework.*;
+/*
+ * TestGroupBy.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestGroupBy extends TestCase {
+
+    public TestGroupBy(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testGroupBy()
+    {
+	testGroupBy("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testGroupBy("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testGroupBy("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testParallelGroupBy()
+    {
+	String sql= "SELECT COLOUR, COUNT(*), COUNT(\"MAIN PRODUCT\"), MIN(\"MAIN PRODUCT\"), MAX(\"MAIN PRODUCT\") FROM 1017rows GROUP BY COLOUR";
+	String expected= readGroups("1", sql);
+	assertEquals(expected, readGroups("4", sql));
+	sql= "SELECT COUNT(COLOUR), MAX(COLOUR) FROM 1017rows";
+	assertEquals(readGroups("1", sql), readGroups("4", sql));
+    }
+
+    private String readGroups(String scanThreads, String sql)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+	StringBuilder groups= new StringBuilder();
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, "org.aarboard.jdbc.xls.POIReader");
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.SCAN_THREADS, scanThreads);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery(sql);
+	    int columns= results.getMetaData().getColumnCount();
+            while (results.next())
+            {
+		for (int i= 1; i <= columns; i++)
+		{
+		    groups.append(results.getString(i)).append(';');
+		}
+		groups.append('\n');
+            }
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+	return groups.toString();
+    }
+
+    public void testGroupBy(String readerClass, String type)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery("SELECT NACHNAME, COUNT(*) AS N, COUNT(\"E-MAIL\"), SUM(STARTNUMMER), AVG(STARTNUMMER), MAX(STARTNUMMER) FROM nulltest1 GROUP BY NACHNAME ORDER BY NACHNAME");
+	    java.sql.ResultSetMetaData metaData= results.getMetaData();
+	    assertEquals("N", metaData.getColumnName(2));
+	    assertEquals(java.sql.Types.BIGINT, metaData.getColumnType(2));
+	    assertEquals(java.sql.Types.DOUBLE, metaData.getColumnType(4));
+            int rCount= 0;
+	    int total= 0;
+	    int mails= 0;
+            while (results.next())
+            {
+		total+= results.getInt("N");
+		mails+= results.getInt(3);
+		if (results.getString(1).equals("B"))
+		{
+		    assertEquals(364, results.getInt(2));
+		    assertEquals(198926, results.getLong(4));
+		    assertEquals(546.5, results.getDouble(5), 0);
+		    assertEquals(1091, results.getInt(6));
+		}
+                rCount++;
+            }
+            assertTrue("Did not find expected 3 groups, but "+rCount, rCount == 3);
+            assertTrue("Did not find expected 1093 rows, but "+total, total == 1093);
+            assertTrue("Did not find expected 342 mails, but "+mails, mails == 342);
+            results.close();
+
+	    // Without GROUP BY all rows are one group
+            results= stmt.executeQuery("SELECT COUNT(*), MIN(STARTNUMMER) FROM nulltest1 WHERE NACHNAME = 'B'");
+	    assertTrue(results.next());
+	    assertEquals(364, results.getInt(1));
+	    assertFalse(results.next());
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import junit.framework.*;
+/*
+ * TestJoin.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestJoin extends TestCase {
+
+    public TestJoin(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testJoin()
+    {
+	testJoin("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testJoin("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testJoin("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testJoin(String readerClass, String type)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+	    // 10rows is the smaller table and kept in the hash table
+            java.sql.ResultSet results= stmt.executeQuery("SELECT n.NACHNAME, n.STARTNUMMER, t.HEADER FROM nulltest1 n JOIN 10rows t ON n.STARTNUMMER = t.HEADER ORDER BY HEADER");
+	    assertEquals("HEADER", results.getMetaData().getColumnName(3));
+            int rCount= 0;
+            while (results.next())
+            {
+		rCount++;
+		assertEquals(rCount, results.getInt(2));
+		assertEquals(rCount, results.getInt("HEADER"));
+            }
+            results.close();
+	    assertEquals(10, rCount);
+
+	    results= stmt.executeQuery("SELECT COUNT(*), COUNT(t.HEADER) FROM nulltest1 LEFT JOIN 10rows t ON STARTNUMMER = t.HEADER");
+	    assertTrue(results.next());
+	    assertEquals(1093, results.getInt(1));
+	    assertEquals(10, results.getInt(2));
+            results.close();
+
+	    // Build on the left table of the LEFT JOIN
+	    results= stmt.executeQuery("SELECT HEADER, n.NACHNAME FROM 10rows LEFT JOIN nulltest1 n ON HEADER = n.STARTNUMMER WHERE n.NACHNAME = 'B'");
+            rCount= 0;
+            while (results.next())
+            {
+		rCount++;
+		assertEquals(2, results.getInt(1) % 3);
+            }
+            results.close();
+	    assertEquals(3, rCount);
+
+	    results= stmt.executeQuery("SELECT a.NACHNAME, COUNT(*) FROM nulltest1 a JOIN nulltest1 b ON a.NACHNAME = b.NACHNAME GROUP BY a.NACHNAME ORDER BY a.NACHNAME");
+	    assertTrue(results.next());
+	    assertEquals("A", results.getString(1));
+	    assertEquals(365 * 365, results.getInt(2));
+            results.close();
+
+	    try
+	    {
+		stmt.executeQuery("SELECT NACHNAME FROM nulltest1 a JOIN nulltest1 b ON a.STARTNUMMER = b.STARTNUMMER");
+		fail("Ambiguous column not detected");
+	    }
+	    catch (java.sql.SQLException e)
+	    {
+		// Expected, NACHNAME is in both tables
+	    }
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+import junit.framework.*;
+/*
+ * TestMetaData.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestMetaData extends TestCase {
+
+    public TestMetaData(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testColumnTypes()
+    {
+	testColumnTypes("org.aarboard.jdbc.xls.POIReader", ".xls", null);
+	testColumnTypes("org.aarboard.jdbc.xls.HSSFEventReader", ".xls", null);
+	testColumnTypes("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx", null);
+	testColumnTypes("org.aarboard.jdbc.xls.POIReader", ".xls", "0");
+    }
+
+    public void testColumnTypes(String readerClass, String type, String sampleRows)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+	boolean inferred= sampleRows == null;
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+	    if (sampleRows != null)
+	    {
+		info.setProperty(org.aarboard.jdbc.xls.XlsDriver.TYPE_SAMPLE_ROWS, sampleRows);
+	    }
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery("SELECT NACHNAME, STARTNUMMER, ANMELDEDATUMDAT, EVENT FROM nulltest1");
+	    java.sql.ResultSetMetaData metaData= results.getMetaData();
+	    assertEquals(java.sql.Types.VARCHAR, metaData.getColumnType(1));
+	    assertEquals(inferred ? java.sql.Types.BIGINT : java.sql.Types.VARCHAR, metaData.getColumnType(2));
+	    assertEquals(inferred ? java.sql.Types.DATE : java.sql.Types.VARCHAR, metaData.getColumnType(3));
+	    assertEquals(inferred ? java.sql.Types.BOOLEAN : java.sql.Types.VARCHAR, metaData.getColumnType(4));
+	    assertEquals(inferred ? "java.lang.Long" : "java.lang.String", metaData.getColumnClassName(2));
+            results.close();
+
+	    // Inferred once per file, the second query uses the same types
+            results= stmt.executeQuery("SELECT STARTNUMMER FROM nulltest1 WHERE NACHNAME = 'B'");
+	    assertEquals(inferred ? java.sql.Types.BIGINT : java.sql.Types.VARCHAR, results.getMetaData().getColumnType(1));
+            results.close();
+
+            results= stmt.executeQuery("SELECT COUNT(*) FROM nulltest1");
+	    assertEquals(java.sql.Types.BIGINT, results.getMetaData().getColumnType(1));
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+
+    public void testInvalidSampleRows() throws Exception
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        Class.forName(jdbcClassName);
+	java.util.Properties info= new java.util.Properties();
+	info.setProperty(org.aarboard.jdbc.xls.XlsDriver.TYPE_SAMPLE_ROWS, "all");
+	try
+	{
+	    java.sql.DriverManager.getConnection(jdbcURL, info);
+	    fail("Invalid typeSampleRows accepted");
+	}
+	catch (java.sql.SQLException e)
+	{
+	    assertTrue(e.getMessage(), e.getMessage().indexOf(org.aarboard.jdbc.xls.XlsDriver.TYPE_SAMPLE_ROWS) >= 0);
+	}
+    }
+
+    public void testGetObject()
+    {
+	testGetObject("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testGetObject("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testGetObject("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testGetObject(String readerClass, String type)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery("SELECT NACHNAME, STARTNUMMER, ANMELDEDATUMDAT, EVENT, \"E-MAIL\" FROM nulltest1");
+            int rCount= 0;
+	    int dates= 0;
+	    int nullMails= 0;
+            while (results.next())
+            {
+		assertTrue(results.getObject(1) instanceof String);
+		Object number= results.getObject("STARTNUMMER");
+		assertTrue("Expected Long, but "+number, number instanceof Long);
+		assertEquals(results.getLong(2), ((Long) number).longValue());
+		assertEquals(number, ((org.aarboard.jdbc.xls.XlsResultSet) results).getObject(2, Long.class));
+		Object date= results.getObject(3);
+		if (date != null)
+		{
+		    assertTrue(date instanceof java.sql.Date);
+		    assertEquals(results.getDate(3), date);
+		    dates++;
+		}
+		assertTrue(results.getObject(4) instanceof Boolean);
+		if (results.getObject(5) == null)
+		{
+		    assertTrue(results.wasNull());
+		    assertNull(((org.aarboard.jdbc.xls.XlsResultSet) results).getObject(5, String.class));
+		    nullMails++;
+		}
+                rCount++;
+            }
+            assertTrue("Did not find expected 1093 rows, but "+rCount, rCount == 1093);
+            assertTrue("Did not find expected 557 dates, but "+dates, dates == 557);
+            assertTrue("Did not find expected 751 empty mails, but "+nullMails, nullMails == 751);
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+
+    public void testObjectClass()
+    {
+	testObjectClass("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testObjectClass("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testObjectClass("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testObjectClass(String readerClass, String type)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+	    String[] queries= { "SELECT * FROM nulltest1",
+		"SELECT NACHNAME, COUNT(*), SUM(STARTNUMMER), AVG(STARTNUMMER), MIN(STARTNUMMER) FROM nulltest1 GROUP BY NACHNAME" };
+	    for (int q= 0; q < queries.length; q++)
+	    {
+		java.sql.ResultSet results= stmt.executeQuery(queries[q]);
+		java.sql.ResultSetMetaData metaData= results.getMetaData();
+		int rCount= 0;
+		while (results.next())
+		{
+		    for (int i= 1; i <= metaData.getColumnCount(); i++)
+		    {
+			Object value= results.getObject(i);
+			if (value != null)
+			{
+			    assertEquals(queries[q]+" column "+i, metaData.getColumnClassName(i), value.getClass().getName());
+			}
+		    }
+		    rCount++;
+		}
+		assertTrue(queries[q]+": no rows", rCount > 0);
+		results.close();
+	    }
+
+	    // Text read as number
+            java.sql.ResultSet results= stmt.executeQuery("SELECT NACHNAME FROM nulltest1");
+	    assertTrue(results.next());
+	    try
+	    {
+		((org.aarboard.jdbc.xls.XlsResultSet) results).getObject(1, Long.class);
+		fail("Text converted to Long");
+	    }
+	    catch (java.sql.SQLException e)
+	    {
+		assertEquals("Conversion to java.lang.Long not supported.", e.getMessage());
+	    }
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+}
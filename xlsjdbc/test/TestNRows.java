@@ -20,13 +20,19 @@ public class TestNRows extends TestCase {
     public void testNRows()
     {
         doTestNRows(10, "org.aarboard.jdbc.xls.POIReader", ".xls");
+        doTestNRows(10, "org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
         doTestNRows(10, "org.aarboard.jdbc.xls.POIReader", ".xlsx");
+        doTestNRows(10, "org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
         // doTestNRows(10, "org.aarboard.jdbc.xls.JXLReader");
         doTestNRows(51, "org.aarboard.jdbc.xls.POIReader", ".xls");
+        doTestNRows(51, "org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
         doTestNRows(51, "org.aarboard.jdbc.xls.POIReader", ".xlsx");
+        doTestNRows(51, "org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
         // doTestNRows(51, "org.aarboard.jdbc.xls.JXLReader");
         doTestNRows(1017, "org.aarboard.jdbc.xls.POIReader", ".xlsx");
+        doTestNRows(1017, "org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
         doTestNRows(1017, "org.aarboard.jdbc.xls.POIReader", ".xls");
+        doTestNRows(1017, "org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
         // doTestNRows(1017, "org.aarboard.jdbc.xls.JXLReader");
     }
     
@@ -70,4 +76,230 @@ public class TestNRows extends TestCase {
         }
 }
     
+    public void testLimit()
+    {
+        doTestLimit("org.aarboard.jdbc.xls.POIReader", ".xls");
+        doTestLimit("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+        doTestLimit("org.aarboard.jdbc.xls.POIReader", ".xlsx");
+        doTestLimit("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void doTestLimit(String readerClass, String type)
+    {
+        doTestLimit(readerClass, type, "SELECT * FROM 51rows LIMIT 10", 0, 10);
+        doTestLimit(readerClass, type, "SELECT * FROM 51rows LIMIT 10 OFFSET 45", 0, 6);
+        doTestLimit(readerClass, type, "SELECT * FROM 51rows OFFSET 50", 0, 1);
+        doTestLimit(readerClass, type, "SELECT * FROM 51rows", 5, 5);
+        doTestLimit(readerClass, type, "SELECT * FROM 51rows LIMIT 10", 20, 10);
+        doTestLimit(readerClass, type, "SELECT * FROM 51rows LIMIT 10", 3, 3);
+    }
+
+    public void testLimitCloses()
+    {
+        doTestLimitCloses("org.aarboard.jdbc.xls.HSSFEventReader", ".xls", 0);
+        doTestLimitCloses("org.aarboard.jdbc.xls.HSSFEventReader", ".xls", 16);
+        doTestLimitCloses("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx", 0);
+        doTestLimitCloses("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx", 16);
+    }
+
+    /**
+     * The file is released with the last row of the limit, before next()
+     * is called again, and the values of that row stay readable.
+     */
+    public void doTestLimitCloses(String readerClass, String type, int fetchSize)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+        java.io.File file= new java.io.File(jdbcURL.substring("jdbc:aarboard:xls:".length()), "51rows" + type);
+
+        try
+        {
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+
+            Class.forName(jdbcClassName);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            stmt.setFetchSize(fetchSize);
+            java.sql.ResultSet results= stmt.executeQuery("SELECT * FROM 51rows LIMIT 3");
+            for (int i= 0; i < 3; i++)
+            {
+                assertTrue(results.next());
+                assertTrue(i == 2 || isOpen(file) != Boolean.FALSE);
+            }
+            assertTrue(readerClass+": file still open after the last row", isOpen(file) != Boolean.TRUE);
+            assertNotNull(results.getString(1));
+            assertFalse(results.next());
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+
+    /**
+     * Check the open files of the process, only possible on Linux
+     *
+     * @return  null when not known
+     */
+    private static Boolean isOpen(java.io.File file) throws java.io.IOException
+    {
+        java.io.File[] fds= new java.io.File("/proc/self/fd").listFiles();
+        if (fds == null)
+        {
+            return null;
+        }
+        String path= file.getCanonicalPath();
+        for (int i= 0; i < fds.length; i++)
+        {
+            try
+            {
+                if (path.equals(fds[i].getCanonicalPath()))
+                {
+                    return Boolean.TRUE;
+                }
+            }
+            catch (java.io.IOException e)
+            {
+                // closed meanwhile
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    public void testFetchSize()
+    {
+        doTestFetchSize("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+        doTestFetchSize("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void doTestFetchSize(String readerClass, String type)
+    {
+        // rows decoded ahead on a background thread
+        doTestLimit(readerClass, type, "SELECT * FROM 1017rows", 0, 16, 8795);
+        doTestLimit(readerClass, type, "SELECT * FROM 1017rows LIMIT 10", 0, 16, 10);
+        doTestLimit(readerClass, type, "SELECT * FROM nulltest1 WHERE NACHNAME = 'B'", 0, 1000, 364);
+    }
+
+    public void doTestLimit(String readerClass, String type, String sql, int maxRows, int nCount)
+    {
+        doTestLimit(readerClass, type, sql, maxRows, 0, nCount);
+    }
+
+    public void doTestLimit(String readerClass, String type, String sql, int maxRows, int fetchSize, int nCount)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+
+            Class.forName(jdbcClassName);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            stmt.setMaxRows(maxRows);
+            stmt.setFetchSize(fetchSize);
+            java.sql.ResultSet results= stmt.executeQuery(sql);
+            int rCount= 0;
+            while (results.next())
+            {
+                rCount++;
+            }
+            assertTrue(sql+": Did not find expected "+nCount+" rows, but "+rCount, rCount == nCount);
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+
+    public void testCount()
+    {
+        doTestCount("org.aarboard.jdbc.xls.POIReader", ".xls");
+        doTestCount("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+        doTestCount("org.aarboard.jdbc.xls.POIReader", ".xlsx");
+        doTestCount("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void doTestCount(String readerClass, String type)
+    {
+        doTestCount(readerClass, type, "SELECT COUNT(*) FROM 10rows", 10);
+        doTestCount(readerClass, type, "SELECT COUNT(*) FROM 51rows", 51);
+        doTestCount(readerClass, type, "SELECT COUNT(*) FROM nulltest1", 1093);
+        doTestCount(readerClass, type, "SELECT COUNT(*) FROM nulltest1 WHERE NACHNAME = 'B'", 364);
+        // Row 3 is missing, the sheet ends there although its dimension goes on
+        doTestCount(readerClass, type, "SELECT COUNT(*) FROM gaprows", 2);
+        doTestCount(readerClass, type, "SELECT COUNT(*) FROM gaprows WHERE ID > 0", 2);
+    }
+
+    public void testCountMissingRow()
+    {
+        java.io.File cacheDir= new java.io.File(System.getProperty("java.io.tmpdir"), "xlsjdbc-test-cache");
+        doTestCount("org.aarboard.jdbc.xls.HSSFEventReader", ".xls", cacheDir, "SELECT COUNT(*) FROM gaprows", 2);
+        doTestCount("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx", cacheDir, "SELECT COUNT(*) FROM gaprows", 2);
+        doTestCount("org.aarboard.jdbc.xls.HSSFEventReader", ".xls", null, "SELECT * FROM gaprows", 2);
+        doTestCount("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx", null, "SELECT * FROM gaprows", 2);
+    }
+
+    public void doTestCount(String readerClass, String type, String sql, int nCount)
+    {
+        doTestCount(readerClass, type, null, sql, nCount);
+    }
+
+    public void doTestCount(String readerClass, String type, java.io.File cacheDir, String sql, int nCount)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+	    if (cacheDir != null)
+	    {
+		info.setProperty(org.aarboard.jdbc.xls.XlsDriver.COLUMN_CACHE_DIR, cacheDir.getPath());
+	    }
+
+            Class.forName(jdbcClassName);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery(sql);
+            int rCount= 0;
+            if (sql.startsWith("SELECT COUNT(*)"))
+            {
+                assertTrue(sql+": No row returned", results.next());
+                rCount= results.getInt(1);
+                assertFalse(sql+": More than one row returned", results.next());
+            }
+            else
+            {
+                while (results.next())
+                {
+                    rCount++;
+                }
+            }
+            assertTrue(sql+": Did not find expected "+nCount+" rows, but "+rCount, rCount == nCount);
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
 }
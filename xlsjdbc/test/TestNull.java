@@ -25,7 +25,9 @@ public class TestNull extends TestCase {
     public void testNull()
     {
 	testNull("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testNull("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
 	testNull("org.aarboard.jdbc.xls.POIReader", ".xlsx");
+	testNull("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
 	// testNull("org.aarboard.jdbc.xls.JXLReader");
     }
     
@@ -52,11 +54,19 @@ public class TestNull extends TestCase {
             java.sql.Statement stmt = conn.createStatement();
             java.sql.ResultSet results= stmt.executeQuery("SELECT * FROM "+jdbcTableName);
             int rCount= 0;
+            int nullMails= 0;
             while (results.next())
             {
                 String thisCountry= results.getString("Land");
                 java.sql.Date thisDate= results.getDate("AnmeldedatumDat");
                 java.sql.Date thisDate2= results.getDate("Zahlungsdatum");
+                assertTrue("wasNull() does not match getDate()", results.wasNull() == (thisDate2 == null));
+                String thisMail= results.getString("E-Mail");
+                if (results.wasNull())
+                {
+                    assertTrue("getString() not null for empty cell", thisMail == null);
+                    nullMails++;
+                }
                 
                 rCount++;
 		if (rCount == 1092)
@@ -65,6 +75,7 @@ public class TestNull extends TestCase {
 		}
             }
             assertTrue("Did not find expected "+nCount+" rows, but "+rCount, rCount == nCount);
+            assertTrue("Did not find expected 751 empty mail addresses, but "+nullMails, nullMails == 751);
             results.close();
             stmt.close();
             conn.close();
@@ -0,0 +1,111 @@
+import junit.framework.*;
+/*
+ * TestOrderBy.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestOrderBy extends TestCase {
+
+    public TestOrderBy(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testOrderBy()
+    {
+	testOrderBy("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testOrderBy("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testOrderBy("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testInvalidSortMemoryRows() throws Exception
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        Class.forName(jdbcClassName);
+	java.util.Properties info= new java.util.Properties();
+	info.setProperty(org.aarboard.jdbc.xls.XlsDriver.SORT_MEMORY_ROWS, "1e5");
+	try
+	{
+	    java.sql.DriverManager.getConnection(jdbcURL, info);
+	    fail("Invalid sortMemoryRows accepted");
+	}
+	catch (java.sql.SQLException e)
+	{
+	    assertTrue(e.getMessage(), e.getMessage().indexOf(org.aarboard.jdbc.xls.XlsDriver.SORT_MEMORY_ROWS) >= 0);
+	}
+    }
+
+    public void testOrderBy(String readerClass, String type)
+    {
+	String sql= "SELECT NACHNAME, STARTNUMMER FROM nulltest1 WHERE NACHNAME = 'B' ORDER BY STARTNUMMER DESC";
+	String sorted= runQuery(readerClass, type, null, sql);
+	assertEquals(364, sorted.split("\n").length);
+	// Sorted in chunks of 50 rows written to temporary files
+	assertEquals(sorted, runQuery(readerClass, type, "50", sql));
+	// Only the first rows are kept
+	assertEquals(sorted.substring(0, nthLine(sorted, 10)), runQuery(readerClass, type, null, sql + " LIMIT 10"));
+	assertEquals(sorted.substring(nthLine(sorted, 5), nthLine(sorted, 15)), runQuery(readerClass, type, "50", sql + " LIMIT 10 OFFSET 5"));
+    }
+
+    private static int nthLine(String text, int lines)
+    {
+	int pos= 0;
+	for (int i= 0; i < lines; i++)
+	{
+	    pos= text.indexOf('\n', pos) + 1;
+	}
+	return pos;
+    }
+
+    private String runQuery(String readerClass, String type, String sortMemoryRows, String sql)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+	StringBuffer result= new StringBuffer();
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+	    if (sortMemoryRows != null)
+	    {
+		info.setProperty(org.aarboard.jdbc.xls.XlsDriver.SORT_MEMORY_ROWS, sortMemoryRows);
+	    }
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery(sql);
+	    long previous= Long.MAX_VALUE;
+            while (results.next())
+            {
+		long number= results.getLong(2);
+		assertTrue("Not sorted: "+number+" after "+previous, number <= previous);
+		previous= number;
+		result.append(results.getString(1)).append('|').append(number).append('\n');
+            }
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+	return result.toString();
+    }
+}
@@ -0,0 +1,114 @@
+import junit.framework.*;
+/*
+ * TestScroll.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestScroll extends TestCase {
+
+    public TestScroll(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testScroll()
+    {
+	testScroll("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testScroll("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testScroll("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testScroll(String readerClass, String type)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+	    // Read all rows forward to compare with
+	    java.util.List<String> rows= new java.util.ArrayList<String>();
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery("SELECT NACHNAME, STARTNUMMER FROM nulltest1 WHERE NACHNAME = 'B'");
+	    assertEquals(java.sql.ResultSet.TYPE_FORWARD_ONLY, results.getType());
+            while (results.next())
+            {
+		rows.add(results.getString(1) + "|" + results.getString(2));
+            }
+            results.close();
+            stmt.close();
+	    assertEquals(364, rows.size());
+
+            stmt = conn.createStatement(java.sql.ResultSet.TYPE_SCROLL_INSENSITIVE, java.sql.ResultSet.CONCUR_READ_ONLY);
+            results= stmt.executeQuery("SELECT NACHNAME, STARTNUMMER FROM nulltest1 WHERE NACHNAME = 'B'");
+	    assertEquals(java.sql.ResultSet.TYPE_SCROLL_INSENSITIVE, results.getType());
+	    assertTrue(results.isBeforeFirst());
+	    assertTrue(results.absolute(200));
+	    assertEquals(rows.get(199), results.getString(1) + "|" + results.getString(2));
+	    assertTrue(results.relative(-150));
+	    assertEquals(50, results.getRow());
+	    assertEquals(rows.get(49), results.getString(1) + "|" + results.getString(2));
+	    assertTrue(results.previous());
+	    assertEquals(rows.get(48), results.getString(1) + "|" + results.getString(2));
+	    assertTrue(results.last());
+	    assertTrue(results.isLast());
+	    assertEquals(364, results.getRow());
+	    assertEquals(rows.get(363), results.getString(1) + "|" + results.getString(2));
+	    assertTrue(results.absolute(-2));
+	    assertEquals(rows.get(362), results.getString(1) + "|" + results.getString(2));
+	    assertTrue(results.first());
+	    assertEquals(rows.get(0), results.getString(1) + "|" + results.getString(2));
+	    assertFalse(results.previous());
+	    assertTrue(results.isBeforeFirst());
+	    assertFalse(results.absolute(365));
+	    assertTrue(results.isAfterLast());
+	    assertTrue(results.previous());
+	    assertEquals(rows.get(363), results.getString(1) + "|" + results.getString(2));
+	    results.beforeFirst();
+	    int count= 0;
+            while (results.next())
+            {
+		assertEquals(rows.get(count), results.getString(1) + "|" + results.getString(2));
+		count++;
+            }
+	    assertEquals(364, count);
+            results.close();
+            stmt.close();
+
+            stmt = conn.createStatement();
+            results= stmt.executeQuery("SELECT NACHNAME FROM nulltest1");
+	    try
+	    {
+		results.previous();
+		fail("previous() on a forward only result set");
+	    }
+	    catch (java.sql.SQLException e)
+	    {
+		// Expected
+	    }
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+}
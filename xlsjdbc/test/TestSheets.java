@@ -0,0 +1,82 @@
+import junit.framework.*;
+/*
+ * TestSheets.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestSheets extends TestCase {
+
+    public TestSheets(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testSheets()
+    {
+	testSheets("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testSheets("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testSheets("org.aarboard.jdbc.xls.POIReader", ".xlsx");
+	testSheets("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testSheets(String readerClass, String type)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            // first sheet, file$sheet and "file"."sheet" notation
+            checkSheet(conn, "SELECT * FROM sheets", "Jan", 10);
+            checkSheet(conn, "SELECT * FROM sheets$Feb", "Feb", 20);
+            checkSheet(conn, "SELECT * FROM \"sheets\".\"Mar\"", "Mar", 30);
+            checkSheet(conn, "SELECT * FROM sheets.mar", "Mar", 30);
+            try
+            {
+                checkSheet(conn, "SELECT * FROM sheets$Apr", "Apr", 0);
+                assertFalse("Missing sheet not reported", true);
+            }
+            catch (java.sql.SQLException e)
+            {
+                // expected
+            }
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+
+    private void checkSheet(java.sql.Connection conn, String sql, String month, int nCount) throws Exception
+    {
+        java.sql.Statement stmt = conn.createStatement();
+        java.sql.ResultSet results= stmt.executeQuery(sql);
+        int rCount= 0;
+        while (results.next())
+        {
+            rCount++;
+            assertTrue(sql+": Did not find expected "+month+", but "+results.getString("MONTH"), month.equals(results.getString("MONTH")));
+        }
+        assertTrue(sql+": Did not find expected "+nCount+" rows, but "+rCount, rCount == nCount);
+        results.close();
+        stmt.close();
+    }
+}
@@ -0,0 +1,66 @@
+import junit.framework.*;
+/*
+ * TestStringDate.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestStringDate extends TestCase {
+
+    public TestStringDate(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testStringDate()
+    {
+	testStringDate("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testStringDate("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+    }
+
+    public void testStringDate(String readerClass, String type)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+	int[][] expected= { { 2004, 2, 1 }, { 2004, 8, 14 }, { 2010, 12, 31 }, { 2012, 2, 29 } };
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.STRING_DATE_FORMAT, "d.M.yyyy");
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery("SELECT * FROM datetext");
+            int rCount= 0;
+            while (results.next())
+            {
+		java.util.Calendar cal= new java.util.GregorianCalendar(expected[rCount][0], expected[rCount][1] - 1, expected[rCount][2]);
+		java.sql.Date thisDate= results.getDate("DATUM");
+		assertTrue("Expected "+cal.getTime()+", but "+thisDate, thisDate.getTime() == cal.getTimeInMillis());
+                rCount++;
+            }
+            assertTrue("Did not find expected 4 rows, but "+rCount, rCount == 4);
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import junit.framework.*;
+/*
+ * TestWhere.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ *
+ * @author sca
+ */
+public class TestWhere extends TestCase {
+
+    public TestWhere(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testWhere()
+    {
+	testWhere("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testWhere("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testWhere("org.aarboard.jdbc.xls.POIReader", ".xlsx");
+	testWhere("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testWhere(String readerClass, String type)
+    {
+	testWhere(readerClass, type, "SELECT * FROM nulltest1 WHERE STARTNUMMER < 4", 3);
+	testWhere(readerClass, type, "SELECT * FROM nulltest1 WHERE Nachname IN ('A', 'B')", 729);
+	testWhere(readerClass, type, "SELECT * FROM nulltest1 WHERE \"E-MAIL\" IS NULL", 751);
+	testWhere(readerClass, type, "SELECT * FROM nulltest1 WHERE NACHNAME LIKE 'A%' AND NOT STARTNUMMER >= 100", 33);
+	testWhere(readerClass, type, "SELECT * FROM rowcolmap WHERE A = 'A2' OR B = 'B3'", 2);
+    }
+
+    public void testParallelScan()
+    {
+	testParallelScan("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testParallelScan("org.aarboard.jdbc.xls.POIReader", ".xlsx");
+    }
+
+    public void testParallelScan(String readerClass, String type)
+    {
+	testWhere(readerClass, type, "4", "SELECT * FROM 1017rows WHERE COLOUR = '00'", 837);
+	testWhere(readerClass, type, "4", "SELECT * FROM 1017rows WHERE \"MAIN PRODUCT\" LIKE '%1_2%'", 30);
+	testWhere(readerClass, type, "4", "SELECT * FROM nulltest1 WHERE STARTNUMMER < 4", 3);
+    }
+
+    public void testInvalidScanThreads() throws Exception
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        Class.forName(jdbcClassName);
+	java.util.Properties info= new java.util.Properties();
+	info.setProperty(org.aarboard.jdbc.xls.XlsDriver.SCAN_THREADS, "four");
+	try
+	{
+	    java.sql.DriverManager.getConnection(jdbcURL, info);
+	    fail("Invalid scanThreads accepted");
+	}
+	catch (java.sql.SQLException e)
+	{
+	    assertTrue(e.getMessage(), e.getMessage().indexOf(org.aarboard.jdbc.xls.XlsDriver.SCAN_THREADS) >= 0);
+	}
+    }
+
+    public void testWhere(String readerClass, String type, String sql, int nCount)
+    {
+	testWhere(readerClass, type, "1", sql, nCount);
+    }
+
+    public void testWhere(String readerClass, String type, String scanThreads, String sql, int nCount)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.SCAN_THREADS, scanThreads);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.Statement stmt = conn.createStatement();
+            java.sql.ResultSet results= stmt.executeQuery(sql);
+            int rCount= 0;
+            while (results.next())
+            {
+                rCount++;
+            }
+            assertTrue(sql+": Did not find expected "+nCount+" rows, but "+rCount, rCount == nCount);
+            results.close();
+            stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+
+    public void testPrepared()
+    {
+	testPrepared("org.aarboard.jdbc.xls.POIReader", ".xls");
+	testPrepared("org.aarboard.jdbc.xls.HSSFEventReader", ".xls");
+	testPrepared("org.aarboard.jdbc.xls.XSSFEventReader", ".xlsx");
+    }
+
+    public void testPrepared(String readerClass, String type)
+    {
+        String jdbcClassName= "org.aarboard.jdbc.xls.XlsDriver";
+        String jdbcURL= "jdbc:aarboard:xls:C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+        try
+        {
+            Class.forName(jdbcClassName);
+	    java.util.Properties info= new java.util.Properties();
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.XLS_READER_CLASS, readerClass);
+	    info.setProperty(org.aarboard.jdbc.xls.XlsDriver.FILE_EXTENSION, type);
+            java.sql.Connection conn= java.sql.DriverManager.getConnection(jdbcURL, info);
+
+            java.sql.PreparedStatement stmt = conn.prepareStatement("SELECT * FROM nulltest1 WHERE NACHNAME = ? AND STARTNUMMER < ?");
+	    String[] names= { "A", "B", "A" };
+	    int[] limits= { 100, 4, 100000 };
+	    int[] counts= { 33, 1, 365 };
+	    for (int i= 0; i < names.length; i++)
+	    {
+		stmt.setString(1, names[i]);
+		stmt.setInt(2, limits[i]);
+		java.sql.ResultSet results= stmt.executeQuery();
+		int rCount= 0;
+		while (results.next())
+		{
+		    rCount++;
+		}
+		results.close();
+		assertTrue(names[i]+"/"+limits[i]+": Did not find expected "+counts[i]+" rows, but "+rCount, rCount == counts[i]);
+	    }
+            stmt.close();
+
+	    // A NULL in the list makes the IN unknown unless a value matches
+	    stmt = conn.prepareStatement("SELECT * FROM nulltest1 WHERE NACHNAME IN (?, ?)");
+	    stmt.setString(1, "A");
+	    stmt.setNull(2, java.sql.Types.VARCHAR);
+	    assertEquals("IN with NULL", countRows(conn, "SELECT * FROM nulltest1 WHERE NACHNAME = 'A'"), countRows(stmt));
+	    stmt.close();
+	    stmt = conn.prepareStatement("SELECT * FROM nulltest1 WHERE NACHNAME NOT IN (?, ?)");
+	    stmt.setString(1, "A");
+	    stmt.setNull(2, java.sql.Types.VARCHAR);
+	    assertEquals("NOT IN with NULL", 0, countRows(stmt));
+	    stmt.setString(2, "B");
+	    assertEquals("NOT IN without NULL", countRows(conn, "SELECT * FROM nulltest1 WHERE NACHNAME <> 'A' AND NACHNAME <> 'B'"), countRows(stmt));
+	    stmt.close();
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            assertFalse("Exception e: "+e.getMessage(), true);
+        }
+    }
+
+    private int countRows(java.sql.PreparedStatement stmt) throws java.sql.SQLException
+    {
+	java.sql.ResultSet results= stmt.executeQuery();
+	int rCount= 0;
+	while (results.next())
+	{
+	    rCount++;
+	}
+	results.close();
+	return rCount;
+    }
+
+    private int countRows(java.sql.Connection conn, String sql) throws java.sql.SQLException
+    {
+	java.sql.PreparedStatement stmt= conn.prepareStatement(sql);
+	int rCount= countRows(stmt);
+	stmt.close();
+	return rCount;
+    }
+}
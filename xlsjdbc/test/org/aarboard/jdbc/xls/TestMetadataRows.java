@@ -0,0 +1,54 @@
+package org.aarboard.jdbc.xls;
+
+import junit.framework.*;
+/*
+ * TestMetadataRows.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ * COUNT(*) is only answered from the file metadata when it proves that no
+ * row is missing.
+ *
+ * @author sca
+ */
+public class TestMetadataRows extends TestCase {
+
+    private static final String TESTDATA = "C:/Develop/Sourceforge/xlsjdbc/xlsjdbc/test/testdata/";
+
+    public TestMetadataRows(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testMetadataRows() throws Exception
+    {
+	// Header row included
+	assertEquals(11, getMetadataRows("10rows.xls"));
+	assertEquals(1094, getMetadataRows("nulltest1.xls"));
+	assertEquals(8796, getMetadataRows("1017rows.xls"));
+	assertEquals("Missing row not found", -1, getMetadataRows("gaprows.xls"));
+    }
+
+    private int getMetadataRows(String fileName) throws Exception
+    {
+	HSSFEventReader reader = new HSSFEventReader();
+	reader.setFileName(TESTDATA + fileName);
+	reader.openFile();
+	try
+	{
+	    return reader.getMetadataRows();
+	}
+	finally
+	{
+	    reader.close();
+	}
+    }
+}
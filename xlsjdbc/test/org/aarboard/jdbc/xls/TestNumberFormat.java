@@ -0,0 +1,72 @@
+package org.aarboard.jdbc.xls;
+
+import java.util.Random;
+import junit.framework.*;
+/*
+ * TestNumberFormat.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ * Compares XlsNumberFormat with the former conversion of numeric cells,
+ * Double.toString() without a trailing ".0". XlsNumberFormat is package
+ * private, so this test lives in the package of the driver.
+ *
+ * @author sca
+ */
+public class TestNumberFormat extends TestCase {
+
+    public TestNumberFormat(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    public void testSpecialValues()
+    {
+	double[] values= { 0, -0.0, 1, -1, 0.5, -0.5, 1023, 1024, -1024, 1e-5, 123.456,
+	    9999999, 9999999.5, 1e7, -1e7, 1e7 + 1, Integer.MAX_VALUE, Integer.MIN_VALUE,
+	    1e15, 1e300, Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN,
+	    Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+	for (int i= 0; i < values.length; i++)
+	{
+	    assertConversion(values[i]);
+	}
+    }
+
+    public void testWholeNumbers()
+    {
+	for (int i= -3000; i <= 3000; i++)
+	{
+	    assertConversion(i);
+	    assertConversion(i + 0.25);
+	}
+    }
+
+    public void testRandomValues()
+    {
+	Random random= new Random(42);
+	for (int i= 0; i < 10000; i++)
+	{
+	    assertConversion(random.nextInt());
+	    assertConversion((random.nextDouble() - 0.5) * 2e7);
+	    assertConversion(Double.longBitsToDouble(random.nextLong()));
+	}
+    }
+
+    private void assertConversion(double value)
+    {
+	String expected= Double.toString(value);
+	if (expected.substring(expected.length() - 2).equals(".0"))
+	{
+	    expected= expected.substring(0, expected.length() - 2);
+	}
+	assertEquals("Conversion of " + Double.toString(value), expected, XlsNumberFormat.toString(value));
+    }
+}
@@ -0,0 +1,195 @@
+package org.aarboard.jdbc.xls;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import junit.framework.*;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+/*
+ * TestWorkbookCache.java
+ * JUnit based test
+ *
+ * Created on 18. October 2026
+ */
+
+/**
+ * The WorkbookCache is package private, so this test lives in the package
+ * of the driver.
+ *
+ * @author sca
+ */
+public class TestWorkbookCache extends TestCase {
+
+    /** Cells in each of the test workbooks */
+    private static final int CELLS = 2;
+
+    private File dir = null;
+
+    public TestWorkbookCache(String testName) {
+        super(testName);
+    }
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("xlsjdbc-wbcache", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        for (int i = 0; files != null && i < files.length; i++)
+        {
+            files[i].delete();
+        }
+        dir.delete();
+    }
+
+    public void testHit() throws Exception
+    {
+	File file = writeWorkbook("hit.xls");
+	WorkbookCache.getInstance().setMaxBytes(256L * 1024 * 1024);
+	POIReader first = new POIReader(file.getPath());
+	POIReader second = new POIReader(file.getPath());
+	assertSame("Second query did not use the cached workbook", first.workbook, second.workbook);
+	first.close();
+	second.close();
+    }
+
+    public void testModified() throws Exception
+    {
+	File file = writeWorkbook("modified.xls");
+	WorkbookCache cache = new WorkbookCache(Long.MAX_VALUE, 4);
+	Workbook workbook = new HSSFWorkbook();
+	long lastModified = file.lastModified();
+	cache.put(file, file.length(), lastModified, workbook);
+	assertSame(workbook, cache.get(file));
+
+	assertTrue(file.setLastModified(lastModified - 10000));
+	assertNull("Workbook of a touched file still cached", cache.get(file));
+
+	cache.put(file, file.length(), file.lastModified(), workbook);
+	assertSame(workbook, cache.get(file));
+	FileOutputStream out = new FileOutputStream(file, true);
+	out.write(0);
+	out.close();
+	assertTrue(file.setLastModified(lastModified - 10000));
+	assertNull("Workbook of a grown file still cached", cache.get(file));
+    }
+
+    public void testEviction() throws Exception
+    {
+	File a = writeWorkbook("a.xls");
+	File b = writeWorkbook("b.xls");
+	File c = writeWorkbook("c.xls");
+	// Room for two of the equally sized workbooks
+	long size = a.length() + CELLS * 200;
+	WorkbookCache cache = new WorkbookCache(2 * size + size / 2, Integer.MAX_VALUE);
+	Workbook wa = new HSSFWorkbook();
+	Workbook wb = new HSSFWorkbook();
+	Workbook wc = new HSSFWorkbook();
+	put(cache, a, wa);
+	put(cache, b, wb);
+	assertSame(wa, cache.get(a));
+	put(cache, c, wc);
+	assertSame(wa, cache.get(a));
+	assertNull("Least recently used workbook not evicted", cache.get(b));
+	assertSame(wc, cache.get(c));
+
+	// Limited by the number of workbooks only
+	cache = new WorkbookCache(Long.MAX_VALUE, 2);
+	put(cache, a, wa);
+	put(cache, b, wb);
+	assertSame(wa, cache.get(a));
+	put(cache, c, wc);
+	assertSame(wa, cache.get(a));
+	assertNull("Least recently used workbook not evicted", cache.get(b));
+	assertSame(wc, cache.get(c));
+    }
+
+    public void testBudget()
+    {
+	WorkbookCache cache = new WorkbookCache(0, Integer.MAX_VALUE);
+	assertFalse(cache.isEnabled());
+	cache.setMaxBytes(1000);
+	assertEquals(1000, cache.getMaxBytes());
+	cache.setMaxBytes(500);
+	assertEquals("Budget set last not used", 500, cache.getMaxBytes());
+	cache.setMaxBytes(0);
+	assertFalse(cache.isEnabled());
+	cache.setMaxBytes(2000);
+	assertEquals(2000, cache.getMaxBytes());
+    }
+
+    public void testShrink() throws Exception
+    {
+	File a = writeWorkbook("a.xls");
+	File b = writeWorkbook("b.xls");
+	long size = a.length() + CELLS * 200;
+	WorkbookCache cache = new WorkbookCache(0, Integer.MAX_VALUE);
+	cache.setMaxBytes(4 * size);
+	Workbook wa = new HSSFWorkbook();
+	Workbook wb = new HSSFWorkbook();
+	put(cache, a, wa);
+	put(cache, b, wb);
+	assertSame(wa, cache.get(a));
+	// Room for one workbook left, the least recently used is dropped
+	cache.setMaxBytes(size + size / 2);
+	assertNull(cache.get(b));
+	assertSame(wa, cache.get(a));
+	cache.setMaxBytes(0);
+	cache.setMaxBytes(4 * size);
+	assertNull("Workbook kept while the cache was disabled", cache.get(a));
+    }
+
+    public void testInvalidSize() throws Exception
+    {
+	java.util.Properties info = new java.util.Properties();
+	info.setProperty(XlsDriver.WORKBOOK_CACHE_SIZE, "256MB");
+	try
+	{
+	    new XlsDriver().connect("jdbc:aarboard:xls:" + dir.getPath(), info);
+	    fail("Invalid cache size accepted");
+	}
+	catch (java.sql.SQLException e)
+	{
+	    assertEquals("Invalid value '256MB' for the property " + XlsDriver.WORKBOOK_CACHE_SIZE, e.getMessage());
+	}
+    }
+
+    private static void put(WorkbookCache cache, File file, Workbook workbook) throws Exception
+    {
+        Sheet sheet = workbook.getNumberOfSheets() == 0 ? workbook.createSheet("Sheet1") : workbook.getSheetAt(0);
+        if (sheet.getRow(0) == null)
+        {
+            Row row = sheet.createRow(0);
+            for (int i = 0; i < CELLS; i++)
+            {
+                row.createCell(i).setCellValue("C" + i);
+            }
+        }
+        cache.put(file, file.length(), file.lastModified(), workbook);
+    }
+
+    private File writeWorkbook(String name) throws Exception
+    {
+        Workbook workbook = new HSSFWorkbook();
+        Row row = workbook.createSheet("Sheet1").createRow(0);
+        for (int i = 0; i < CELLS; i++)
+        {
+            row.createCell(i).setCellValue("C" + i);
+        }
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            workbook.write(out);
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+}